@@ -0,0 +1,135 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//tail latency of ProductService.getProduct (redis cache GET, near cache off) while stream consumers are busy
+//every consumer thread XADD a batch then XREADGROUP it back with BLOCK, like OrderDispatcher under load
+//shared: the consumers use the primary factory, same lettuce threads and pool as the cache read
+//blocking: the consumers use blockingRedisConnectionFactory, like orderContainer does now
+//look at p0.99 / p0.999 of the sample time, the average barely move
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ConnectionLaneBenchmark {
+
+    private static final String PRODUCT = "bench-lane";
+    private static final String STREAM = "bench:lane-orders";
+    private static final String GROUP = "bench";
+    private static final int BATCH = 100;
+
+    @Param({"shared", "blocking"})
+    private String lane;
+
+    @Param({"0", "16"})
+    private int consumers;
+
+    private ProductService productService;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile boolean running;
+
+    //near cache off, so every getProduct is a round trip to redis
+    @State(Scope.Benchmark)
+    public static class L2OnlyState extends RedisBenchmarkState {
+
+        @Override
+        protected List<String> properties() {
+            List<String> properties = super.properties();
+            properties.add("app.cache.caches.products.near.enabled=false");
+            return properties;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(L2OnlyState state) {
+        productService = state.bean(ProductService.class);
+        state.bean(ProductRepository.class).save(Product.builder().id(PRODUCT).name("bench").price(1L).build());
+        productService.getProduct(PRODUCT);
+
+        String factoryName = "shared".equals(lane) ? "redisConnectionFactory" : "blockingRedisConnectionFactory";
+        StringRedisTemplate template = new StringRedisTemplate(state.bean(factoryName, RedisConnectionFactory.class));
+        template.delete(STREAM);
+        template.opsForStream().add(STREAM, Map.of("id", "init"));
+        template.opsForStream().createGroup(STREAM, ReadOffset.from("0-0"), GROUP);
+
+        running = true;
+        for (int i = 0; i < consumers; i++) {
+            String name = "consumer-" + i;
+            Thread thread = new Thread(() -> consume(template, name), "bench-" + name);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+        threads.clear();
+    }
+
+    @Benchmark
+    public Product getProduct() {
+        return productService.getProduct(PRODUCT);
+    }
+
+    private void consume(StringRedisTemplate template, String name) {
+        Consumer consumer = Consumer.from(GROUP, name);
+        StreamReadOptions options = StreamReadOptions.empty().count(BATCH).block(Duration.ofMillis(100));
+        while (running) {
+            template.executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (int i = 0; i < BATCH; i++) {
+                        operations.opsForStream().add(STREAM, Map.of("id", name + "-" + i, "amount", "1000"));
+                    }
+                    return null;
+                }
+            });
+            List<MapRecord<String, Object, Object>> records = template.opsForStream()
+                    .read(consumer, options, StreamOffset.create(STREAM, ReadOffset.lastConsumed()));
+            if (records != null && !records.isEmpty()) {
+                template.opsForStream().acknowledge(STREAM, GROUP,
+                        records.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+            }
+            template.opsForStream().trim(STREAM, 10_000, true);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+//cost of OrderDeduplicator per order: claim a batch of new ids then complete them as processed (2 round trips per batch)
+//the record ids doesn't exist in the stream, so the XACK in complete does nothing
+//memory of the buckets is printed at the end: sets grow with the id length, bloom stay at its fixed size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class DedupBenchmark {
+
+    private static final int BATCH = 100;
+    private static final String PREFIX = "bench:dedup:";
+
+    @Param({"sets", "bloom"})
+    private String mode;
+
+    private StringRedisTemplate template;
+
+    private OrderDeduplicator deduplicator;
+
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        template = state.template();
+        deleteKeys();
+        OrderDedupProperties properties = new OrderDedupProperties();
+        properties.setMode(OrderDedupProperties.Mode.valueOf(mode.toUpperCase()));
+        properties.setKeyPrefix(PREFIX);
+        properties.setExpectedItems(1_000_000);
+        OrderConsumerProperties consumerProperties = new OrderConsumerProperties();
+        consumerProperties.setStream(PREFIX + "orders");
+        deduplicator = new OrderDeduplicator(state.bean(RedisScripts.class), template, properties, consumerProperties,
+                new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Set<String> keys = template.keys(PREFIX + "*");
+        long bytes = 0;
+        for (String key : keys) {
+            Long usage = template.execute((RedisCallback<Long>) connection -> (Long) connection.execute("MEMORY",
+                    "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+            bytes += usage == null ? 0 : usage;
+        }
+        System.out.printf("%n%s: %d ids, %d bytes (%.1f bytes per id)%n", mode, sequence, bytes, (double) bytes / Math.max(1, sequence));
+        deleteKeys();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void claimAndComplete() {
+        List<String> ids = new ArrayList<>(BATCH);
+        List<OrderDeduplicator.Completion> completions = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            String id = "order-" + sequence++;
+            ids.add(id);
+            completions.add(new OrderDeduplicator.Completion(RecordId.of(1, sequence), id, OrderDeduplicator.Outcome.PROCESSED));
+        }
+        deduplicator.claim(ids);
+        deduplicator.complete(completions);
+    }
+
+    private void deleteKeys() {
+        Set<String> keys = template.keys(PREFIX + "*");
+        if (keys != null && !keys.isEmpty()) {
+            template.delete(keys);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//slow listener (50ms, like a call to other service) under a burst of 500 messages
+//fixed: 8 platform thread, so the burst take 500 / 8 * 50ms
+//virtual: every message has its own virtual thread, only limited by the semaphore (max concurrency)
+//virtual need java 21, ex: -jvm /path/to/jdk-21/bin/java
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ListenerLoadBenchmark {
+
+    private static final int MESSAGES = 500;
+    private static final int FIXED_THREADS = 8;
+    private static final int MAX_CONCURRENCY = 256;
+    private static final long LISTENER_MILLIS = 50L;
+    private static final String CHANNEL = "bench:customers";
+    private static final String STREAM = "bench:listener-orders";
+
+    @Param({"fixed", "virtual"})
+    private String mode;
+
+    private StringRedisTemplate template;
+
+    private RedisMessageListenerContainer container;
+
+    private ExecutorService fixedPool;
+
+    private OrderDispatcher dispatcher;
+
+    private volatile CountDownLatch received;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) throws Exception {
+        template = state.template();
+        ListenerExecution execution = new ListenerExecution("virtual".equals(mode), MAX_CONCURRENCY);
+
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(state.bean(RedisConnectionFactory.class));
+        if (execution.isVirtual()) {
+            container.setTaskExecutor(execution.executor("bench-listener-"));
+        } else {
+            fixedPool = Executors.newFixedThreadPool(FIXED_THREADS);
+            container.setTaskExecutor(fixedPool);
+        }
+        container.addMessageListener(execution.bounded((message, pattern) -> slowCustomer(message)),
+                new ChannelTopic(CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+
+        OrderConsumerProperties properties = new OrderConsumerProperties();
+        properties.setStream(STREAM);
+        properties.setGroup("bench");
+        properties.setPollTimeout(Duration.ofSeconds(1));
+        //fixed: worker count, virtual: semaphore permit
+        properties.setWorkers(execution.isVirtual() ? MAX_CONCURRENCY : FIXED_THREADS);
+        properties.setQueueCapacity(MESSAGES);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        //only the listener execution is measured here, dedup is in DedupBenchmark
+        OrderDedupProperties dedupProperties = new OrderDedupProperties();
+        dedupProperties.setEnabled(false);
+        dispatcher = new OrderDispatcher(new SlowOrderListener(), properties, execution,
+                new StreamMonitor(template, new StreamMonitorProperties(), properties, meterRegistry),
+                new OrderDeduplicator(new RedisScripts(template), template, dedupProperties, properties, meterRegistry),
+                meterRegistry);
+        dispatcher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        container.destroy();
+        dispatcher.stop();
+        if (fixedPool != null) {
+            fixedPool.shutdownNow();
+        }
+    }
+
+    //time until every message published to the channel is handled
+    @Benchmark
+    public void pubsubBurst() throws InterruptedException {
+        received = new CountDownLatch(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            template.convertAndSend(CHANNEL, "customer-" + i);
+        }
+        received.await(1, TimeUnit.MINUTES);
+    }
+
+    //record is given to the dispatcher like the stream container do, the ids doesn't exist so XACK does nothing
+    @Benchmark
+    public void streamBurst() throws InterruptedException {
+        received = new CountDownLatch(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            ObjectRecord<String, Order> record = StreamRecords.newRecord()
+                    .in(STREAM)
+                    .withId(RecordId.of(System.currentTimeMillis(), i))
+                    .ofObject(new Order("order-" + i, 1000L));
+            dispatcher.dispatch("bench-1", record);
+        }
+        received.await(1, TimeUnit.MINUTES);
+    }
+
+    private void slowCustomer(Message message) {
+        sleep();
+        received.countDown();
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(LISTENER_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class SlowOrderListener extends OrderListener {
+        @Override
+        public void onMessage(ObjectRecord<String, Order> message) {
+            sleep();
+            received.countDown();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StreamOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//throughput of XADD (single and through OrderBatchPublisher) and XREADGROUP + XACK
+//use its own streams, so the application consumer doesn't take the records
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderStreamBenchmark {
+
+    private static final String STREAM = "bench:orders";
+    private static final String BATCHED_STREAM = "bench:orders:batched";
+    private static final String GROUP = "bench-group";
+    private static final int READ_COUNT = 100;
+
+    private StreamOperations<String, Object, Object> ops;
+
+    private OrderBatchPublisher batchPublisher;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        ops = state.template().opsForStream();
+        ops.add(ObjectRecord.create(STREAM, new Order("init", 1L)));
+        ops.createGroup(STREAM, ReadOffset.from("0"), GROUP);
+
+        //same setting as the application one, but its own stream
+        OrderPublisherProperties application = state.bean(OrderPublisherProperties.class);
+        OrderPublisherProperties properties = new OrderPublisherProperties();
+        properties.setStream(BATCHED_STREAM);
+        properties.setBatchSize(application.getBatchSize());
+        properties.setFlushInterval(application.getFlushInterval());
+        properties.setBufferCapacity(application.getBufferCapacity());
+        properties.setOfferTimeout(application.getOfferTimeout());
+        batchPublisher = new OrderBatchPublisher(state.template(), properties, state.bean(OrderStreamRetention.class),
+                new SimpleMeterRegistry());
+        batchPublisher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(RedisBenchmarkState state) throws InterruptedException {
+        batchPublisher.stop();
+        state.template().delete(List.of(STREAM, BATCHED_STREAM));
+    }
+
+    @Benchmark
+    public RecordId xadd() {
+        return ops.add(ObjectRecord.create(STREAM, new Order(UUID.randomUUID().toString(), 1000L)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READ_COUNT)
+    public void xaddBatched() {
+        List<CompletableFuture<RecordId>> futures = new ArrayList<>(READ_COUNT);
+        for (int i = 0; i < READ_COUNT; i++) {
+            futures.add(batchPublisher.publish(new Order(UUID.randomUUID().toString(), 1000L)));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+
+    //only the read and the ack are measured, the records are added before every invocation (ReadState)
+    @Benchmark
+    @OperationsPerInvocation(READ_COUNT)
+    public List<ObjectRecord<String, Order>> xreadgroup(ReadState readState) {
+        List<ObjectRecord<String, Order>> records = ops.read(Order.class, Consumer.from(GROUP, "bench-consumer"),
+                StreamReadOptions.empty().count(READ_COUNT), StreamOffset.create(STREAM, ReadOffset.lastConsumed()));
+        if (records != null && !records.isEmpty()) {
+            ops.acknowledge(STREAM, GROUP, records.stream().map(ObjectRecord::getId).toArray(RecordId[]::new));
+        }
+        return records;
+    }
+
+    //own state, so the refill only run before xreadgroup, one pipeline of READ_COUNT XADD
+    @State(Scope.Thread)
+    public static class ReadState {
+
+        @Setup(Level.Invocation)
+        public void refill(RedisBenchmarkState state) {
+            state.template().executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (int i = 0; i < READ_COUNT; i++) {
+                        operations.opsForStream().add(ObjectRecord.create(STREAM, new Order(UUID.randomUUID().toString(), 1000L)));
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.cache.CacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//loading and saving a page of products: one by one compared with the pipelined bulk path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductBulkBenchmark {
+
+    @Param({"10", "200"})
+    private int size;
+
+    private ProductRepository repository;
+
+    private ProductService productService;
+
+    private NearCache nearCache;
+
+    private final List<Product> products = new ArrayList<>();
+
+    private final List<String> ids = new ArrayList<>();
+
+    private final List<String> cacheKeys = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        repository = state.bean(ProductRepository.class);
+        productService = state.bean(ProductService.class);
+        nearCache = (NearCache) state.bean(CacheManager.class).getCache("products");
+        for (int i = 0; i < size; i++) {
+            String id = "bench-bulk-" + i;
+            products.add(Product.builder().id(id).name("mie " + i).price(20_000L + i).ttl(-1L).build());
+            ids.add(id);
+            cacheKeys.add("cache:products::" + id);
+        }
+        repository.saveAll(products);
+    }
+
+    @Benchmark
+    public void findByIdEach(Blackhole blackhole) {
+        ids.forEach(id -> blackhole.consume(repository.findById(id)));
+    }
+
+    @Benchmark
+    public List<Product> findAllById() {
+        return repository.findAllById(ids);
+    }
+
+    @Benchmark
+    public void saveEach(Blackhole blackhole) {
+        products.forEach(product -> blackhole.consume(repository.save(product)));
+    }
+
+    @Benchmark
+    public List<Product> saveAll() {
+        return repository.saveAll(products);
+    }
+
+    //L1 is cleared every time, so every id is read from redis cache with one MGET
+    @Benchmark
+    public List<Product> getProductsRedisHit() {
+        nearCache.evictLocal(null);
+        return productService.getProducts(ids);
+    }
+
+    //the whole page is a cache miss, so it include the repository read and the cache write back
+    @Benchmark
+    public List<Product> getProductsMiss(RedisBenchmarkState state) {
+        nearCache.evictLocal(null);
+        state.template().delete(cacheKeys);
+        return productService.getProducts(ids);
+    }
+}
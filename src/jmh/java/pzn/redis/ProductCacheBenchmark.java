@@ -0,0 +1,47 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//@Cacheable path of ProductService.getProduct
+//hit: same id every time, miss: new id every time so the method always run and the result is put to cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCacheBenchmark {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        productService = state.bean(ProductService.class);
+        productService.getProduct("bench-hit");
+    }
+
+    @Benchmark
+    public Product hit() {
+        return productService.getProduct("bench-hit");
+    }
+
+    @Benchmark
+    public Product miss() {
+        return productService.getProduct("bench-miss-" + sequence.incrementAndGet());
+    }
+}
@@ -0,0 +1,55 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+//cache value codec: jdk serialization vs ProductCodec, doesn't need redis
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductCodecBenchmark {
+
+    private final Product product = Product.builder().id("P-001").name("mie goreng").price(20_000L).ttl(-1L).build();
+
+    private final RedisSerializer<Object> jdk = new JdkSerializationRedisSerializer();
+
+    private final RedisSerializer<Object> compact = new CompactProductRedisSerializer(getClass().getClassLoader());
+
+    private final byte[] jdkBytes = jdk.serialize(product);
+
+    private final byte[] compactBytes = compact.serialize(product);
+
+    @Benchmark
+    public byte[] jdkEncode() {
+        return jdk.serialize(product);
+    }
+
+    @Benchmark
+    public Object jdkDecode() {
+        return jdk.deserialize(jdkBytes);
+    }
+
+    @Benchmark
+    public byte[] compactEncode() {
+        return compact.serialize(product);
+    }
+
+    @Benchmark
+    public Object compactDecode() {
+        return compact.deserialize(compactBytes);
+    }
+}
@@ -0,0 +1,93 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//save of products with ttl, keyspace events (phantom key) vs sweeper (expiry bucket)
+//the memory per product of both mode is printed after the trial, from ProductMemoryReport
+//it has its own context, cause the mode must be set before the repository adapter start
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductExpiryBenchmark {
+
+    private static final int BATCH = 100;
+    private static final int PRELOAD = 10_000;
+
+    @Param({"keyspace-events", "sweeper"})
+    private String mode;
+
+    private RedisServerProcess server;
+
+    private ConfigurableApplicationContext context;
+
+    private ProductRepository repository;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = RedisServerProcess.start();
+        context = new SpringApplicationBuilder(BelajarSpringRedisApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.data.redis.host=" + server.getHost(),
+                        "spring.data.redis.port=" + server.getPort(),
+                        "app.products.expiry.mode=" + mode,
+                        "logging.level.root=warn",
+                        "logging.level.pzn.redis=warn")
+                .run();
+        repository = context.getBean(ProductRepository.class);
+        for (int i = 0; i < PRELOAD / BATCH; i++) {
+            repository.saveAll(products());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ProductMemoryReport.Report report = context.getBean(ProductMemoryReport.class).report(1000);
+        System.out.println("\n" + report + " total=" + report.total() + " bytes/product");
+        context.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Product> saveWithTtl() {
+        return repository.saveAll(products());
+    }
+
+    //ttl long enough that nothing expire while the benchmark run, so the memory is compared with the same data
+    private List<Product> products() {
+        List<Product> products = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            long id = sequence.incrementAndGet();
+            products.add(Product.builder().id("bench-ttl-" + id).name("name-" + (id % 100))
+                    .price(1000L + id % 5000).ttl(3600L).build());
+        }
+        return products;
+    }
+}
@@ -0,0 +1,64 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+//repository (mapping, keyspace set, index) compared with writing the same hash by hand
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductRepositoryBenchmark {
+
+    private ProductRepository repository;
+
+    private final Product product = Product.builder().id("bench-1").name("mie").price(20_000L).ttl(-1L).build();
+
+    private final Map<String, String> hash = Map.of(
+            ProductCodec.VERSION_FIELD, "1",
+            ProductCodec.ID_FIELD, "bench-2",
+            ProductCodec.NAME_FIELD, "mie",
+            ProductCodec.PRICE_FIELD, "20000");
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        repository = state.bean(ProductRepository.class);
+        repository.save(product);
+        state.template().opsForHash().putAll("products:bench-2", hash);
+    }
+
+    @Benchmark
+    public Product repositorySave() {
+        return repository.save(product);
+    }
+
+    @Benchmark
+    public Optional<Product> repositoryFindById() {
+        return repository.findById(product.getId());
+    }
+
+    @Benchmark
+    public void hashPutAll(RedisBenchmarkState state) {
+        state.template().opsForHash().putAll("products:bench-2", hash);
+    }
+
+    @Benchmark
+    public Map<Object, Object> hashEntries(RedisBenchmarkState state) {
+        return state.template().opsForHash().entries("products:bench-2");
+    }
+}
@@ -0,0 +1,62 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//decisions per second of RateLimiter, 8 threads, each call for one of "clients" random clients
+//lease 0: one script call per decision, lease 100: one script call per 100 decisions of the same client
+//limit is high so almost every decision is allowed, the rejected path with lease is even cheaper (remembered locally)
+//sliding-window also pay for the zset that keep one member per request of the last second
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(8)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    @Param({"sliding-window", "token-bucket"})
+    private String algorithm;
+
+    @Param({"0", "100"})
+    private int lease;
+
+    @Param({"10"})
+    private int clients;
+
+    private RateLimiter rateLimiter;
+
+    private RateLimitProperties.Policy policy;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        rateLimiter = state.bean(RateLimiter.class);
+        policy = new RateLimitProperties.Policy();
+        policy.setAlgorithm(RateLimitProperties.Algorithm.valueOf(algorithm.replace('-', '_').toUpperCase()));
+        policy.setLimit(100_000);
+        policy.setPeriod(Duration.ofSeconds(1));
+        policy.setLease(lease);
+    }
+
+    @Benchmark
+    public boolean decide() {
+        String client = "bench-client-" + ThreadLocalRandom.current().nextInt(clients);
+        return rateLimiter.tryAcquire("bench", policy, client).allowed();
+    }
+}
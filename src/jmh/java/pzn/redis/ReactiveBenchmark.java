@@ -0,0 +1,123 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//blocking vs reactive with the same amount of concurrent requests
+//blocking need one thread per request in flight, reactive use the lettuce event loop only
+//to compare per core, run both with the same cpu, ex: -jvmArgs -XX:ActiveProcessorCount=2
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactiveBenchmark {
+
+    private static final int REQUESTS = 1000;
+    private static final String STREAM = "bench:orders";
+
+    //request in flight at the same time, it's the thread pool size for blocking
+    @Param({"16", "128"})
+    private int concurrency;
+
+    private ProductService productService;
+
+    private ReactiveProductService reactiveProductService;
+
+    private StringRedisTemplate template;
+
+    private ReactiveStringRedisTemplate reactiveTemplate;
+
+    private NearCache nearCache;
+
+    private ExecutorService executor;
+
+    private final List<String> ids = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        productService = state.bean(ProductService.class);
+        reactiveProductService = state.bean(ReactiveProductService.class);
+        template = state.template();
+        reactiveTemplate = state.bean(ReactiveStringRedisTemplate.class);
+        nearCache = (NearCache) state.bean(CacheManager.class).getCache("products");
+        executor = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < 100; i++) {
+            ids.add("bench-reactive-" + i);
+            productService.getProduct("bench-reactive-" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    //L1 is cleared, so every request is a GET to redis cache
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void blockingGetProduct() {
+        nearCache.evictLocal(null);
+        List<CompletableFuture<Product>> futures = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            String id = ids.get(i % ids.size());
+            futures.add(CompletableFuture.supplyAsync(() -> productService.getProduct(id), executor));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void reactiveGetProduct() {
+        nearCache.evictLocal(null);
+        Flux.range(0, REQUESTS)
+                .flatMap(i -> reactiveProductService.getProduct(ids.get(i % ids.size())), concurrency)
+                .blockLast();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void blockingXadd() {
+        List<CompletableFuture<?>> futures = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> template.opsForStream()
+                    .add(ObjectRecord.create(STREAM, new Order(UUID.randomUUID().toString(), 1000L))), executor));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void reactiveXadd() {
+        Flux.range(0, REQUESTS)
+                .flatMap(i -> reactiveTemplate.opsForStream()
+                        .add(ObjectRecord.create(STREAM, new Order(UUID.randomUUID().toString(), 1000L))), concurrency)
+                .blockLast();
+    }
+}
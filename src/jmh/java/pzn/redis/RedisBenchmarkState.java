@@ -0,0 +1,64 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//application context shared by all benchmark in one trial, run against RedisServerProcess
+@State(Scope.Benchmark)
+public class RedisBenchmarkState {
+
+    private RedisServerProcess server;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() {
+        server = RedisServerProcess.start();
+        context = new SpringApplicationBuilder(BelajarSpringRedisApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties().toArray(String[]::new))
+                .run();
+    }
+
+    //benchmark that need other setting extend this state and add to it
+    protected List<String> properties() {
+        List<String> properties = new ArrayList<>();
+        properties.add("spring.data.redis.host=" + server.getHost());
+        properties.add("spring.data.redis.port=" + server.getPort());
+        properties.add("logging.level.root=warn");
+        properties.add("logging.level.pzn.redis=warn");
+        return properties;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (context != null) {
+            context.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public <T> T bean(String name, Class<T> type) {
+        return context.getBean(name, type);
+    }
+
+    public StringRedisTemplate template() {
+        return context.getBean(StringRedisTemplate.class);
+    }
+}
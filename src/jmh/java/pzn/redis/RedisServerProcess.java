@@ -0,0 +1,97 @@
+package pzn.redis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+//redis server for benchmark, so benchmark can run offline without shared redis
+//when -Dredis.benchmark.host is set, that redis is used and nothing is spawned
+public class RedisServerProcess implements AutoCloseable {
+
+    private final String host;
+
+    private final int port;
+
+    private final Process process;
+
+    private RedisServerProcess(String host, int port, Process process) {
+        this.host = host;
+        this.port = port;
+        this.process = process;
+    }
+
+    public static RedisServerProcess start() {
+        String host = System.getProperty("redis.benchmark.host");
+        if (host != null) {
+            return new RedisServerProcess(host, Integer.getInteger("redis.benchmark.port", 6379), null);
+        }
+
+        int port = freePort();
+        try {
+            //no persistence, benchmark data is thrown away
+            Process process = new ProcessBuilder(List.of(System.getProperty("redis.benchmark.executable", "redis-server"),
+                    "--port", String.valueOf(port), "--save", "", "--appendonly", "no"))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            RedisServerProcess server = new RedisServerProcess("localhost", port, process);
+            server.awaitReady();
+            return server;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot start redis-server, install it or set -Dredis.benchmark.host", e);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private void awaitReady() {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket(host, port)) {
+                OutputStream out = socket.getOutputStream();
+                out.write("PING\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                InputStream in = socket.getInputStream();
+                byte[] reply = new byte[7];
+                if (in.read(reply) > 0 && new String(reply, StandardCharsets.US_ASCII).startsWith("+PONG")) {
+                    return;
+                }
+            } catch (IOException e) {
+                //not ready yet
+            }
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        close();
+        throw new IllegalStateException("redis-server is not ready on port " + port);
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (process != null) {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//same writes as RedisTest.pipeline() and RedisTest.transaction(), but measured
+//one invocation = "writes" SET command
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisWriteBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int writes;
+
+    @Benchmark
+    public void single(RedisBenchmarkState state) {
+        StringRedisTemplate template = state.template();
+        for (int i = 0; i < writes; i++) {
+            template.opsForValue().set("bench:write:" + i, "value");
+        }
+    }
+
+    @Benchmark
+    public List<Object> pipelined(RedisBenchmarkState state) {
+        return state.template().executePipelined(new SessionCallback<>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations redisOperations) throws DataAccessException {
+                for (int i = 0; i < writes; i++) {
+                    redisOperations.opsForValue().set("bench:write:" + i, "value");
+                }
+                return null;
+            }
+        });
+    }
+
+    @Benchmark
+    public Object transactional(RedisBenchmarkState state) {
+        return state.template().execute(new SessionCallback<>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations redisOperations) throws DataAccessException {
+                redisOperations.multi();
+                for (int i = 0; i < writes; i++) {
+                    redisOperations.opsForValue().set("bench:write:" + i, "value");
+                }
+                return redisOperations.exec();
+            }
+        });
+    }
+}
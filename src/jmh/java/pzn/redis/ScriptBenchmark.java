@@ -0,0 +1,140 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//latency of the same atomic operation with lua script (one EVALSHA) and with WATCH + MULTI/EXEC
+//MULTI/EXEC can't have condition inside, so the value is read after WATCH and the EXEC fail when it's changed
+//single thread, so EXEC never fail here, it's the best case of MULTI/EXEC
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptBenchmark {
+
+    private static final String PRODUCT = "bench-script";
+    private static final String PRODUCT_KEY = "products:" + PRODUCT;
+    private static final String INVENTORY_KEY = "inventory:" + PRODUCT;
+
+    private AtomicOperations atomicOperations;
+
+    private StringRedisTemplate template;
+
+    private long price;
+
+    //same stream as AtomicOperations.insertOrder
+    private String stream;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        atomicOperations = state.bean(AtomicOperations.class);
+        template = state.template();
+        state.bean(ProductRepository.class).save(Product.builder().id(PRODUCT).name("bench").price(1L).build());
+        price = 1L;
+        stream = state.bean(OrderPublisherProperties.class).getStream();
+    }
+
+    @Setup(Level.Iteration)
+    public void fillInventory() {
+        atomicOperations.setInventory(PRODUCT, Long.MAX_VALUE / 2);
+    }
+
+    //the script version also evict the cached product (DEL + PUBLISH), MULTI version doesn't
+    @Benchmark
+    public boolean casPriceScript() {
+        return atomicOperations.compareAndSetPrice(PRODUCT, price, ++price);
+    }
+
+    @Benchmark
+    public Object casPriceMulti() {
+        long expected = price;
+        long next = ++price;
+        return template.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.watch(PRODUCT_KEY);
+                Object current = operations.opsForHash().get(PRODUCT_KEY, ProductCodec.PRICE_FIELD);
+                if (!String.valueOf(expected).equals(current)) {
+                    operations.unwatch();
+                    return null;
+                }
+                operations.multi();
+                operations.opsForHash().put(PRODUCT_KEY, ProductCodec.PRICE_FIELD, String.valueOf(next));
+                operations.opsForZSet().add(ProductPriceIndex.KEY, PRODUCT, next);
+                return operations.exec();
+            }
+        });
+    }
+
+    @Benchmark
+    public Object decrementInventoryScript() {
+        return atomicOperations.decrementInventory(PRODUCT, 1, 0);
+    }
+
+    @Benchmark
+    public Object decrementInventoryMulti() {
+        return template.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.watch(INVENTORY_KEY);
+                Object current = operations.opsForValue().get(INVENTORY_KEY);
+                if (current == null || Long.parseLong((String) current) - 1 < 0) {
+                    operations.unwatch();
+                    return null;
+                }
+                operations.multi();
+                operations.opsForValue().decrement(INVENTORY_KEY, 1);
+                return operations.exec();
+            }
+        });
+    }
+
+    @Benchmark
+    public Object insertOrderScript() {
+        return atomicOperations.insertOrder(new Order(UUID.randomUUID().toString(), 1000L));
+    }
+
+    @Benchmark
+    public Object insertOrderMulti() {
+        Order order = new Order(UUID.randomUUID().toString(), 1000L);
+        String idempotencyKey = "orders:idempotency:" + order.getId();
+        return template.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.watch(idempotencyKey);
+                if (operations.opsForValue().get(idempotencyKey) != null) {
+                    operations.unwatch();
+                    return null;
+                }
+                operations.multi();
+                operations.opsForStream().add(ObjectRecord.create(stream, order));
+                //the record id is not known inside MULTI, so only a marker is saved
+                operations.opsForValue().set(idempotencyKey, "1", 1, TimeUnit.DAYS);
+                return operations.exec();
+            }
+        });
+    }
+}
@@ -0,0 +1,134 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//SellerLocationService with "members" sellers spread over java island (about 10 x 3 degrees)
+//the load (pipelined GEOADD) is timed once in setup and printed with the memory of the geo set,
+//10M members need a few GB of redis memory
+//query: 2km radius / 2km box around one of 1000 popular points plus up to ~50m of noise, first page of 20
+//cache=false: every query is a GEOSEARCH, cache=true: nearby queries share the candidates of their geohash cell
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class SellerLocationBenchmark {
+
+    private static final double MIN_LONGITUDE = 105.0;
+    private static final double MIN_LATITUDE = -8.8;
+    private static final double LONGITUDE_RANGE = 10.0;
+    private static final double LATITUDE_RANGE = 2.9;
+    private static final int POPULAR = 1_000;
+
+    @Param({"1000000", "10000000"})
+    private int members;
+
+    @Param({"false", "true"})
+    private boolean cache;
+
+    private SellerLocationService service;
+
+    private SellerLocationProperties properties;
+
+    private StringRedisTemplate template;
+
+    private final double[][] popular = new double[POPULAR][];
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        service = state.bean(SellerLocationService.class);
+        properties = state.bean(SellerLocationProperties.class);
+        properties.getCache().setEnabled(cache);
+        template = state.template();
+        template.delete(properties.getKey());
+
+        long start = System.nanoTime();
+        long loaded = service.load(() -> new RandomSellers(members));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Long usage = template.execute((RedisCallback<Long>) connection -> (Long) connection.execute("MEMORY",
+                "USAGE".getBytes(StandardCharsets.UTF_8), properties.getKey().getBytes(StandardCharsets.UTF_8),
+                "SAMPLES".getBytes(StandardCharsets.UTF_8), "0".getBytes(StandardCharsets.UTF_8)));
+        System.out.printf("%nloaded %d sellers in %d ms (%.0f per second), %d bytes (%.1f per seller)%n",
+                loaded, millis, loaded * 1000.0 / Math.max(1, millis), usage, (double) usage / loaded);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < POPULAR; i++) {
+            popular[i] = new double[]{MIN_LONGITUDE + random.nextDouble() * LONGITUDE_RANGE,
+                    MIN_LATITUDE + random.nextDouble() * LATITUDE_RANGE};
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        template.unlink(properties.getKey());
+    }
+
+    @Benchmark
+    public Slice<SellerLocationService.SellerDistance> radius() {
+        double[] point = near();
+        return service.searchRadius(point[0], point[1], 2_000, PageRequest.of(0, 20));
+    }
+
+    @Benchmark
+    public Slice<SellerLocationService.SellerDistance> box() {
+        double[] point = near();
+        return service.searchBox(point[0], point[1], 2_000, 2_000, PageRequest.of(0, 20));
+    }
+
+    //about 0.0005 degree = 50m around a popular point
+    private double[] near() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double[] point = popular[random.nextInt(POPULAR)];
+        return new double[]{point[0] + random.nextDouble(-0.0005, 0.0005), point[1] + random.nextDouble(-0.0005, 0.0005)};
+    }
+
+    //made while loading, 10M sellers are never in memory together
+    private static class RandomSellers implements Iterator<SellerLocationService.SellerLocation> {
+
+        private final int count;
+
+        private int next;
+
+        RandomSellers(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public SellerLocationService.SellerLocation next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return new SellerLocationService.SellerLocation("seller-" + next++,
+                    MIN_LONGITUDE + random.nextDouble() * LONGITUDE_RANGE, MIN_LATITUDE + random.nextDouble() * LATITUDE_RANGE);
+        }
+    }
+}
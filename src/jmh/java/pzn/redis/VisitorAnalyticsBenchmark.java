@@ -0,0 +1,122 @@
+package pzn.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//ProductVisitorAnalytics: ingest (record + flush every 1000 visits) and range query latency
+//90 days before today are filled with "visitorsPerDay" visitors each (pipelined PFADD, 1000 per call)
+//merge-threshold 1000: every range is one PFCOUNT of all its day keys (merged by redis on every call)
+//merge-threshold 7: the past days are PFMERGE-d once and reused, the query is PFCOUNT of merged + today
+//memory of one full day key is printed at the end (dense hyperloglog is about 12KB whatever the visitors)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class VisitorAnalyticsBenchmark {
+
+    private static final String PRODUCT = "bench-visitors";
+    private static final int DAYS = 90;
+    private static final int FLUSH_EVERY = 1000;
+
+    @Param({"10000"})
+    private int visitorsPerDay;
+
+    @Param({"7", "1000"})
+    private int mergeThreshold;
+
+    private StringRedisTemplate template;
+
+    private ProductVisitorAnalytics analytics;
+
+    private LocalDate today;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmarkState state) {
+        template = state.template();
+        analytics = state.bean(ProductVisitorAnalytics.class);
+        state.bean(VisitorAnalyticsProperties.class).setMergeThreshold(mergeThreshold);
+        today = LocalDate.now(ZoneOffset.UTC);
+        deleteKeys();
+        for (int day = 1; day <= DAYS; day++) {
+            String key = analytics.dayKey(PRODUCT, today.minusDays(day));
+            for (int from = 0; from < visitorsPerDay; from += 1000) {
+                int start = from;
+                template.executePipelined(new SessionCallback<>() {
+                    @Override
+                    @SuppressWarnings({"unchecked", "rawtypes"})
+                    public Object execute(RedisOperations operations) throws DataAccessException {
+                        for (int i = start; i < Math.min(start + 1000, visitorsPerDay); i++) {
+                            operations.opsForHyperLogLog().add(key, "visitor-" + ThreadLocalRandom.current().nextInt(visitorsPerDay * 10));
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        String key = analytics.dayKey(PRODUCT, today.minusDays(1));
+        Long usage = template.execute((RedisCallback<Long>) connection -> (Long) connection.execute("MEMORY",
+                "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+        System.out.printf("%nmemory of one day key with %d visitors: %d bytes%n", visitorsPerDay, usage);
+        deleteKeys();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FLUSH_EVERY)
+    public void ingest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < FLUSH_EVERY; i++) {
+            analytics.record("bench-ingest-" + random.nextInt(100), "visitor-" + random.nextInt(1_000_000));
+        }
+        analytics.flush();
+    }
+
+    @Benchmark
+    public long range30Days() {
+        return analytics.uniqueVisitors(PRODUCT, today.minusDays(29), today);
+    }
+
+    @Benchmark
+    public long range90Days() {
+        return analytics.uniqueVisitors(PRODUCT, today.minusDays(DAYS - 1), today);
+    }
+
+    private void deleteKeys() {
+        for (String pattern : List.of("analytics:visitors:" + PRODUCT + ":*", "analytics:visitors:bench-ingest-*")) {
+            Set<String> keys = template.keys(pattern);
+            if (keys != null && !keys.isEmpty()) {
+                template.delete(keys);
+            }
+        }
+    }
+}
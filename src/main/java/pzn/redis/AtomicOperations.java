@@ -0,0 +1,104 @@
+package pzn.redis;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+//atomic operation with condition, every one is a script in resources/scripts run by RedisScripts
+//the MULTI/EXEC version of these need WATCH and a retry loop, see ScriptBenchmark
+@Component
+public class AtomicOperations {
+
+    private static final String INVENTORY_PREFIX = "inventory:";
+    private static final String IDEMPOTENCY_PREFIX = "orders:idempotency:";
+
+    private final RedisScripts scripts;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final CacheManager cacheManager;
+
+    private final OrderPublisherProperties orderProperties;
+
+    private final OrderStreamRetention retention;
+
+    private final ProductLocalCache productLocalCache;
+
+    public AtomicOperations(RedisScripts scripts, StringRedisTemplate redisTemplate, CacheManager cacheManager,
+                            OrderPublisherProperties orderProperties, OrderStreamRetention retention,
+                            ProductLocalCache productLocalCache) {
+        this.scripts = scripts;
+        this.redisTemplate = redisTemplate;
+        this.cacheManager = cacheManager;
+        this.orderProperties = orderProperties;
+        this.retention = retention;
+        this.productLocalCache = productLocalCache;
+    }
+
+    //change the price in products:<id> and products:price only when the current price is the expected one
+    //the cached product is removed (on every instance) so the next read see the new price,
+    //the local copy of findById on other instance is removed by client tracking
+    public boolean compareAndSetPrice(String productId, long expected, long price) {
+        Long changed = scripts.execute("product-price-cas", ReturnType.INTEGER,
+                List.of("products:" + productId, ProductPriceIndex.KEY),
+                List.of(ProductCodec.PRICE_FIELD, String.valueOf(expected), String.valueOf(price), productId));
+        if (changed == null || changed == 0) {
+            return false;
+        }
+        Cache cache = cacheManager.getCache("products");
+        if (cache != null) {
+            cache.evict(productId);
+        }
+        productLocalCache.evict(productId);
+        return true;
+    }
+
+    public void setInventory(String productId, long stock) {
+        redisTemplate.opsForValue().set(INVENTORY_PREFIX + productId, String.valueOf(stock));
+    }
+
+    //the stock left, empty when the stock would go below the floor (nothing is taken)
+    public OptionalLong decrementInventory(String productId, long quantity, long floor) {
+        Long left = scripts.execute("inventory-decrement", ReturnType.INTEGER,
+                List.of(INVENTORY_PREFIX + productId),
+                List.of(String.valueOf(quantity), String.valueOf(floor)));
+        return left == null ? OptionalLong.empty() : OptionalLong.of(left);
+    }
+
+    //XADD to the orders stream only the first time the order id is seen (within the idempotency ttl),
+    //so a publisher can retry after a timeout without making duplicate
+    public OrderInsert insertOrder(Order order) {
+        //same fields as opsForStream().add(ObjectRecord), so OrderListener read it the same way,
+        //the stream hash mapper give them as byte[] (ObjectHashMapper), so they're decoded for the script args
+        Map<Object, Object> hash = redisTemplate.opsForStream().getHashMapper(Order.class).toHash(order);
+        List<String> args = new ArrayList<>(hash.size() * 2 + 3);
+        args.add(String.valueOf(orderProperties.getIdempotencyTtl().toSeconds()));
+        args.addAll(retention.scriptTrimArgs());
+        hash.forEach((field, value) -> {
+            args.add(text(field));
+            args.add(text(value));
+        });
+
+        List<Object> result = scripts.execute("order-insert", ReturnType.MULTI,
+                List.of(IDEMPOTENCY_PREFIX + order.getId(), orderProperties.getStream()), args);
+        RecordId id = RecordId.of(new String((byte[]) result.get(1), StandardCharsets.UTF_8));
+        return new OrderInsert(id, ((Long) result.get(0)) == 1L);
+    }
+
+    private static String text(Object value) {
+        return value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    //inserted false mean duplicate, id is the record of the first insert
+    public record OrderInsert(RecordId id, boolean inserted) {
+    }
+}
@@ -0,0 +1,12 @@
+package pzn.redis;
+
+import org.springframework.data.redis.connection.Message;
+
+import java.util.List;
+
+//like MessageListener, but get the messages of one channel together, see BatchingMessageListener
+@FunctionalInterface
+public interface BatchMessageListener {
+
+    void onMessages(List<Message> messages);
+}
@@ -0,0 +1,200 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//container call onMessage for every message, here it's only put in the queue of its channel (shard),
+//one thread per channel take the messages and give them to BatchMessageListener as one list,
+//when max-batch-size is reached or max-batch-delay passed since the first message of the batch
+//the container thread never wait here, full queue: BLOCK put the message aside (at most queue-capacity of them) and
+//the delivery thread move it to the queue when there's space, or drop it after offer-timeout, DROP drop right away
+@Slf4j
+public class BatchingMessageListener implements MessageListener, DisposableBean {
+
+    private static final long IDLE_POLL_MILLIS = 100L;
+
+    private final String name;
+
+    private final BatchMessageListener delegate;
+
+    private final CustomerChannelProperties properties;
+
+    private final ThreadFactory threadFactory;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final Counter delivered;
+
+    private final Counter dropped;
+
+    private volatile boolean running = true;
+
+    //threadFactory null mean platform thread
+    public BatchingMessageListener(String name, BatchMessageListener delegate, CustomerChannelProperties properties,
+                                   ThreadFactory threadFactory, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.delegate = delegate;
+        this.properties = properties;
+        this.threadFactory = threadFactory;
+        this.delivered = Counter.builder("pubsub.messages.delivered").tag("listener", name).register(meterRegistry);
+        this.dropped = Counter.builder("pubsub.messages.dropped").tag("listener", name).register(meterRegistry);
+        Gauge.builder("pubsub.messages.queued", lanes,
+                        map -> map.values().stream().mapToInt(lane -> lane.queue.size()).sum())
+                .tag("listener", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Lane lane = lanes.computeIfAbsent(channel, Lane::new);
+        boolean queued = properties.getOverflow() == CustomerChannelProperties.Overflow.DROP
+                ? lane.queue.offer(message)
+                : lane.offerOrWait(message);
+        if (!queued) {
+            dropped.increment();
+        }
+    }
+
+    public double getDelivered() {
+        return delivered.count();
+    }
+
+    public double getDropped() {
+        return dropped.count();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes.values()) {
+            lane.thread.join(properties.getMaxBatchDelay().toMillis() + IDLE_POLL_MILLIS);
+        }
+    }
+
+    private class Lane {
+
+        private final String channel;
+
+        private final BlockingQueue<Message> queue;
+
+        //BLOCK only, messages that came when the queue was full, oldest first, guarded by the lane
+        private final Deque<Waiting> waiting = new ArrayDeque<>();
+
+        private final Thread thread;
+
+        Lane(String channel) {
+            this.channel = channel;
+            this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+            if (threadFactory != null) {
+                this.thread = threadFactory.newThread(this::deliver);
+            } else {
+                this.thread = new Thread(this::deliver, name + "-batch-" + channel);
+                this.thread.setDaemon(true);
+            }
+            this.thread.start();
+        }
+
+        //once a message is waiting, the next ones wait too, so they still go to the queue in the order they came
+        synchronized boolean offerOrWait(Message message) {
+            if (waiting.isEmpty() && queue.offer(message)) {
+                return true;
+            }
+            if (waiting.size() >= properties.getQueueCapacity()) {
+                return false;
+            }
+            waiting.addLast(new Waiting(message, System.nanoTime() + properties.getOfferTimeout().toNanos()));
+            return true;
+        }
+
+        //delivery thread, the ones that waited longer than offer-timeout are dropped
+        private void moveWaiting() {
+            int expired = 0;
+            synchronized (this) {
+                long now = System.nanoTime();
+                while (!waiting.isEmpty()) {
+                    Waiting first = waiting.peekFirst();
+                    if (now - first.deadline() > 0) {
+                        waiting.removeFirst();
+                        expired++;
+                    } else if (queue.offer(first.message())) {
+                        waiting.removeFirst();
+                    } else {
+                        break;
+                    }
+                }
+            }
+            if (expired > 0) {
+                dropped.increment(expired);
+            }
+        }
+
+        private synchronized boolean hasWaiting() {
+            return !waiting.isEmpty();
+        }
+
+        private void deliver() {
+            List<Message> batch = new ArrayList<>(properties.getMaxBatchSize());
+            while (running || !queue.isEmpty() || hasWaiting()) {
+                try {
+                    moveWaiting();
+                    Message first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + properties.getMaxBatchDelay().toNanos();
+                    while (batch.size() < properties.getMaxBatchSize()) {
+                        //take what's already there first, wait only when the queue is empty
+                        moveWaiting();
+                        if (queue.drainTo(batch, properties.getMaxBatchSize() - batch.size()) > 0) {
+                            continue;
+                        }
+                        long remaining = deadline - System.nanoTime();
+                        Message next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    invoke(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void invoke(List<Message> batch) {
+            try {
+                delegate.onMessages(List.copyOf(batch));
+                delivered.increment(batch.size());
+            } catch (RuntimeException e) {
+                //pubsub can't be redelivered, the batch is lost, same as a failing MessageListener
+                log.warn("Failed to handle {} messages from {}: {}", batch.size(), channel, e.getMessage());
+                dropped.increment(batch.size());
+            }
+        }
+    }
+
+    private record Waiting(Message message, long deadline) {
+    }
+}
@@ -1,9 +1,14 @@
 package pzn.redis;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -11,6 +16,7 @@ import org.springframework.data.redis.connection.stream.Consumer;
 import org.springframework.data.redis.connection.stream.ObjectRecord;
 import org.springframework.data.redis.connection.stream.ReadOffset;
 import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
@@ -19,13 +25,17 @@ import org.springframework.data.redis.stream.StreamMessageListenerContainer;
 import org.springframework.data.redis.stream.Subscription;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Slf4j
 @SpringBootApplication
 @EnableScheduling
+//so every class with @ConfigurationProperties (app.* setting) registered automatically
+@ConfigurationPropertiesScan
 //add this on application to enable feature repository on redis:
-@EnableRedisRepositories
+//keyspace events make redis tell us when products with ttl expire, so its index (and phantom key) is removed too
+@EnableRedisRepositories(enableKeyspaceEvents = RedisKeyValueAdapter.EnableKeyspaceEvents.ON_STARTUP)
 //to enable feature caching, we need add annotation like this :
 @EnableCaching
 //this feature for saving data temporarily in memory, like cache, and we can
@@ -36,55 +46,132 @@ public class BelajarSpringRedisApplication {
     private StringRedisTemplate redisTemplate;
 
     //make a bean container that will read and gather all listener that we make
+    //when app.reactive.enabled=true, ReactiveOrderConsumer read the orders instead
     @Bean(destroyMethod = "stop", initMethod = "start")
-    public StreamMessageListenerContainer<String, ObjectRecord<String, Order>> orderContainer(RedisConnectionFactory connectionFactory) {
-        var options = StreamMessageListenerContainer.StreamMessageListenerContainerOptions
+    @ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public StreamMessageListenerContainer<String, ObjectRecord<String, Order>> orderContainer(@Qualifier("blockingRedisConnectionFactory") RedisConnectionFactory connectionFactory,
+                                                                                              OrderConsumerProperties properties,
+                                                                                              ListenerExecution listenerExecution) {
+        var builder = StreamMessageListenerContainer.StreamMessageListenerContainerOptions
                 .builder()
-                .pollTimeout(Duration.ofSeconds(5))
-                .targetType(Order.class)
-                .build();
+                .pollTimeout(properties.getPollTimeout())
+                .batchSize(properties.getBatchSize())
+                .targetType(Order.class);
+        //poll loop is blocking (XREADGROUP with timeout), on virtual thread it doesn't hold a platform thread
+        if (listenerExecution.isVirtual()) {
+            builder.executor(listenerExecution.executor("order-poll-"));
+        }
+        var options = builder.build();
 
         return StreamMessageListenerContainer.create(connectionFactory, options);
     }
 
     //make subscription using stream listener that already made, so we can make which group the stream is
     //and register our listener to the container
+    //every consumer has its own poll thread, the record then processed by worker in OrderDispatcher
     @Bean
-    public Subscription orderSubscription(StreamMessageListenerContainer<String, ObjectRecord<String, Order>> container,
-                                          OrderListener orderListener) {
+    @ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public List<Subscription> orderSubscriptions(StreamMessageListenerContainer<String, ObjectRecord<String, Order>> container,
+                                                 OrderDispatcher orderDispatcher, OrderConsumerProperties properties,
+                                                 InstanceIdentity instanceIdentity, StreamMonitor streamMonitor) {
         try {
-            redisTemplate.opsForStream().createGroup("orders", "my-group");
-        } catch (Throwable e) {
-            //consumer group already exists
+            redisTemplate.opsForStream().createGroup(properties.getStream(), properties.getGroup());
+        } catch (RuntimeException e) {
+            //consumer group already exists is fine, anything else (redis down, wrong type) is logged,
+            //the container keep polling, so it work once the stream and group can be read
+            if (!StreamMonitor.isBusyGroup(e)) {
+                log.error("Failed to create consumer group {} on {}", properties.getGroup(), properties.getStream(), e);
+                streamMonitor.recordError(properties.getStream(), properties.getGroup());
+            }
         }
 
-        var offset = StreamOffset.create("orders", ReadOffset.lastConsumed());
-        var consumer = Consumer.from("my-group", "consumer-1");
-        var readRequest = StreamMessageListenerContainer.StreamReadRequest.builder(offset)
-                .consumer(consumer)
-                .autoAcknowledge(true)
-                .cancelOnError(throwable -> false)
-                .errorHandler(throwable -> log.warn(throwable.getMessage()))
-                .build();
+        List<Subscription> subscriptions = new ArrayList<>();
+        for (int i = 1; i <= properties.getConsumers(); i++) {
+            //consumer name must be unique in the group, so it's made from the configured name or instance id
+            String consumerName = properties.consumerName(instanceIdentity, String.valueOf(i));
+            var offset = StreamOffset.create(properties.getStream(), ReadOffset.lastConsumed());
+            var consumer = Consumer.from(properties.getGroup(), consumerName);
+            var readRequest = StreamMessageListenerContainer.StreamReadRequest.builder(offset)
+                    .consumer(consumer)
+                    //acknowledge is done by OrderDispatcher after OrderListener success
+                    .autoAcknowledge(false)
+                    .cancelOnError(throwable -> false)
+                    .errorHandler(throwable -> {
+                        log.warn("Failed to read orders as {}", consumerName, throwable);
+                        streamMonitor.recordError(properties.getStream(), properties.getGroup());
+                    })
+                    .build();
 
-        return container.register(readRequest, orderListener);
+            subscriptions.add(container.register(readRequest, record -> orderDispatcher.dispatch(consumerName, record)));
+        }
+        return subscriptions;
     }
 
     //make listener container for pubsub, the difference between this container and stream listener container
     //the pubsub container can get new data only, but stream, can get whatever data you need (last consumed, or with different clause)
 
+    //customers message is queued per shard and delivered to CustomerListener as batch
+    @Bean
+    public BatchingMessageListener customerBatchListener(CustomerListener customerListener,
+                                                         CustomerChannelProperties properties,
+                                                         ListenerExecution listenerExecution,
+                                                         MeterRegistry meterRegistry) {
+        return new BatchingMessageListener("customers", customerListener, properties,
+                listenerExecution.threadFactory("customers-batch-"), meterRegistry);
+    }
+
     @Bean
     //yes, it's using bean too
-    public RedisMessageListenerContainer messageListenerContainer(RedisConnectionFactory connectionFactory
-                                                                  , CustomerListener customerListener) {
+    //subscription hold its connection all the time, so it's on the blocking lane too
+    public RedisMessageListenerContainer messageListenerContainer(@Qualifier("blockingRedisConnectionFactory") RedisConnectionFactory connectionFactory
+                                                                  , BatchingMessageListener customerBatchListener
+                                                                  , CustomerChannel customerChannel
+                                                                  , RedisCommandMetrics redisCommandMetrics
+                                                                  , ListenerExecution listenerExecution
+                                                                  , ListenerProperties listenerProperties
+                                                                  , MeterRegistry meterRegistry) {
         var container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
-        container.addMessageListener(customerListener, new ChannelTopic("customers"));
+        //default executor is SimpleAsyncTaskExecutor, a new thread for every message, so messages of one channel
+        //run in any order and a blocked listener (customers queue full) hold more and more threads,
+        //one dispatch thread keep the order of every channel, the customers batch listener only queue the message
+        //without waiting (BatchingMessageListener), the real work is on the customers batch threads
+        Counter rejected = Counter.builder("pubsub.messages.dropped").tag("listener", "container").register(meterRegistry);
+        container.setTaskExecutor(listenerExecution.serialExecutor("redis-listener-",
+                listenerProperties.getDispatchQueueCapacity(), rejected::increment));
+        if (listenerExecution.isVirtual()) {
+            container.setSubscriptionExecutor(listenerExecution.executor("redis-subscription-"));
+        }
+        //listener is wrapped, so the time to handle every message is recorded as redis.message{prefix=<channel prefix>}
+        //one subscription for every customers shard
+        container.addMessageListener(redisCommandMetrics.instrument(customerBatchListener), customerChannel.topics());
         return container;
         //it's simpler than stream container
         //we don't need to subscribe, cause pubsub will always get data, doesn't have any clause
     }
 
+    //near cache listen to this channel, so L1 removed when other instance change the cache
+    //it has its own container (own subscription and executor), so an invalidation never wait behind customers messages
+    @Bean
+    public RedisMessageListenerContainer invalidationListenerContainer(@Qualifier("blockingRedisConnectionFactory") RedisConnectionFactory connectionFactory
+                                                                       , NearCacheManager nearCacheManager
+                                                                       , CachePolicyProperties cachePolicyProperties
+                                                                       , RedisCommandMetrics redisCommandMetrics
+                                                                       , ListenerExecution listenerExecution) {
+        var container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //default executor is SimpleAsyncTaskExecutor, with virtual thread every message get a virtual thread instead,
+        //eviction doesn't care about the order, so they can run at the same time
+        if (listenerExecution.isVirtual()) {
+            container.setTaskExecutor(listenerExecution.executor("redis-invalidation-"));
+            container.setSubscriptionExecutor(listenerExecution.executor("redis-invalidation-subscription-"));
+        }
+        //bounded only limit the concurrency (app.listeners.max-concurrency) when virtual thread is used
+        container.addMessageListener(listenerExecution.bounded(redisCommandMetrics.instrument(nearCacheManager)),
+                new ChannelTopic(cachePolicyProperties.getInvalidationChannel()));
+        return container;
+    }
+
     public static void main(String[] args) {
         SpringApplication.run(BelajarSpringRedisApplication.class, args);
     }
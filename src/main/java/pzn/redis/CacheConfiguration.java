@@ -0,0 +1,113 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+//when we make our own cache manager, spring boot will not make the redis cache manager anymore
+//so we build it here from spring.cache.redis.* the same way spring boot does, then wrap it with near cache
+@Configuration
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfiguration {
+
+    @Bean
+    public RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory, CacheProperties cacheProperties,
+                                               CachePolicyProperties cachePolicyProperties, MeterRegistry meterRegistry) {
+        RedisCacheConfiguration defaults = defaultConfiguration(cacheProperties.getRedis());
+
+        //writer is shared by every cache, so max entry size is given per cache name
+        Map<String, Long> maxEntrySizes = new HashMap<>();
+        cachePolicyProperties.getCaches().forEach((name, policy) -> {
+            if (policy.getMaxEntrySize() != null) {
+                maxEntrySizes.put(name, policy.getMaxEntrySize().toBytes());
+            }
+        });
+        RedisCacheWriter cacheWriter = new SizeLimitedRedisCacheWriter(
+                RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory), maxEntrySizes, meterRegistry);
+
+        var builder = RedisCacheManager.builder(cacheWriter).cacheDefaults(defaults);
+        if (cacheProperties.getRedis().isEnableStatistics()) {
+            builder.enableStatistics();
+        }
+        if (!cacheProperties.getCacheNames().isEmpty()) {
+            builder.initialCacheNames(new LinkedHashSet<>(cacheProperties.getCacheNames()));
+        }
+        //cache that have its own policy, ex: products use compact serializer and shorter ttl for null
+        cachePolicyProperties.getCaches().forEach((name, policy) ->
+                builder.withCacheConfiguration(name, cacheConfiguration(defaults, policy, cacheProperties.getRedis())));
+        return builder.build();
+    }
+
+    private RedisCacheConfiguration cacheConfiguration(RedisCacheConfiguration defaults, CachePolicyProperties.Policy policy,
+                                                       CacheProperties.Redis redis) {
+        Duration timeToLive = policy.getTimeToLive() != null ? policy.getTimeToLive() : redis.getTimeToLive();
+        return defaults
+                .entryTtl(new CacheTtlFunction(timeToLive, policy.getTimeToLiveJitter(), policy.getNullTimeToLive()))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        serializer(policy.getSerializer())));
+    }
+
+    private RedisCacheConfiguration defaultConfiguration(CacheProperties.Redis redis) {
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        serializer(CachePolicyProperties.Serializer.JDK)));
+        if (redis.getTimeToLive() != null) {
+            config = config.entryTtl(redis.getTimeToLive());
+        }
+        if (redis.getKeyPrefix() != null) {
+            config = config.prefixCacheNameWith(redis.getKeyPrefix());
+        }
+        if (!redis.isCacheNullValues()) {
+            config = config.disableCachingNullValues();
+        }
+        if (!redis.isUseKeyPrefix()) {
+            config = config.disableKeyPrefix();
+        }
+        return config;
+    }
+
+    private RedisSerializer<Object> serializer(CachePolicyProperties.Serializer serializer) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        return switch (serializer) {
+            case JDK -> new JdkSerializationRedisSerializer(classLoader);
+            case COMPACT -> new CompactProductRedisSerializer(classLoader);
+            //readable in redis-cli, bigger than compact, the class name is saved in the value
+            case JSON -> new GenericJackson2JsonRedisSerializer();
+        };
+    }
+
+    //this is the one that used by @Cacheable, @CachePut and @CacheEvict
+    @Bean
+    @Primary
+    public NearCacheManager cacheManager(RedisCacheManager redisCacheManager, CacheProperties cacheProperties,
+                                         CachePolicyProperties cachePolicyProperties, StringRedisTemplate redisTemplate,
+                                         InstanceIdentity instanceIdentity, RedisTracking redisTracking,
+                                         ProductTrackingProperties trackingProperties, MeterRegistry meterRegistry) {
+        NearCacheManager cacheManager = new NearCacheManager(redisCacheManager, cachePolicyProperties,
+                cacheProperties.getRedis().getTimeToLive(), redisTemplate, instanceIdentity.getId(), meterRegistry);
+        //in bcast mode redis also tell when the cache entry changed, even when nobody publish to the invalidation channel
+        String keyPrefix = cacheProperties.getRedis().getKeyPrefix();
+        if (trackingProperties.isBcast() && keyPrefix != null) {
+            redisTracking.addListener(keyPrefix, key ->
+                    cacheManager.evictRedisKey(key == null ? null : key.substring(keyPrefix.length())));
+        }
+        return cacheManager;
+    }
+}
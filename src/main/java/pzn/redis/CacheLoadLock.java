@@ -0,0 +1,46 @@
+package pzn.redis;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+//distributed lock with lease, used so only one instance load the same cache key
+//the lock is SET NX PX with random token, only the owner of the token can remove it
+public class CacheLoadLock {
+
+    //get and del must be atomic, or we can remove the lock that already taken by other instance after the lease
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final String prefix;
+
+    private final Duration lease;
+
+    public CacheLoadLock(StringRedisTemplate redisTemplate, String cacheName, Duration lease) {
+        this.redisTemplate = redisTemplate;
+        this.prefix = "lock:" + cacheName + "::";
+        this.lease = lease;
+    }
+
+    public Duration getLease() {
+        return lease;
+    }
+
+    //return the token when success, null when other instance have the lock
+    public String tryAcquire(String key) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(prefix + key, token, lease);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    public void release(String key, String token) {
+        redisTemplate.execute(RELEASE, List.of(prefix + key), token);
+    }
+}
@@ -0,0 +1,83 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+//setting per cache name, the default still come from spring.cache.redis.*
+//ex: app.cache.caches.products.near.enabled=true
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class CachePolicyProperties {
+
+    //channel that used to tell other instances to remove their local (L1) copy
+    private String invalidationChannel = "cache-invalidations";
+
+    private Map<String, Policy> caches = new HashMap<>();
+
+    //thread that refresh stale and almost expired entries in background
+    private int refreshThreads = 2;
+
+    public Policy policyFor(String cacheName) {
+        return caches.getOrDefault(cacheName, new Policy());
+    }
+
+    @Data
+    public static class Policy {
+        //null mean spring.cache.redis.time-to-live
+        private Duration timeToLive;
+
+        //random 0..jitter added to the ttl of every entry, so entries written together doesn't expire together
+        private Duration timeToLiveJitter = Duration.ZERO;
+
+        //ttl of cached null (data that doesn't exist), null mean same as time-to-live
+        private Duration nullTimeToLive;
+
+        //serialized value bigger than this is not cached, null mean no limit
+        private DataSize maxEntrySize;
+
+        private Near near = new Near();
+
+        //how value saved in redis, compact only know product, other value still use jdk
+        private Serializer serializer = Serializer.JDK;
+
+        //how a miss is loaded, only used when near cache enabled, cause it's done by NearCache
+        private Loading loading = new Loading();
+    }
+
+    public enum Serializer {
+        JDK, COMPACT, JSON
+    }
+
+    //near cache is in-process cache (L1) in front of redis cache (L2)
+    @Data
+    public static class Near {
+        private boolean enabled = false;
+
+        private long maximumSize = 10_000L;
+
+        //will be capped by the redis ttl of the cache, L1 can't live longer than L2
+        private Duration timeToLive = Duration.ofSeconds(30);
+    }
+
+    //stampede protection for @Cacheable(sync = true)
+    //concurrent miss on the same key in one instance always wait for one loader
+    @Data
+    public static class Loading {
+        //SET NX lock in redis, so only one instance run the loader, the others wait for the value in redis
+        private boolean lock = false;
+
+        //lock is removed automatically after this, in case the instance die while loading
+        private Duration lockLease = Duration.ofSeconds(5);
+
+        //expired L1 entry still returned for this long while it's refreshed in background, zero mean disabled
+        private Duration staleWhileRevalidate = Duration.ZERO;
+
+        //probabilistic early refresh (xfetch), bigger beta mean refresh earlier, zero mean disabled
+        private double earlyRefreshBeta = 0;
+    }
+}
@@ -0,0 +1,36 @@
+package pzn.redis;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+//ttl for every cache entry, used instead of the fixed entryTtl
+//jitter: random extra time, so entries that written together (ex: bulk load) doesn't expire together
+//null ttl: cached null (missing data) usually should live shorter than the real data
+public class CacheTtlFunction implements RedisCacheWriter.TtlFunction {
+
+    private final Duration timeToLive;
+
+    private final Duration jitter;
+
+    private final Duration nullTimeToLive;
+
+    public CacheTtlFunction(Duration timeToLive, Duration jitter, Duration nullTimeToLive) {
+        this.timeToLive = timeToLive == null ? Duration.ZERO : timeToLive;
+        this.jitter = jitter == null ? Duration.ZERO : jitter;
+        this.nullTimeToLive = nullTimeToLive;
+    }
+
+    @Override
+    public Duration getTimeToLive(Object key, Object value) {
+        Duration ttl = (value == null || value instanceof NullValue) && nullTimeToLive != null
+                ? nullTimeToLive : timeToLive;
+        //zero mean the entry never expire, no jitter for that
+        if (ttl.isZero() || ttl.isNegative() || jitter.isZero()) {
+            return ttl;
+        }
+        return ttl.plusMillis(ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1));
+    }
+}
@@ -0,0 +1,40 @@
+package pzn.redis;
+
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+//serializer for cache that contain product, product is written with ProductCodec
+//other value (ex: null value marker) and old entries that still using jdk serialization
+//will use jdk serializer, so the cache still can be read while migrating
+public class CompactProductRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> fallback;
+
+    public CompactProductRedisSerializer(ClassLoader classLoader) {
+        this.fallback = new JdkSerializationRedisSerializer(classLoader);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof Product product) {
+            return ProductCodec.encode(product);
+        }
+        return fallback.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (ProductCodec.isEncoded(bytes)) {
+            try {
+                return ProductCodec.decode(bytes);
+            } catch (RuntimeException e) {
+                throw new SerializationException("Cannot decode product", e);
+            }
+        }
+        return fallback.deserialize(bytes);
+    }
+}
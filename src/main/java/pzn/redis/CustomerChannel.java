@@ -0,0 +1,39 @@
+package pzn.redis;
+
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//one channel can only be handled as fast as one subscriber connection read it and one queue drain it,
+//so customers are spread to several channel, the same key always go to the same shard,
+//the order per key is kept because the container dispatch every message on one thread
+//and every shard has one queue and one delivery thread in BatchingMessageListener
+//it's plain SUBSCRIBE per shard channel, SPUBLISH / SSUBSCRIBE only matter in redis cluster
+//and RedisMessageListenerContainer doesn't support it
+@Component
+public class CustomerChannel {
+
+    private final CustomerChannelProperties properties;
+
+    public CustomerChannel(CustomerChannelProperties properties) {
+        this.properties = properties;
+    }
+
+    public String shardFor(String key) {
+        return shard(Math.floorMod(key.hashCode(), properties.getShards()));
+    }
+
+    public String shard(int index) {
+        return properties.getName() + ".{" + index + "}";
+    }
+
+    public List<ChannelTopic> topics() {
+        List<ChannelTopic> topics = new ArrayList<>(properties.getShards());
+        for (int i = 0; i < properties.getShards(); i++) {
+            topics.add(new ChannelTopic(shard(i)));
+        }
+        return topics;
+    }
+}
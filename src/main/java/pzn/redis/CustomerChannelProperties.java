@@ -0,0 +1,38 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//customers pubsub is split to customers.{0} .. customers.{shards - 1}, the shard is chosen by the customer key
+//the listener put the messages of every shard in its own queue, and deliver them as batch
+@Data
+@ConfigurationProperties(prefix = "app.customers.channel")
+public class CustomerChannelProperties {
+
+    private String name = "customers";
+
+    private int shards = 4;
+
+    //message delivered when this many is waiting, or max-batch-delay passed since the first one
+    private int maxBatchSize = 100;
+
+    private Duration maxBatchDelay = Duration.ofMillis(20);
+
+    //queue per shard, between the container thread and the batch delivery,
+    //with BLOCK the same number of messages can wait for space in it
+    private int queueCapacity = 10_000;
+
+    private Overflow overflow = Overflow.BLOCK;
+
+    //BLOCK only: how long a message wait for space in the queue before it's dropped, the container thread doesn't wait
+    private Duration offerTimeout = Duration.ofSeconds(1);
+
+    public enum Overflow {
+        //wait for space, drop after offer-timeout
+        BLOCK,
+        //drop the new message right away
+        DROP
+    }
+}
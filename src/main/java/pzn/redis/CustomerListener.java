@@ -5,15 +5,24 @@ import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 //not only stream that can make listener, pubsub also can make listener
 //the difference in stream we implement stream listener, and in pubsub we implement
 //message listener
+//the container give the messages to BatchingMessageListener, and it call onMessages with a batch per shard
 @Slf4j
 @Component
-public class CustomerListener implements MessageListener {
+public class CustomerListener implements MessageListener, BatchMessageListener {
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
         log.info("Receive message: {}", new String(message.getBody()));
     }
+
+    @Override
+    public void onMessages(List<Message> messages) {
+        log.info("Receive {} messages from {}", messages.size(), new String(messages.get(0).getChannel()));
+        messages.forEach(message -> log.debug("Receive message: {}", new String(message.getBody())));
+    }
 }
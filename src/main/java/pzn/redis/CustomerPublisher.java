@@ -1,6 +1,7 @@
 package pzn.redis;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -8,14 +9,21 @@ import org.springframework.stereotype.Component;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
+//when app.reactive.enabled=true, the reactive publisher is used instead
 @Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class CustomerPublisher {
     @Autowired
     private StringRedisTemplate redisTemplate;
 
+    @Autowired
+    private CustomerChannel customerChannel;
+
     @Scheduled(fixedRate = 10L, timeUnit = TimeUnit.SECONDS)
     public void publishCustomer() {
         //look at this, in pubsub we publish with convert and send, cause pubsub doesn't have operation
-        redisTemplate.convertAndSend("customers", "customer " + UUID.randomUUID());
+        //the channel is the shard of the customer, ex: customers.{2}
+        String customer = UUID.randomUUID().toString();
+        redisTemplate.convertAndSend(customerChannel.shardFor(customer), "customer " + customer);
     }
 }
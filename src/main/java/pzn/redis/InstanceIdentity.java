@@ -0,0 +1,33 @@
+package pzn.redis;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+//when we run more than one instance of the app against the same redis, every instance need a name
+//so the message that instance sent can be recognized (ex: cache invalidation) and every consumer can have unique name
+@Component
+public class InstanceIdentity {
+
+    private final String id;
+
+    public InstanceIdentity(@Value("${spring.application.name}") String applicationName) {
+        this.id = applicationName + "-" + hostName() + "-" + ProcessHandle.current().pid();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            //fallback to environment, usually available on container
+            String hostName = System.getenv("HOSTNAME");
+            return hostName != null ? hostName : "localhost";
+        }
+    }
+}
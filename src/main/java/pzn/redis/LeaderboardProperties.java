@@ -0,0 +1,37 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+//top products by order amount (ProductLeaderboard)
+@Data
+@ConfigurationProperties(prefix = "app.leaderboard")
+public class LeaderboardProperties {
+
+    private boolean enabled = true;
+
+    private String keyPrefix = "leaderboard:products:";
+
+    //amounts are added up locally and sent as one pipeline of ZINCRBY this often
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    //the windows are rebuilt (ZUNIONSTORE) and the local snapshot replaced this often
+    private Duration refreshInterval = Duration.ofSeconds(5);
+
+    //products kept in the snapshot of every window, the most a top-N read can return
+    private int size = 100;
+
+    //name -> sliding window, minute precision, longer than 1 hour use hour buckets for the full hours
+    private Map<String, Duration> windows = new HashMap<>(Map.of(
+            "5m", Duration.ofMinutes(5),
+            "1h", Duration.ofHours(1),
+            "24h", Duration.ofHours(24)));
+
+    public Duration longestWindow() {
+        return windows.values().stream().max(Duration::compareTo).orElse(Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,90 @@
+package pzn.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+//one switch for every listener and publisher thread: spring.threads.virtual.enabled
+//spring boot already use it for @Scheduled (and tomcat), this class use it for the redis containers and OrderDispatcher
+//with virtual thread every invocation get its own thread, so the limit is a semaphore, not the pool size
+@Slf4j
+@Component
+public class ListenerExecution {
+
+    private final boolean virtual;
+
+    private final int maxConcurrency;
+
+    @Autowired
+    public ListenerExecution(Environment environment, ListenerProperties properties) {
+        this(Threading.VIRTUAL.isActive(environment), properties.getMaxConcurrency());
+        if (!virtual && environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            log.warn("spring.threads.virtual.enabled is true but virtual thread need java 21, using platform thread");
+        }
+    }
+
+    public ListenerExecution(boolean virtual, int maxConcurrency) {
+        this.virtual = virtual;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    //null when virtual thread is not used, so the container keep its default executor
+    public VirtualThreadTaskExecutor executor(String threadNamePrefix) {
+        return virtual ? new VirtualThreadTaskExecutor(threadNamePrefix) : null;
+    }
+
+    public ThreadFactory threadFactory(String threadNamePrefix) {
+        return virtual ? new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory() : null;
+    }
+
+    //one thread (virtual or platform), tasks run one after another in the order they were given,
+    //at most queueCapacity wait, the ones after that go to onRejected and are not run
+    public ThreadPoolTaskExecutor serialExecutor(String threadNamePrefix, int queueCapacity, Runnable onRejected) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setDaemon(true);
+        if (virtual) {
+            executor.setThreadFactory(threadFactory(threadNamePrefix));
+        }
+        executor.setRejectedExecutionHandler((task, pool) -> onRejected.run());
+        executor.initialize();
+        return executor;
+    }
+
+    //every message is already run on its own (virtual) thread by the container,
+    //the semaphore only make sure one listener doesn't run more than max concurrency at the same time
+    public MessageListener bounded(MessageListener listener) {
+        if (!virtual) {
+            return listener;
+        }
+        Semaphore permits = new Semaphore(maxConcurrency);
+        return (message, pattern) -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                listener.onMessage(message, pattern);
+            } finally {
+                permits.release();
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+//setting for pubsub listener execution
+@Data
+@ConfigurationProperties(prefix = "app.listeners")
+public class ListenerProperties {
+
+    //max invocation of the same listener at the same time, every listener has its own limit,
+    //so one slow listener doesn't take the permit of the others
+    //when spring.threads.virtual.enabled=true
+    private int maxConcurrency = 64;
+
+    //messages waiting for the customers pubsub container dispatch thread, the ones after that are dropped
+    private int dispatchQueueCapacity = 10_000;
+}
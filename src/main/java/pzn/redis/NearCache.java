@@ -0,0 +1,434 @@
+package pzn.redis;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+//two tier cache, L1 is in-process caffeine cache, L2 is the redis cache
+//read will check L1 first, so hot data doesn't need network round trip and deserialization
+//every write is forwarded to redis, and other instances are told to remove their L1 copy
+//get(key, loader) (used by @Cacheable(sync = true)) also protect the loader from stampede:
+//one load per key in this instance, optional redis lock across instances, stale-while-revalidate and early refresh
+@Slf4j
+public class NearCache implements Cache {
+
+    private final Cache redisCache;
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, Entry> local;
+
+    //called with the key (or null for clear) so other instances can drop their local copy
+    private final Consumer<String> invalidationPublisher;
+
+    private final long timeToLiveNanos;
+
+    private final long nullTimeToLiveNanos;
+
+    private final double earlyRefreshBeta;
+
+    //null when lock disabled
+    private final CacheLoadLock lock;
+
+    private final Executor refresher;
+
+    //load that running now, concurrent miss on the same key wait for this instead of calling the loader again
+    private final Map<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    //average time of the loader, used by early refresh
+    private volatile long loadNanos;
+
+    private final Counter l1Hit;
+    private final Counter l1Miss;
+    private final Counter l2Hit;
+    private final Counter l2Miss;
+    private final Counter loaded;
+    private final Counter coalesced;
+    private final Counter lockWait;
+    private final Counter stale;
+    private final Counter earlyRefresh;
+
+    public NearCache(Cache redisCache, long maximumSize, Duration timeToLive, Duration nullTimeToLive,
+                     CachePolicyProperties.Loading loadingPolicy,
+                     CacheLoadLock lock, Executor refresher, Consumer<String> invalidationPublisher,
+                     MeterRegistry meterRegistry) {
+        this.redisCache = redisCache;
+        this.invalidationPublisher = invalidationPublisher;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nullTimeToLiveNanos = nullTimeToLive.toNanos();
+        this.earlyRefreshBeta = loadingPolicy.getEarlyRefreshBeta();
+        this.lock = lock;
+        this.refresher = refresher;
+        //entry is kept a little longer than its ttl, so it still can be returned as stale value
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive.plus(loadingPolicy.getStaleWhileRevalidate()))
+                .build();
+
+        String name = redisCache.getName();
+        this.l1Hit = counter(meterRegistry, name, "l1", "hit");
+        this.l1Miss = counter(meterRegistry, name, "l1", "miss");
+        this.l2Hit = counter(meterRegistry, name, "l2", "hit");
+        this.l2Miss = counter(meterRegistry, name, "l2", "miss");
+        ratio(meterRegistry, name, "l1", l1Hit, l1Miss);
+        ratio(meterRegistry, name, "l2", l2Hit, l2Miss);
+        this.loaded = loadCounter(meterRegistry, name, "load");
+        this.coalesced = loadCounter(meterRegistry, name, "coalesced");
+        this.lockWait = loadCounter(meterRegistry, name, "lock_wait");
+        this.stale = loadCounter(meterRegistry, name, "stale");
+        this.earlyRefresh = loadCounter(meterRegistry, name, "early_refresh");
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        Entry entry = local.getIfPresent(localKey);
+        if (entry != null && !entry.isStale(System.nanoTime())) {
+            l1Hit.increment();
+            return entry;
+        }
+        l1Miss.increment();
+
+        ValueWrapper value = redisCache.get(key);
+        if (value != null) {
+            l2Hit.increment();
+            local.put(localKey, entry(value.get()));
+        } else {
+            l2Miss.increment();
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper value = get(key);
+        if (value == null || value.get() == null) {
+            return null;
+        }
+        if (type != null && !type.isInstance(value.get())) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value.get());
+        }
+        return (T) value.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        long now = System.nanoTime();
+        Entry entry = local.getIfPresent(localKey);
+        if (entry != null) {
+            if (!entry.isStale(now)) {
+                l1Hit.increment();
+                if (shouldRefreshEarly(entry, now)) {
+                    earlyRefresh.increment();
+                    refreshAsync(key, valueLoader);
+                }
+                return (T) entry.get();
+            }
+            //expired, but still in stale window, return it and let the refresh run in background
+            stale.increment();
+            refreshAsync(key, valueLoader);
+            return (T) entry.get();
+        }
+        l1Miss.increment();
+
+        ValueWrapper value = redisCache.get(key);
+        if (value != null) {
+            l2Hit.increment();
+            local.put(localKey, entry(value.get()));
+            return (T) value.get();
+        }
+        l2Miss.increment();
+
+        //not in L1 and L2, only one thread load it, the other wait for the result
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(localKey, future);
+        if (running != null) {
+            coalesced.increment();
+            return (T) join(key, valueLoader, running);
+        }
+        try {
+            //a load that ended between the miss above and putIfAbsent already filled L1 and L2,
+            //read them again or the loader run a second time for the same key
+            ValueWrapper filled = reread(key, localKey);
+            if (filled != null) {
+                coalesced.increment();
+            }
+            Object result = filled != null ? filled.get() : load(key, valueLoader);
+            future.complete(result);
+            return (T) result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(localKey, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        local.put(localKey(key), entry(value));
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        local.invalidate(localKey(key));
+        invalidationPublisher.accept(localKey(key));
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        local.invalidate(localKey(key));
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = redisCache.evictIfPresent(key);
+        local.invalidate(localKey(key));
+        invalidationPublisher.accept(localKey(key));
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        local.invalidateAll();
+        invalidationPublisher.accept(null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = redisCache.invalidate();
+        local.invalidateAll();
+        invalidationPublisher.accept(null);
+        return invalidated;
+    }
+
+    //used by RedisBulkCache, it reads L1 first then MGET the rest from redis in one round trip
+    public ValueWrapper getLocal(Object key) {
+        Entry entry = local.getIfPresent(localKey(key));
+        if (entry == null || entry.isStale(System.nanoTime())) {
+            l1Miss.increment();
+            return null;
+        }
+        l1Hit.increment();
+        return entry;
+    }
+
+    public void putLocal(Object key, Object value) {
+        local.put(localKey(key), entry(value));
+    }
+
+    public void recordRemote(int hits, int misses) {
+        l2Hit.increment(hits);
+        l2Miss.increment(misses);
+    }
+
+    public Cache getRedisCache() {
+        return redisCache;
+    }
+
+    //called when other instance change the data, only remove L1, redis already have the new data
+    public void evictLocal(String key) {
+        if (key == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+    }
+
+    //redis cache convert the key to string too, so every instance will get same key
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    //L1 (not stale) then L2, without counting hit and miss, null when it's in neither
+    private ValueWrapper reread(Object key, String localKey) {
+        Entry entry = local.getIfPresent(localKey);
+        if (entry != null && !entry.isStale(System.nanoTime())) {
+            return entry;
+        }
+        ValueWrapper value = redisCache.get(key);
+        if (value != null) {
+            local.put(localKey, entry(value.get()));
+        }
+        return value;
+    }
+
+    //with lock, instance that doesn't get the lock wait until the owner put the value to redis
+    //if the owner is too slow (lease is over), load it anyway, stale data is better than no data
+    private Object load(Object key, Callable<?> valueLoader) {
+        String localKey = localKey(key);
+        String token = null;
+        if (lock != null) {
+            token = lock.tryAcquire(localKey);
+            if (token == null) {
+                lockWait.increment();
+                ValueWrapper value = waitForOwner(key);
+                if (value != null) {
+                    local.put(localKey, entry(value.get()));
+                    return value.get();
+                }
+            }
+        }
+
+        try {
+            long start = System.nanoTime();
+            Object value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            //moving average, so one slow load doesn't make every entry refreshed early
+            long elapsed = System.nanoTime() - start;
+            loadNanos = loadNanos == 0 ? elapsed : (loadNanos * 7 + elapsed) / 8;
+            loaded.increment();
+
+            //filling a miss doesn't change the data, so other instances don't need to be told
+            redisCache.put(key, value);
+            local.put(localKey, entry(value));
+            return value;
+        } finally {
+            if (token != null) {
+                lock.release(localKey, token);
+            }
+        }
+    }
+
+    private ValueWrapper waitForOwner(Object key) {
+        long deadline = System.nanoTime() + lock.getLease().toNanos();
+        long sleep = 10;
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            ValueWrapper value = redisCache.get(key);
+            if (value != null) {
+                return value;
+            }
+            sleep = Math.min(sleep * 2, 200);
+        }
+        return null;
+    }
+
+    //refresh is coalesced too, if a load for this key is already running nothing is started
+    private void refreshAsync(Object key, Callable<?> valueLoader) {
+        String localKey = localKey(key);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(localKey, future) != null) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    future.complete(load(key, valueLoader));
+                } catch (RuntimeException e) {
+                    //the old value is still served until it's gone from L1
+                    log.warn("Refresh cache {} key {} failed: {}", getName(), localKey, e.getMessage());
+                    future.completeExceptionally(e);
+                } finally {
+                    loading.remove(localKey, future);
+                }
+            });
+        } catch (RuntimeException e) {
+            //executor is full or shutting down
+            loading.remove(localKey, future);
+        }
+    }
+
+    //xfetch: refresh with probability that grows near the expiry, and sooner when the loader is slow
+    //now - loadTime * beta * ln(random) >= expiry
+    private boolean shouldRefreshEarly(Entry entry, long now) {
+        if (earlyRefreshBeta <= 0 || loadNanos == 0) {
+            return false;
+        }
+        long gap = (long) (loadNanos * earlyRefreshBeta * -Math.log(ThreadLocalRandom.current().nextDouble()));
+        return now + gap - entry.expiresAt >= 0;
+    }
+
+    private static Object join(Object key, Callable<?> valueLoader, CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    private Entry entry(Object value) {
+        return new Entry(value, System.nanoTime() + (value == null ? nullTimeToLiveNanos : timeToLiveNanos));
+    }
+
+    //L1 value with the time it become stale, caffeine remove it after the stale window too
+    private record Entry(Object value, long expiresAt) implements ValueWrapper {
+
+        @Override
+        public Object get() {
+            return value;
+        }
+
+        boolean isStale(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String cacheName, String level, String result) {
+        return Counter.builder("cache.near.requests")
+                .tag("cache", cacheName)
+                .tag("level", level)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static Counter loadCounter(MeterRegistry registry, String cacheName, String type) {
+        return Counter.builder("cache.near.loads")
+                .tag("cache", cacheName)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private static void ratio(MeterRegistry registry, String cacheName, String level, Counter hit, Counter miss) {
+        Gauge.builder("cache.near.hit.ratio", () -> {
+                    double total = hit.count() + miss.count();
+                    return total == 0 ? 0 : hit.count() / total;
+                })
+                .tag("cache", cacheName)
+                .tag("level", level)
+                .register(registry);
+    }
+}
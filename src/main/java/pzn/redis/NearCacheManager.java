@@ -0,0 +1,145 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//cache manager that wrap redis cache manager, cache that have near.enabled=true will get L1 in front of it
+//it also a pubsub listener, so when other instance change the cache, the L1 in this instance will be removed
+@Slf4j
+public class NearCacheManager implements CacheManager, MessageListener, DisposableBean {
+
+    //message format: instanceId|cacheName|key, key "*" mean clear all
+    private static final String SEPARATOR = "|";
+    private static final String ALL = "*";
+
+    private final CacheManager redisCacheManager;
+
+    private final CachePolicyProperties properties;
+
+    private final Duration redisTimeToLive;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final String instanceId;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    //background refresh for stale-while-revalidate and early refresh, shared by every near cache
+    private final ExecutorService refresher;
+
+    public NearCacheManager(CacheManager redisCacheManager, CachePolicyProperties properties, Duration redisTimeToLive,
+                            StringRedisTemplate redisTemplate, String instanceId, MeterRegistry meterRegistry) {
+        this.redisCacheManager = redisCacheManager;
+        this.properties = properties;
+        this.redisTimeToLive = redisTimeToLive;
+        this.redisTemplate = redisTemplate;
+        this.instanceId = instanceId;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger sequence = new AtomicInteger();
+        this.refresher = Executors.newFixedThreadPool(properties.getRefreshThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "cache-refresh-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    private Cache createCache(String name) {
+        Cache redisCache = redisCacheManager.getCache(name);
+        CachePolicyProperties.Policy policy = properties.policyFor(name);
+        CachePolicyProperties.Near near = policy.getNear();
+        if (redisCache == null || !near.isEnabled()) {
+            return redisCache;
+        }
+
+        CachePolicyProperties.Loading loading = policy.getLoading();
+        CacheLoadLock lock = loading.isLock() ? new CacheLoadLock(redisTemplate, name, loading.getLockLease()) : null;
+        Duration redisTtl = policy.getTimeToLive() != null ? policy.getTimeToLive() : redisTimeToLive;
+        Duration localTtl = cap(near.getTimeToLive(), redisTtl);
+        return new NearCache(redisCache, near.getMaximumSize(), localTtl, cap(localTtl, policy.getNullTimeToLive()),
+                loading, lock, refresher, key -> publishInvalidation(name, key), meterRegistry);
+    }
+
+    //L1 must not live longer than the data in redis
+    private static Duration cap(Duration timeToLive, Duration max) {
+        if (max == null || max.isZero() || max.isNegative()) {
+            return timeToLive;
+        }
+        return timeToLive.compareTo(max) > 0 ? max : timeToLive;
+    }
+
+    private void publishInvalidation(String cacheName, String key) {
+        redisTemplate.convertAndSend(properties.getInvalidationChannel(), invalidationMessage(cacheName, key));
+    }
+
+    //RedisBulkCache send these in its own pipeline instead of one PUBLISH per key
+    public String invalidationMessage(String cacheName, String key) {
+        return instanceId + SEPARATOR + cacheName + SEPARATOR + (key == null ? ALL : key);
+    }
+
+    public String getInvalidationChannel() {
+        return properties.getInvalidationChannel();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody()).split("\\" + SEPARATOR, 3);
+        if (parts.length != 3 || instanceId.equals(parts[0])) {
+            //message from this instance, the L1 already up to date
+            return;
+        }
+
+        evictLocal(parts[1], ALL.equals(parts[2]) ? null : parts[2]);
+    }
+
+    //null key clear the whole L1 of that cache
+    public void evictLocal(String cacheName, String key) {
+        if (caches.get(cacheName) instanceof NearCache nearCache) {
+            log.debug("Evict near cache {} key {}", cacheName, key);
+            nearCache.evictLocal(key);
+        }
+    }
+
+    //from RedisTracking, the redis cache key without the prefix (<cache name>::<key>), null mean FLUSHDB
+    //the put of this instance is invalidated too (different connection), the next get read L2 again, once
+    public void evictRedisKey(String redisKey) {
+        if (redisKey == null) {
+            caches.keySet().forEach(name -> evictLocal(name, null));
+            return;
+        }
+        int separator = redisKey.indexOf("::");
+        if (separator > 0) {
+            evictLocal(redisKey.substring(0, separator), redisKey.substring(separator + 2));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+}
@@ -12,6 +12,12 @@ import lombok.NoArgsConstructor;
 public class Order {
     private String id;
     private Long amount;
+    //product that ordered, used by ProductLeaderboard, null field is not written to the stream
+    private String productId;
     //this data will be key, and the class will be map data
     // following by value automatically build by spring redis
+
+    public Order(String id, Long amount) {
+        this(id, amount, null);
+    }
 }
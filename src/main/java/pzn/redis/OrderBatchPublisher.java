@@ -0,0 +1,194 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//publisher that can be called from many threads, the order is buffered first
+//then sent together as pipelined XADD, so one round trip for many orders
+@Slf4j
+@Component
+public class OrderBatchPublisher {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final OrderPublisherProperties properties;
+
+    private final OrderStreamRetention retention;
+
+    private final BlockingQueue<PendingOrder> buffer;
+
+    private final DistributionSummary batchSize;
+    private final Timer flushLatency;
+    private final Counter rejected;
+
+    private volatile boolean running;
+
+    private Thread flusher;
+
+    public OrderBatchPublisher(StringRedisTemplate redisTemplate, OrderPublisherProperties properties,
+                               OrderStreamRetention retention, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.retention = retention;
+        this.buffer = new ArrayBlockingQueue<>(properties.getBufferCapacity());
+
+        this.batchSize = DistributionSummary.builder("orders.publisher.batch.size")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("orders.publisher.flush")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder("orders.publisher.rejected")
+                .register(meterRegistry);
+        Gauge.builder("orders.publisher.queue.depth", buffer, BlockingQueue::size)
+                .register(meterRegistry);
+    }
+
+    //the future will be completed with record id after the batch flushed
+    //after stop() it's failed right away, nobody would flush it anymore
+    public CompletableFuture<RecordId> publish(Order order) {
+        PendingOrder pending = new PendingOrder(order, new CompletableFuture<>());
+        if (!running) {
+            reject(pending, "Order publisher is stopped");
+            return pending.future();
+        }
+        try {
+            //when buffer is full, caller wait here, so caller can't be faster than redis
+            if (!buffer.offer(pending, properties.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                reject(pending, "Order buffer is full");
+            } else if (!running && buffer.remove(pending)) {
+                //stop() happened while offering and didn't drain it, when it did, stop() flush or fail it
+                reject(pending, "Order publisher is stopped");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future().completeExceptionally(e);
+        }
+        return pending.future();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::run, "order-publisher-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        //no interrupt, so the batch that being flushed is not cancelled, the loop stop after flush interval
+        running = false;
+        flusher.join(properties.getFlushInterval().toMillis() * 10 + 1000);
+        //the rest that still in buffer must be sent before shutdown
+        List<PendingOrder> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        for (int i = 0; i < rest.size(); i += properties.getBatchSize()) {
+            flush(rest.subList(i, Math.min(rest.size(), i + properties.getBatchSize())));
+        }
+        //added by a publish() that started before running was false, too late to be sent
+        List<PendingOrder> late = new ArrayList<>();
+        buffer.drainTo(late);
+        late.forEach(pending -> reject(pending, "Order publisher is stopped"));
+    }
+
+    private void reject(PendingOrder pending, String reason) {
+        rejected.increment();
+        pending.future().completeExceptionally(new RejectedExecutionException(reason));
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<PendingOrder> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    //wait for the first order, then collect more until batch is full or flush interval passed
+    private List<PendingOrder> nextBatch() throws InterruptedException {
+        int size = properties.getBatchSize();
+        long interval = properties.getFlushInterval().toNanos();
+        List<PendingOrder> batch = new ArrayList<>(size);
+
+        PendingOrder first = buffer.poll(interval, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + interval;
+        while (batch.size() < size) {
+            buffer.drainTo(batch, size - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= size || remaining <= 0) {
+                break;
+            }
+            PendingOrder next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void flush(List<PendingOrder> batch) {
+        long start = System.nanoTime();
+        //same trim for the whole batch, with MAXLEN ~ / MINID ~ redis trim only when a whole node can be removed
+        XAddOptions options = retention.addOptions();
+        try {
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations redisOperations) throws DataAccessException {
+                    for (PendingOrder pending : batch) {
+                        ObjectRecord<String, Order> record = ObjectRecord.create(properties.getStream(), pending.order());
+                        redisOperations.opsForStream().add(record, options);
+                    }
+                    return null;
+                }
+            });
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete((RecordId) results.get(i));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish {} orders: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        } finally {
+            batchSize.record(batch.size());
+            flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private record PendingOrder(Order order, CompletableFuture<RecordId> future) {
+    }
+}
@@ -0,0 +1,66 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//setting for consumer group that read orders stream
+@Data
+@ConfigurationProperties(prefix = "app.orders.consumer")
+public class OrderConsumerProperties {
+
+    private String stream = "orders";
+
+    private String group = "my-group";
+
+    //consumer per instance, every consumer get unique name from "name" (or instance id) + number
+    private int consumers = 2;
+
+    //set it to a name that stay the same after restart and is unique per instance (ex: statefulset pod name),
+    //so a restarted instance continue as the same consumers, empty: instance id, which has the pid and change every start
+    private String name;
+
+    private Duration pollTimeout = Duration.ofSeconds(5);
+
+    //maximum record read in one poll
+    private int batchSize = 100;
+
+    //thread that run OrderListener, default is number of cores
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    //record waiting for worker, when it's full the consumer stop polling until there is space
+    private int queueCapacity = 1_000;
+
+    //when true order with same id always processed by same worker, so the order is kept
+    private boolean orderedByKey = false;
+
+    private Reclaim reclaim = new Reclaim();
+
+    public String consumerName(InstanceIdentity instanceIdentity, String suffix) {
+        return (name == null || name.isBlank() ? instanceIdentity.getId() : name) + "-" + suffix;
+    }
+
+    //pending entry that not acknowledged for too long (consumer die) will be moved to live consumer
+    @Data
+    public static class Reclaim {
+        private boolean enabled = true;
+
+        private Duration interval = Duration.ofSeconds(30);
+
+        //entry idle more than this is considered abandoned
+        private Duration minIdle = Duration.ofMinutes(1);
+
+        //maximum entry claimed in one XAUTOCLAIM call
+        private int batchSize = 100;
+
+        //entry delivered this many times and still failed will be moved to dead letter stream
+        private int maxDeliveries = 5;
+
+        private String deadLetterStream = "orders:dlq";
+
+        //consumer with nothing pending and idle this long is removed from the group (XGROUP DELCONSUMER),
+        //so the consumers of dead instances don't stay forever, zero: never removed
+        private Duration consumerMaxIdle = Duration.ofHours(1);
+    }
+}
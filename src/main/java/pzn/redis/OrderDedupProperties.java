@@ -0,0 +1,43 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//consumer side dedup of the orders stream (OrderDeduplicator), the same order id is processed once within the window
+//even when it's in the stream twice (publisher without insertOrder) or delivered again (reclaim after a slow consumer)
+@Data
+@ConfigurationProperties(prefix = "app.orders.dedup")
+public class OrderDedupProperties {
+
+    private boolean enabled = true;
+
+    private Mode mode = Mode.SETS;
+
+    //how long a processed order id is remembered
+    private Duration window = Duration.ofHours(1);
+
+    //ids are written to the bucket of the current time, the whole bucket expire at once,
+    //smaller bucket = memory freed sooner, but more keys checked per id
+    private Duration bucketSize = Duration.ofMinutes(10);
+
+    //an order claimed by a consumer that didn't finish (instance died) can be claimed again after this,
+    //must be longer than the slowest OrderListener
+    private Duration lease = Duration.ofMinutes(5);
+
+    //bloom only: order ids expected in one bucket, the bitmap size is made for this number
+    private long expectedItems = 100_000;
+
+    //bloom only: chance that a new order is taken as already processed (and skipped), per bucket
+    private double falsePositiveRate = 0.0001;
+
+    private String keyPrefix = "orders:dedup:";
+
+    public enum Mode {
+        //one SET of order ids per bucket, exact, around 80 bytes per id
+        SETS,
+        //one bitmap per bucket (bloom filter), around 2.4 bytes per id at 0.0001, but a false positive skip a new order
+        BLOOM
+    }
+}
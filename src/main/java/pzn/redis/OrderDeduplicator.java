@@ -0,0 +1,250 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//exactly-once effect for the order consumers (OrderDispatcher, ReactiveOrderConsumer), per batch:
+//1. claim: one script (order-dedup-claim) for the whole batch, an order id already processed is a duplicate
+//   (acknowledged without OrderListener), one claimed by another consumer is left pending, the rest is claimed
+//2. complete: one pipeline for the whole batch, processed ids are written to the current bucket, failed ids
+//   are unclaimed so the redelivery is processed, then the XACK that was already there
+//so dedup add one round trip per batch, the second one replace the XACK
+//an id is marked processed only after OrderListener success, a failure or a dead instance never lose the order,
+//but an order processed right before the instance die (not marked yet) is processed again
+@Slf4j
+@Component
+public class OrderDeduplicator {
+
+    private static final String SCRIPT = "order-dedup-claim";
+
+    private static final double LN2 = Math.log(2);
+
+    //redis string (bitmap) can't be bigger than 512MB
+    private static final long MAX_BITS = 1L << 32;
+
+    private final RedisScripts scripts;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final OrderDedupProperties properties;
+
+    private final OrderConsumerProperties consumerProperties;
+
+    private final long bits;
+
+    private final int hashes;
+
+    private final Counter claimed;
+    private final Counter duplicates;
+    private final Counter inFlight;
+
+    public OrderDeduplicator(RedisScripts scripts, StringRedisTemplate redisTemplate, OrderDedupProperties properties,
+                             OrderConsumerProperties consumerProperties, MeterRegistry meterRegistry) {
+        this.scripts = scripts;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.consumerProperties = consumerProperties;
+        //bloom filter size for n items and false positive rate p: m = -n ln p / ln2^2 bits, k = m / n ln2 hashes
+        long items = Math.max(1, properties.getExpectedItems());
+        this.bits = Math.min(MAX_BITS, Math.max(64, (long) Math.ceil(-items * Math.log(properties.getFalsePositiveRate()) / (LN2 * LN2))));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / items * LN2));
+        this.claimed = Counter.builder("orders.dedup.claims").tag("result", "claimed").register(meterRegistry);
+        this.duplicates = Counter.builder("orders.dedup.claims").tag("result", "duplicate").register(meterRegistry);
+        this.inFlight = Counter.builder("orders.dedup.claims").tag("result", "in-flight").register(meterRegistry);
+    }
+
+    //one result per id, same order, order without id can't be deduplicated and is always claimed
+    //when redis fail every id is in flight, so nothing is processed or acknowledged and the batch is reclaimed later
+    public List<Claim> claim(List<String> orderIds) {
+        List<Claim> result = new ArrayList<>(Collections.nCopies(orderIds.size(), Claim.CLAIMED));
+        if (!properties.isEnabled()) {
+            return result;
+        }
+        List<Integer> positions = new ArrayList<>(orderIds.size());
+        List<String> args = new ArrayList<>();
+        args.add(isBloom() ? "bloom" : "sets");
+        args.add(String.valueOf(properties.getLease().toMillis()));
+        args.add(String.valueOf(properties.getWindow().plus(properties.getLease()).toMillis()));
+        args.add(String.valueOf(hashes));
+        for (int i = 0; i < orderIds.size(); i++) {
+            String id = orderIds.get(i);
+            if (id == null) {
+                continue;
+            }
+            positions.add(i);
+            args.add(id);
+            if (isBloom()) {
+                for (long bit : bits(id)) {
+                    args.add(String.valueOf(bit));
+                }
+            }
+        }
+        if (positions.isEmpty()) {
+            return result;
+        }
+
+        List<Long> claims;
+        try {
+            claims = scripts.execute(SCRIPT, ReturnType.MULTI, keys(), args);
+        } catch (RuntimeException e) {
+            log.warn("Failed to claim {} orders, left for reclaim: {}", positions.size(), e.getMessage());
+            Collections.fill(result, Claim.IN_FLIGHT);
+            return result;
+        }
+        for (int i = 0; i < positions.size(); i++) {
+            Claim claim = Claim.values()[claims.get(i).intValue()];
+            result.set(positions.get(i), claim);
+            (claim == Claim.CLAIMED ? claimed : claim == Claim.DUPLICATE ? duplicates : inFlight).increment();
+        }
+        return result;
+    }
+
+    //processed: marked and acknowledged, duplicate: acknowledged, failed: unclaimed and left pending
+    //when this fail the processed orders are not marked, they are reclaimed after the lease and processed again
+    public void complete(List<Completion> completions) {
+        List<RecordId> acknowledged = new ArrayList<>(completions.size());
+        List<String> processed = new ArrayList<>();
+        List<String> unclaimed = new ArrayList<>();
+        for (Completion completion : completions) {
+            if (completion.outcome() != Outcome.FAILED) {
+                acknowledged.add(completion.recordId());
+            }
+            if (completion.orderId() == null || completion.outcome() == Outcome.DUPLICATE) {
+                continue;
+            }
+            unclaimed.add(completion.orderId());
+            if (completion.outcome() == Outcome.PROCESSED) {
+                processed.add(completion.orderId());
+            }
+        }
+        if (acknowledged.isEmpty() && (unclaimed.isEmpty() || !properties.isEnabled())) {
+            return;
+        }
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                if (properties.isEnabled()) {
+                    mark(connection, processed);
+                    if (!unclaimed.isEmpty()) {
+                        connection.hashCommands().hDel(bytes(inFlightKey()), unclaimed.stream().map(OrderDeduplicator::bytes)
+                                .toArray(byte[][]::new));
+                    }
+                }
+                if (!acknowledged.isEmpty()) {
+                    connection.streamCommands().xAck(bytes(consumerProperties.getStream()), consumerProperties.getGroup(),
+                            acknowledged.toArray(RecordId[]::new));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to complete {} orders: {}", completions.size(), e.getMessage());
+        }
+    }
+
+    private void mark(RedisConnection connection, List<String> processed) {
+        if (processed.isEmpty()) {
+            return;
+        }
+        byte[] bucket = bytes(bucketKey(currentBucket()));
+        for (String id : processed) {
+            if (isBloom()) {
+                for (long bit : bits(id)) {
+                    connection.stringCommands().setBit(bucket, bit, true);
+                }
+            } else {
+                connection.setCommands().sAdd(bucket, bytes(id));
+            }
+        }
+        //the bucket is still checked until window after its end
+        connection.keyCommands().pExpire(bucket, properties.getWindow().plus(properties.getBucketSize()).toMillis());
+    }
+
+    private boolean isBloom() {
+        return properties.getMode() == OrderDedupProperties.Mode.BLOOM;
+    }
+
+    //in-flight hash, then every bucket of the window, current first
+    private List<String> keys() {
+        long current = currentBucket();
+        long count = Math.max(1, -Math.floorDiv(-properties.getWindow().toMillis(), properties.getBucketSize().toMillis()));
+        List<String> keys = new ArrayList<>();
+        keys.add(inFlightKey());
+        for (long bucket = current; bucket > current - count - 1 && bucket >= 0; bucket--) {
+            keys.add(bucketKey(bucket));
+        }
+        return keys;
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / properties.getBucketSize().toMillis();
+    }
+
+    private String inFlightKey() {
+        return properties.getKeyPrefix() + "in-flight";
+    }
+
+    //mode and bucket size are in the key, so changing them doesn't mix sets, bitmaps or bucket numbers
+    String bucketKey(long bucket) {
+        String mode = isBloom() ? "bloom" : "sets";
+        return properties.getKeyPrefix() + mode + ":" + properties.getBucketSize().toSeconds() + ":" + bucket;
+    }
+
+    //k bit positions from two 64 bit hash (double hashing), computed here so the script stay simple
+    long[] bits(String id) {
+        long h1 = fnv1a(id);
+        long h2 = mix(h1) | 1;
+        long[] positions = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            positions[i] = Math.floorMod(h1 + i * h2, bits);
+        }
+        return positions;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    //splitmix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //same order as the number returned by the script
+    public enum Claim {
+        CLAIMED,
+        DUPLICATE,
+        IN_FLIGHT
+    }
+
+    public enum Outcome {
+        PROCESSED,
+        FAILED,
+        DUPLICATE
+    }
+
+    public record Completion(RecordId recordId, String orderId, Outcome outcome) {
+    }
+}
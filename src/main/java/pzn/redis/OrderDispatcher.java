@@ -0,0 +1,288 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//stream container only have one thread per consumer, so the record is passed to worker here
+//and the consumer can poll again without waiting OrderListener finish
+//unordered: one queue shared by all workers, ordered by key: one queue + one worker per lane
+//record is acknowledged only after OrderListener success, one XACK for every batch that worker take
+//with virtual thread (spring.threads.virtual.enabled) and unordered, there's no worker and no queue:
+//every record run on its own virtual thread, "workers" become the number of semaphore permit,
+//one claimer thread take the records in batch (for OrderDeduplicator) and start the record threads,
+//and the acknowledged ids are collected and sent by one acker thread
+//every batch is claimed before OrderListener, so an order already processed is acknowledged without running it again
+@Slf4j
+@Component
+public class OrderDispatcher {
+
+    private static final long IDLE_POLL_MILLIS = 100L;
+
+    private final OrderListener orderListener;
+
+    private final OrderConsumerProperties properties;
+
+    private final ListenerExecution listenerExecution;
+
+    private final StreamMonitor streamMonitor;
+
+    private final OrderDeduplicator orderDeduplicator;
+
+    private final List<BlockingQueue<Delivery>> lanes = new ArrayList<>();
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final Timer processLatency;
+
+    //only used in virtual thread mode
+    private Semaphore permits;
+
+    private ThreadFactory virtualThreads;
+
+    private BlockingQueue<Delivery> claimQueue;
+
+    private final BlockingQueue<OrderDeduplicator.Completion> completed = new LinkedBlockingQueue<>();
+
+    private volatile boolean running;
+
+    public OrderDispatcher(OrderListener orderListener, OrderConsumerProperties properties, ListenerExecution listenerExecution,
+                           StreamMonitor streamMonitor, OrderDeduplicator orderDeduplicator, MeterRegistry meterRegistry) {
+        this.orderListener = orderListener;
+        this.properties = properties;
+        this.listenerExecution = listenerExecution;
+        this.streamMonitor = streamMonitor;
+        this.orderDeduplicator = orderDeduplicator;
+        this.processLatency = Timer.builder("orders.consumer.process")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        int workerCount = Math.max(1, properties.getWorkers());
+        if (listenerExecution.isVirtual() && !properties.isOrderedByKey()) {
+            permits = new Semaphore(workerCount);
+            virtualThreads = listenerExecution.threadFactory("order-worker-");
+            claimQueue = new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity()));
+            Thread claimer = virtualThreads.newThread(this::claimAndStart);
+            workers.add(claimer);
+            claimer.start();
+            Thread acker = virtualThreads.newThread(this::acknowledgeProcessed);
+            workers.add(acker);
+            acker.start();
+            return;
+        }
+
+        int laneCount = properties.isOrderedByKey() ? workerCount : 1;
+        int capacity = Math.max(1, properties.getQueueCapacity() / laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ArrayBlockingQueue<>(capacity));
+        }
+
+        //ordered by key still need one worker per lane, with virtual thread the worker is just cheaper
+        ThreadFactory threadFactory = listenerExecution.threadFactory("order-worker-");
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<Delivery> lane = lanes.get(i % laneCount);
+            Thread worker;
+            if (threadFactory != null) {
+                worker = threadFactory.newThread(() -> work(lane));
+            } else {
+                worker = new Thread(() -> work(lane), "order-worker-" + i);
+                worker.setDaemon(true);
+            }
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (permits != null) {
+            //wait for the records that still running, so they can be acknowledged
+            if (permits.tryAcquire(Math.max(1, properties.getWorkers()), properties.getPollTimeout().toMillis(),
+                    TimeUnit.MILLISECONDS)) {
+                permits.release(Math.max(1, properties.getWorkers()));
+            }
+        }
+        for (Thread worker : workers) {
+            worker.join(properties.getPollTimeout().toMillis());
+        }
+    }
+
+    //called by consumer thread, it wait when the lane (or claim queue) is full, so consumer doesn't read more than we can process
+    public void dispatch(String consumer, ObjectRecord<String, Order> record) {
+        Delivery delivery = new Delivery(consumer, record);
+        BlockingQueue<Delivery> queue = claimQueue != null ? claimQueue : laneFor(record);
+        try {
+            while (running) {
+                if (queue.offer(delivery, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("Dispatcher stopped, order {} not processed", record.getId());
+    }
+
+    private BlockingQueue<Delivery> laneFor(ObjectRecord<String, Order> record) {
+        if (lanes.size() == 1) {
+            return lanes.get(0);
+        }
+        String key = record.getValue().getId();
+        return lanes.get(Math.floorMod(key == null ? 0 : key.hashCode(), lanes.size()));
+    }
+
+    private void work(BlockingQueue<Delivery> lane) {
+        List<Delivery> batch = new ArrayList<>();
+        while (running || !lane.isEmpty()) {
+            try {
+                Delivery first = lane.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                lane.drainTo(batch, properties.getBatchSize() - 1);
+                process(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void process(List<Delivery> batch) {
+        List<OrderDeduplicator.Claim> claims = orderDeduplicator.claim(orderIds(batch));
+        List<OrderDeduplicator.Completion> completions = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Delivery delivery = batch.get(i);
+            switch (claims.get(i)) {
+                case CLAIMED -> completions.add(delivery.completion(
+                        invoke(delivery) ? OrderDeduplicator.Outcome.PROCESSED : OrderDeduplicator.Outcome.FAILED));
+                case DUPLICATE -> completions.add(delivery.completion(OrderDeduplicator.Outcome.DUPLICATE));
+                //another consumer is processing it, it stay pending and is acknowledged as duplicate when reclaimed
+                case IN_FLIGHT -> log.debug("Order {} is in flight on another consumer", delivery.record().getId());
+            }
+        }
+        orderDeduplicator.complete(completions);
+    }
+
+    private static List<String> orderIds(List<Delivery> batch) {
+        List<String> ids = new ArrayList<>(batch.size());
+        for (Delivery delivery : batch) {
+            ids.add(delivery.record().getValue().getId());
+        }
+        return ids;
+    }
+
+    //virtual thread mode, claim a batch then start one thread per claimed record, waiting for permit
+    private void claimAndStart() {
+        List<Delivery> batch = new ArrayList<>();
+        while (running || !claimQueue.isEmpty()) {
+            try {
+                Delivery first = claimQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                claimQueue.drainTo(batch, properties.getBatchSize() - 1);
+                List<OrderDeduplicator.Claim> claims = orderDeduplicator.claim(orderIds(batch));
+                for (int i = 0; i < batch.size(); i++) {
+                    start(batch.get(i), claims.get(i));
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void start(Delivery delivery, OrderDeduplicator.Claim claim) throws InterruptedException {
+        if (claim == OrderDeduplicator.Claim.DUPLICATE) {
+            completed.add(delivery.completion(OrderDeduplicator.Outcome.DUPLICATE));
+            return;
+        }
+        if (claim == OrderDeduplicator.Claim.IN_FLIGHT) {
+            return;
+        }
+        while (running) {
+            if (permits.tryAcquire(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                virtualThreads.newThread(() -> processOne(delivery)).start();
+                return;
+            }
+        }
+        //stopped before it run, unclaim it so the redelivery doesn't wait for the lease
+        completed.add(delivery.completion(OrderDeduplicator.Outcome.FAILED));
+    }
+
+    //virtual thread mode, one record per thread, the permit is released when it's done
+    private void processOne(Delivery delivery) {
+        try {
+            completed.add(delivery.completion(
+                    invoke(delivery) ? OrderDeduplicator.Outcome.PROCESSED : OrderDeduplicator.Outcome.FAILED));
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean invoke(Delivery delivery) {
+        long start = System.nanoTime();
+        try {
+            orderListener.onMessage(delivery.record());
+            streamMonitor.recordProcessed(properties.getStream(), properties.getGroup(), delivery.consumer());
+            return true;
+        } catch (RuntimeException e) {
+            //not acknowledged, it stay in pending list and will be reclaimed later
+            log.warn("Failed to process order {} from {}: {}", delivery.record().getId(), delivery.consumer(), e.getMessage());
+            streamMonitor.recordError(properties.getStream(), properties.getGroup());
+            return false;
+        } finally {
+            processLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    //virtual thread mode, the ids from every record thread are sent together, one XACK per batch
+    private void acknowledgeProcessed() {
+        List<OrderDeduplicator.Completion> batch = new ArrayList<>();
+        while (running || !completed.isEmpty() || !claimQueue.isEmpty()
+                || permits.availablePermits() < Math.max(1, properties.getWorkers())) {
+            try {
+                OrderDeduplicator.Completion first = completed.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                completed.drainTo(batch, properties.getBatchSize() - 1);
+                orderDeduplicator.complete(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    record Delivery(String consumer, ObjectRecord<String, Order> record) {
+
+        OrderDeduplicator.Completion completion(OrderDeduplicator.Outcome outcome) {
+            return new OrderDeduplicator.Completion(record.getId(), record.getValue().getId(), outcome);
+        }
+    }
+}
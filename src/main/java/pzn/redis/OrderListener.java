@@ -1,6 +1,7 @@
 package pzn.redis;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.stream.ObjectRecord;
 import org.springframework.data.redis.stream.StreamListener;
 import org.springframework.stereotype.Component;
@@ -9,9 +10,14 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @Component
 public class OrderListener implements StreamListener<String, ObjectRecord<String, Order>> {
+
+    @Autowired
+    private ProductLeaderboard productLeaderboard;
+
     //this onMessage will read stream data automatically
     @Override
     public void onMessage(ObjectRecord<String, Order> message) {
         log.info("Received order: {}", message.getValue());
+        productLeaderboard.record(message.getValue());
     }
 }
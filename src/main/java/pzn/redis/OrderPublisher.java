@@ -1,29 +1,41 @@
 package pzn.redis;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.connection.stream.ObjectRecord;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 //make publisher, so we can send data and then read automatically by stream listener that we made
 
+@Slf4j
+//when app.reactive.enabled=true, the reactive publisher is used instead
 @Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class OrderPublisher {
 
+    //the order is not sent one by one anymore, batch publisher will send it together with other orders
     @Autowired
-    private StringRedisTemplate redisTemplate;
+    private OrderBatchPublisher orderBatchPublisher;
 
     //cause we use schedule we need to add @EnableScheduling in our Application
     @Scheduled(fixedRate = 10, timeUnit = TimeUnit.SECONDS)
     public void publish() {
-        Order order = new Order(UUID.randomUUID().toString(), 1000L);
-        ObjectRecord<String, Order> record = ObjectRecord.create("orders", order);
-        redisTemplate.opsForStream().add(record);
+        Order order = new Order(UUID.randomUUID().toString(), 1000L, sampleProduct());
+        orderBatchPublisher.publish(order)
+                .whenComplete((recordId, throwable) -> {
+                    if (throwable != null) {
+                        log.warn("Failed to publish order {}: {}", order.getId(), throwable.getMessage());
+                    }
+                });
     }
-}
-
 
+    //one of 20 sample products, so ProductLeaderboard has something to rank
+    static String sampleProduct() {
+        return "product-" + ThreadLocalRandom.current().nextInt(1, 21);
+    }
+}
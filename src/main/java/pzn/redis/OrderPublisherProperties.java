@@ -0,0 +1,27 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//setting for OrderBatchPublisher, batch will be flushed when batch-size reached or flush-interval passed
+@Data
+@ConfigurationProperties(prefix = "app.orders.publisher")
+public class OrderPublisherProperties {
+
+    private String stream = "orders";
+
+    private int batchSize = 100;
+
+    private Duration flushInterval = Duration.ofMillis(10);
+
+    //maximum order waiting to be flushed, publisher will wait when buffer is full (backpressure)
+    private int bufferCapacity = 10_000;
+
+    //how long publisher wait for space in buffer before the order rejected
+    private Duration offerTimeout = Duration.ofSeconds(1);
+
+    //AtomicOperations.insertOrder remember the order id this long, retry within it doesn't add the order again
+    private Duration idempotencyTtl = Duration.ofHours(24);
+}
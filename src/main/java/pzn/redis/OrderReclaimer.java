@@ -0,0 +1,217 @@
+package pzn.redis;
+
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAutoClaimArgs;
+import io.lettuce.core.api.async.RedisStreamAsyncCommands;
+import io.lettuce.core.models.stream.ClaimedMessages;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+//order that delivered to consumer but never acknowledged (consumer crash, or OrderListener failed)
+//stay in pending entries list, this component periodically:
+//1. move entry that already delivered too many times to dead letter stream (stream-dead-letter script, so the
+//   entry is moved once even when several instances reclaim at the same time)
+//2. claim the rest that idle too long with XAUTOCLAIM, then process it again in this instance
+//3. remove the consumers with nothing pending that idle longer than consumer-max-idle (left by dead instances)
+@Slf4j
+@Component
+public class OrderReclaimer {
+
+    //XAUTOCLAIM return 0-0 as next cursor when whole pending list already scanned
+    private static final String START = "0-0";
+
+    private static final long COMMAND_TIMEOUT_SECONDS = 5L;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisScripts scripts;
+
+    private final OrderDispatcher orderDispatcher;
+
+    private final OrderConsumerProperties properties;
+
+    private final String consumerName;
+
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong deadLetterSize = new AtomicLong();
+    private final Counter reclaimed;
+    private final Counter deadLettered;
+    private final Counter removedConsumers;
+
+    public OrderReclaimer(StringRedisTemplate redisTemplate, RedisScripts scripts, OrderDispatcher orderDispatcher,
+                          OrderConsumerProperties properties, InstanceIdentity instanceIdentity,
+                          MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.scripts = scripts;
+        this.orderDispatcher = orderDispatcher;
+        this.properties = properties;
+        this.consumerName = properties.consumerName(instanceIdentity, "reclaimer");
+
+        Gauge.builder("orders.consumer.pending", pendingCount, AtomicLong::get)
+                .register(meterRegistry);
+        Gauge.builder("orders.dlq.size", deadLetterSize, AtomicLong::get)
+                .register(meterRegistry);
+        this.reclaimed = Counter.builder("orders.consumer.reclaimed")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("orders.consumer.dead.lettered")
+                .register(meterRegistry);
+        this.removedConsumers = Counter.builder("orders.consumer.removed")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.consumer.reclaim.interval:30s}")
+    public void reclaim() {
+        if (!properties.getReclaim().isEnabled()) {
+            return;
+        }
+        try {
+            deadLetter();
+            claim();
+            removeIdleConsumers();
+            updateMetrics();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reclaim orders: {}", e.getMessage());
+        }
+    }
+
+    //XPENDING read batch-size entries at a time, every page start right after the last id of the previous one,
+    //without that only the first page is checked and the over-delivered entries after it are claimed forever
+    //the ids found here are only candidates, the script check them again before moving
+    private void deadLetter() {
+        OrderConsumerProperties.Reclaim reclaim = properties.getReclaim();
+        StreamOperations<String, Object, Object> ops = redisTemplate.opsForStream();
+        Range<String> range = Range.unbounded();
+        while (true) {
+            PendingMessages pending = ops.pending(properties.getStream(), properties.getGroup(), range,
+                    reclaim.getBatchSize());
+            List<String> candidates = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (message.getTotalDeliveryCount() >= reclaim.getMaxDeliveries()
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(reclaim.getMinIdle()) >= 0) {
+                    candidates.add(message.getId().getValue());
+                }
+            }
+            if (!candidates.isEmpty()) {
+                deadLetter(candidates);
+            }
+            if (pending.size() < reclaim.getBatchSize()) {
+                return;
+            }
+            RecordId last = pending.get(pending.size() - 1).getId();
+            range = Range.rightUnbounded(Range.Bound.inclusive(RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+        }
+    }
+
+    //check and delete in one script (stream-remove-idle-consumers), a consumer with pending entries is kept
+    void removeIdleConsumers() {
+        Duration maxIdle = properties.getReclaim().getConsumerMaxIdle();
+        if (maxIdle == null || maxIdle.isZero() || maxIdle.isNegative()) {
+            return;
+        }
+        Long removed = scripts.execute("stream-remove-idle-consumers", ReturnType.INTEGER, List.of(properties.getStream()),
+                List.of(properties.getGroup(), String.valueOf(maxIdle.toMillis())));
+        if (removed != null && removed > 0) {
+            removedConsumers.increment(removed);
+            log.info("Removed {} idle consumers from {}", removed, properties.getGroup());
+        }
+    }
+
+    //XADD to the dead letter stream and XACK in one script, only for the ids still pending and delivered enough times
+    private void deadLetter(List<String> ids) {
+        OrderConsumerProperties.Reclaim reclaim = properties.getReclaim();
+        List<String> args = new ArrayList<>(ids.size() + 3);
+        args.add(properties.getGroup());
+        args.add(String.valueOf(reclaim.getMaxDeliveries()));
+        args.add(String.valueOf(reclaim.getMinIdle().toMillis()));
+        args.addAll(ids);
+        List<Object> moved = scripts.execute("stream-dead-letter", ReturnType.MULTI,
+                List.of(properties.getStream(), reclaim.getDeadLetterStream()), args);
+        if (moved == null) {
+            return;
+        }
+        for (int i = 0; i + 1 < moved.size(); i += 2) {
+            deadLettered.increment();
+            log.warn("Order {} moved to {} after {} deliveries", new String((byte[]) moved.get(i), StandardCharsets.UTF_8),
+                    reclaim.getDeadLetterStream(), moved.get(i + 1));
+        }
+    }
+
+    private void claim() {
+        String cursor = START;
+        do {
+            ClaimedMessages<byte[], byte[]> claimed = autoClaim(cursor);
+            if (claimed == null) {
+                return;
+            }
+            for (StreamMessage<byte[], byte[]> message : claimed.getMessages()) {
+                orderDispatcher.dispatch(consumerName, toOrderRecord(message));
+                reclaimed.increment();
+            }
+            cursor = claimed.getId();
+        } while (!START.equals(cursor));
+    }
+
+    //spring data redis doesn't have XAUTOCLAIM yet, so use lettuce command directly
+    @SuppressWarnings("unchecked")
+    private ClaimedMessages<byte[], byte[]> autoClaim(String cursor) {
+        OrderConsumerProperties.Reclaim reclaim = properties.getReclaim();
+        byte[] stream = properties.getStream().getBytes(StandardCharsets.UTF_8);
+        XAutoClaimArgs<byte[]> args = XAutoClaimArgs.Builder
+                .xautoclaim(io.lettuce.core.Consumer.from(properties.getGroup().getBytes(StandardCharsets.UTF_8),
+                        consumerName.getBytes(StandardCharsets.UTF_8)), reclaim.getMinIdle(), cursor)
+                .count(reclaim.getBatchSize());
+
+        return redisTemplate.execute((RedisCallback<ClaimedMessages<byte[], byte[]>>) connection -> {
+            var commands = (RedisStreamAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            try {
+                return commands.xautoclaim(stream, args).get(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RedisSystemException("XAUTOCLAIM interrupted", e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new RedisSystemException("XAUTOCLAIM failed", e);
+            }
+        });
+    }
+
+    private ObjectRecord<String, Order> toOrderRecord(StreamMessage<byte[], byte[]> message) {
+        ByteRecord raw = StreamRecords.newRecord()
+                .in(properties.getStream().getBytes(StandardCharsets.UTF_8))
+                .withId(RecordId.of(message.getId()))
+                .ofBytes(message.getBody());
+        StreamOperations<String, Object, Object> ops = redisTemplate.opsForStream();
+        return ops.map(ops.deserializeRecord(raw), Order.class);
+    }
+
+    private void updateMetrics() {
+        StreamOperations<String, Object, Object> ops = redisTemplate.opsForStream();
+        pendingCount.set(ops.pending(properties.getStream(), properties.getGroup()).getTotalPendingMessages());
+        Long size = ops.size(properties.getReclaim().getDeadLetterStream());
+        deadLetterSize.set(size == null ? 0 : size);
+    }
+}
@@ -0,0 +1,198 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//retention of the orders stream (app.orders.retention)
+//max-length and min-age can be trimmed inline, every XADD get MAXLEN ~ or MINID ~ (addOptions and scriptTrimArgs),
+//otherwise, and always for acked, the stream is trimmed here with XTRIM
+//trimmed entry may still be pending in a group (max-length and min-age doesn't care),
+//the reclaimer then only find an empty record, use acked when every order must be handled
+//length, memory and trimmed entries of the orders stream and the dead letter stream are updated here too
+@Slf4j
+@Component
+public class OrderStreamRetention {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final OrderStreamRetentionProperties properties;
+
+    private final String stream;
+
+    private final Map<String, StreamMetrics> metrics = new LinkedHashMap<>();
+
+    public OrderStreamRetention(StringRedisTemplate redisTemplate, OrderStreamRetentionProperties properties,
+                                OrderPublisherProperties publisherProperties, OrderConsumerProperties consumerProperties,
+                                MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.stream = publisherProperties.getStream();
+        for (String name : List.of(stream, consumerProperties.getReclaim().getDeadLetterStream())) {
+            metrics.put(name, new StreamMetrics(name, meterRegistry));
+        }
+    }
+
+    //for XADD of OrderBatchPublisher and ReactiveOrderPublisher
+    public XAddOptions addOptions() {
+        if (!properties.isInlineTrim()) {
+            return XAddOptions.none();
+        }
+        if (properties.getMode() == OrderStreamRetentionProperties.Mode.MAX_LENGTH) {
+            return XAddOptions.maxlen(properties.getMaxLength()).approximateTrimming(true);
+        }
+        return XAddOptions.none().minId(minIdByAge()).approximateTrimming(true);
+    }
+
+    //for the XADD inside order-insert.lua, strategy and threshold, empty strategy mean no trim
+    public List<String> scriptTrimArgs() {
+        if (!properties.isInlineTrim()) {
+            return List.of("", "");
+        }
+        if (properties.getMode() == OrderStreamRetentionProperties.Mode.MAX_LENGTH) {
+            return List.of("MAXLEN", String.valueOf(properties.getMaxLength()));
+        }
+        return List.of("MINID", minIdByAge().getValue());
+    }
+
+    //stream id start with the time in millis, so every entry added before now - max-age is older than this
+    private RecordId minIdByAge() {
+        return RecordId.of(System.currentTimeMillis() - properties.getMaxAge().toMillis(), 0);
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.retention.trim-interval:30s}")
+    public void trim() {
+        try {
+            if (!properties.isInlineTrim()) {
+                long trimmed = trimInBackground();
+                metrics.get(stream).trimmedByXtrim = trimmed;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to trim {}: {}", stream, e.getMessage());
+        }
+        metrics.values().forEach(this::update);
+    }
+
+    //number of entries removed
+    long trimInBackground() {
+        return switch (properties.getMode()) {
+            case NONE -> 0;
+            case MAX_LENGTH -> {
+                Long trimmed = redisTemplate.opsForStream().trim(stream, properties.getMaxLength(), true);
+                yield trimmed == null ? 0 : trimmed;
+            }
+            case MIN_AGE -> trimToMinId(minIdByAge());
+            case ACKED -> {
+                RecordId minId = minIdAcked();
+                yield minId == null ? 0 : trimToMinId(minId);
+            }
+        };
+    }
+
+    //every entry before the returned id is read and acknowledged by every group,
+    //for one group it's the oldest pending entry, or the last delivered one when nothing is pending
+    //null when there's no group, nobody read the stream yet so nothing is trimmed
+    //a group that stop reading (or has entry stuck in pending) hold the trim for the whole stream
+    RecordId minIdAcked() {
+        StreamOperations<String, Object, Object> ops = redisTemplate.opsForStream();
+        RecordId minId = null;
+        for (StreamInfo.XInfoGroup group : ops.groups(stream)) {
+            RecordId groupMin = group.pendingCount() != null && group.pendingCount() > 0
+                    ? ops.pending(stream, group.groupName()).minRecordId()
+                    : RecordId.of(group.lastDeliveredId());
+            if (minId == null || isBefore(groupMin, minId)) {
+                minId = groupMin;
+            }
+        }
+        return minId;
+    }
+
+    private static boolean isBefore(RecordId id, RecordId other) {
+        if (id.getTimestamp().equals(other.getTimestamp())) {
+            return id.getSequence() < other.getSequence();
+        }
+        return id.getTimestamp() < other.getTimestamp();
+    }
+
+    //spring data redis only has XTRIM MAXLEN
+    private long trimToMinId(RecordId minId) {
+        Long trimmed = redisTemplate.execute((RedisCallback<Long>) connection -> (Long) connection.execute("XTRIM",
+                bytes(stream), bytes("MINID"), bytes("~"), bytes(minId.getValue())));
+        return trimmed == null ? 0 : trimmed;
+    }
+
+    private void update(StreamMetrics stream) {
+        try {
+            if (!redisTemplate.hasKey(stream.name)) {
+                stream.length.set(0);
+                stream.memory.set(0);
+                return;
+            }
+            StreamInfo.XInfoStream info = redisTemplate.opsForStream().info(stream.name);
+            stream.length.set(info.streamLength());
+            Long usage = redisTemplate.execute((RedisCallback<Long>) connection -> (Long) connection.execute("MEMORY",
+                    bytes("USAGE"), bytes(stream.name)));
+            stream.memory.set(usage == null ? 0 : usage);
+
+            //redis 7 count every entry ever added, what's not in the stream anymore is trimmed (or XDEL),
+            //so inline trim is counted too, older redis only count background XTRIM
+            Object added = info.getRaw().get("entries-added");
+            if (added != null) {
+                long removed = Long.parseLong(String.valueOf(added)) - info.streamLength();
+                if (stream.removed >= 0 && removed > stream.removed) {
+                    stream.trimmed.increment(removed - stream.removed);
+                }
+                stream.removed = removed;
+            } else {
+                stream.trimmed.increment(stream.trimmedByXtrim);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to update metrics of {}: {}", stream.name, e.getMessage());
+        } finally {
+            stream.trimmedByXtrim = 0;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class StreamMetrics {
+
+        private final String name;
+
+        private final AtomicLong length = new AtomicLong();
+
+        private final AtomicLong memory = new AtomicLong();
+
+        private final Counter trimmed;
+
+        //entries-added - length of the previous update, -1 until the first one
+        private long removed = -1;
+
+        private long trimmedByXtrim;
+
+        StreamMetrics(String name, MeterRegistry meterRegistry) {
+            this.name = name;
+            Gauge.builder("orders.stream.length", length, AtomicLong::get).tag("stream", name).register(meterRegistry);
+            Gauge.builder("orders.stream.memory", memory, AtomicLong::get).tag("stream", name)
+                    .baseUnit("bytes").register(meterRegistry);
+            this.trimmed = Counter.builder("orders.stream.trimmed").tag("stream", name).register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//how much of the orders stream is kept, without this every XADD make the stream (and its memory) bigger forever
+@Data
+@ConfigurationProperties(prefix = "app.orders.retention")
+public class OrderStreamRetentionProperties {
+
+    //acked by default, it never remove an order that a group still has to read or acknowledge
+    private Mode mode = Mode.ACKED;
+
+    //max-length only: around this number of entries is kept (approximate, redis only remove whole node)
+    private long maxLength = 100_000;
+
+    //min-age only: entries older than this are removed
+    private Duration maxAge = Duration.ofHours(24);
+
+    //max-length and min-age: trim with the XADD itself (MAXLEN ~ / MINID ~), false leave it to the background trimmer
+    //acked is always trimmed in background, it need XINFO GROUPS and XPENDING first
+    private boolean inline = false;
+
+    //delay between background trim, the stream metrics are updated at the same time
+    private Duration trimInterval = Duration.ofSeconds(30);
+
+    public enum Mode {
+        //never trim, the old behavior
+        NONE,
+        //opt-in, keep around max-length entries even when they're not read or still pending,
+        //when the consumers lag behind the orders are lost without any error
+        MAX_LENGTH,
+        //opt-in, same as max-length but by age
+        MIN_AGE,
+        //only entries that every consumer group already read and acknowledged
+        ACKED
+    }
+
+    public boolean isInlineTrim() {
+        return inline && (mode == Mode.MAX_LENGTH || mode == Mode.MIN_AGE);
+    }
+}
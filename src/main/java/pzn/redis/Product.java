@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.keyvalue.annotation.KeySpace;
 import org.springframework.data.redis.core.TimeToLive;
+import org.springframework.data.redis.core.index.Indexed;
 
 import java.io.Serializable;
 import java.util.concurrent.TimeUnit;
@@ -26,6 +27,9 @@ public class Product implements Serializable {
     private String id;
     //in redis, the data will be saved like keyspace:id, ex: products:1
 
+    //@Indexed make set products:name:<name> that contain the id, so findByName doesn't read every product
+    //price is in ProductPriceIndex, cause @Indexed can't do range
+    @Indexed
     private String name;
 
     private Long price;
@@ -0,0 +1,26 @@
+package pzn.redis;
+
+import java.util.List;
+
+//custom fragment for ProductRepository, spring data use these instead of the default one from KeyValueRepository
+//the default one send HGETALL / DEL + HMSET + SADD for every product, one round trip each,
+//this one send them all in one pipeline
+//save and delete are also here, so the hash, the @Indexed sets, products:price and the expiry bucket are changed in one MULTI
+public interface ProductBulkRepository {
+
+    List<Product> findAllById(Iterable<String> ids);
+
+    <S extends Product> S save(S product);
+
+    <S extends Product> List<S> saveAll(Iterable<S> products);
+
+    void deleteById(String id);
+
+    void delete(Product product);
+
+    void deleteAllById(Iterable<? extends String> ids);
+
+    void deleteAll(Iterable<? extends Product> products);
+
+    void deleteAll();
+}
@@ -0,0 +1,302 @@
+package pzn.redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisKeyValueTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.IndexedData;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.SimpleIndexedPropertyValue;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//the name must be fragment interface + Impl, so spring data can find it
+//read: HGETALL of the products:<id> hash, pipelined for the whole batch
+//write: the same keys as RedisKeyValueAdapter.put (products:<id> hash, products set, @Indexed sets, phantom key),
+//built with the adapter converter, plus products:price (ProductPriceIndex) and the expiry bucket in sweeper mode
+//(ProductExpirySweeper), the whole batch in one MULTI
+public class ProductBulkRepositoryImpl implements ProductBulkRepository {
+
+    //same as RedisKeyValueAdapter
+    private static final byte[] PHANTOM_SUFFIX = ":phantom".getBytes(StandardCharsets.UTF_8);
+    private static final long PHANTOM_KEY_TTL = 300L;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisKeyValueTemplate keyValueTemplate;
+
+    private final RedisConverter converter;
+
+    private final ProductPriceIndex priceIndex;
+
+    private final ProductExpirySweeper expirySweeper;
+
+    private final ProductLocalCache localCache;
+
+    public ProductBulkRepositoryImpl(StringRedisTemplate redisTemplate, RedisKeyValueTemplate keyValueTemplate,
+                                     ProductPriceIndex priceIndex, ProductExpirySweeper expirySweeper,
+                                     ProductLocalCache localCache) {
+        this.redisTemplate = redisTemplate;
+        this.keyValueTemplate = keyValueTemplate;
+        this.converter = keyValueTemplate.getConverter();
+        this.priceIndex = priceIndex;
+        this.expirySweeper = expirySweeper;
+        this.localCache = localCache;
+    }
+
+    //HGETALL + TTL for every id in one pipeline, product that doesn't exist is skipped like findAllById
+    @Override
+    public List<Product> findAllById(Iterable<String> ids) {
+        List<String> distinctIds = new ArrayList<>(toSet(ids));
+        if (distinctIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String keyspace = keyspace();
+        List<Object> results = pipeline(connection -> {
+            for (String id : distinctIds) {
+                byte[] key = bytes(keyspace + ":" + id);
+                connection.hashCommands().hGetAll(key);
+                connection.keyCommands().ttl(key, TimeUnit.SECONDS);
+            }
+        });
+
+        List<Product> products = new ArrayList<>(distinctIds.size());
+        for (int i = 0; i < distinctIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<byte[], byte[]> hash = (Map<byte[], byte[]>) results.get(i * 2);
+            Product product = read(distinctIds.get(i), hash, (Long) results.get(i * 2 + 1));
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    //HGETALL and TTL result to product, null when the hash doesn't exist
+    Product read(String id, Map<byte[], byte[]> hash, Long ttl) {
+        if (CollectionUtils.isEmpty(hash)) {
+            return null;
+        }
+        RedisData data = new RedisData(hash);
+        data.setId(id);
+        data.setKeyspace(keyspace());
+        Product product = converter.read(Product.class, data);
+        if (product != null && ttl != null) {
+            //same as RedisKeyValueAdapter, the ttl field is read back from redis
+            product.setTtl(ttl);
+        }
+        return product;
+    }
+
+    String key(String id) {
+        return keyspace() + ":" + id;
+    }
+
+    @Override
+    public <S extends Product> S save(S product) {
+        return saveAll(List.of(product)).get(0);
+    }
+
+    //two round trips whatever the batch size: SMEMBERS of the old index helper (<keyspace>:<id>:idx) of every product,
+    //then one MULTI with DEL + HMSET + SADD + index and price update (+ EXPIRE and phantom for ttl) for all products,
+    //so the hash and its indexes are never seen half written
+    @Override
+    public <S extends Product> List<S> saveAll(Iterable<S> products) {
+        String keyspace = keyspace();
+        List<S> saved = new ArrayList<>();
+        List<RedisData> batch = new ArrayList<>();
+        for (S product : products) {
+            if (product.getId() == null) {
+                product.setId(UUID.randomUUID().toString());
+            }
+            RedisData data = new RedisData();
+            converter.write(product, data);
+            saved.add(product);
+            batch.add(data);
+        }
+        if (saved.isEmpty()) {
+            return saved;
+        }
+
+        List<Object> oldIndexes = pipeline(connection -> batch.forEach(data ->
+                connection.setCommands().sMembers(indexHelperKey(keyspace, data.getId()))));
+
+        pipeline(connection -> {
+            connection.multi();
+            for (int i = 0; i < batch.size(); i++) {
+                RedisData data = batch.get(i);
+                byte[] id = bytes(data.getId());
+                byte[] key = bytes(keyspace + ":" + data.getId());
+                connection.keyCommands().del(key);
+                connection.hashCommands().hMSet(key, data.getBucket().rawMap());
+                connection.setCommands().sAdd(bytes(keyspace), id);
+                writeExpiration(connection, key, data);
+
+                @SuppressWarnings("unchecked")
+                Set<byte[]> old = (Set<byte[]>) oldIndexes.get(i);
+                removeIndexes(connection, keyspace, data.getId(), old);
+                byte[] indexHelper = indexHelperKey(keyspace, data.getId());
+                for (byte[] indexKey : indexKeys(data)) {
+                    connection.setCommands().sAdd(indexKey, id);
+                    connection.setCommands().sAdd(indexHelper, indexKey);
+                }
+                priceIndex.write(connection, data.getId(), saved.get(i).getPrice());
+            }
+            connection.exec();
+        });
+        //tracking invalidation come a bit later (or never when it's off), this instance see its own write right away
+        saved.forEach(product -> localCache.evict(product.getId()));
+        return saved;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        deleteAllById(List.of(id));
+    }
+
+    @Override
+    public void delete(Product product) {
+        deleteAllById(List.of(product.getId()));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Product> products) {
+        List<String> ids = new ArrayList<>();
+        products.forEach(product -> ids.add(product.getId()));
+        deleteAllById(ids);
+    }
+
+    //same as saveAll, read the old index helper first, then remove the hash, phantom, indexes and price in one MULTI
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        Set<String> distinctIds = new LinkedHashSet<>();
+        ids.forEach(distinctIds::add);
+        if (distinctIds.isEmpty()) {
+            return;
+        }
+
+        String keyspace = keyspace();
+        List<String> idList = new ArrayList<>(distinctIds);
+        List<Object> oldIndexes = pipeline(connection -> idList.forEach(id ->
+                connection.setCommands().sMembers(indexHelperKey(keyspace, id))));
+
+        pipeline(connection -> {
+            connection.multi();
+            for (int i = 0; i < idList.size(); i++) {
+                String id = idList.get(i);
+                byte[] key = bytes(keyspace + ":" + id);
+                connection.keyCommands().del(key, phantomKey(key));
+                connection.setCommands().sRem(bytes(keyspace), bytes(id));
+                @SuppressWarnings("unchecked")
+                Set<byte[]> old = (Set<byte[]>) oldIndexes.get(i);
+                removeIndexes(connection, keyspace, id, old);
+                priceIndex.remove(connection, id);
+            }
+            connection.exec();
+        });
+        idList.forEach(localCache::evict);
+    }
+
+    //adapter remove every key of the keyspace (and the index), products:price included, it's removed again just in case
+    @Override
+    public void deleteAll() {
+        keyValueTemplate.delete(Product.class);
+        redisTemplate.delete(ProductPriceIndex.KEY);
+        localCache.evictAll();
+    }
+
+    //same as RedisKeyValueAdapter.put: EXPIRE the hash, and with shadow copy keep a copy (phantom key) that live
+    //5 minutes longer, so the expired event can still read the product and remove it from the indexes
+    //shadow copy is on (keyspace events are on), except in sweeper mode (ProductExpiryPostProcessor turn it off),
+    //there the id is put in the expire time bucket instead
+    private void writeExpiration(RedisConnection connection, byte[] key, RedisData data) {
+        boolean expires = data.getTimeToLive() != null && data.getTimeToLive() > 0;
+        if (expires) {
+            connection.keyCommands().expire(key, data.getTimeToLive());
+        }
+        if (expirySweeper.isEnabled()) {
+            if (expires) {
+                expirySweeper.track(connection, data.getId(), data.getTimeToLive());
+            }
+            return;
+        }
+        byte[] phantomKey = phantomKey(key);
+        connection.keyCommands().del(phantomKey);
+        if (expires) {
+            connection.hashCommands().hMSet(phantomKey, data.getBucket().rawMap());
+            connection.keyCommands().expire(phantomKey, data.getTimeToLive() + PHANTOM_KEY_TTL);
+        }
+    }
+
+    private static void removeIndexes(RedisConnection connection, String keyspace, String id, Set<byte[]> old) {
+        if (CollectionUtils.isEmpty(old)) {
+            return;
+        }
+        old.forEach(indexKey -> connection.setCommands().sRem(indexKey, bytes(id)));
+        connection.keyCommands().del(indexHelperKey(keyspace, id));
+    }
+
+    //key of every @Indexed set the product belong to, ex: products:name:mie
+    //Product only has @Indexed (exact value) properties, a geo index would need the adapter IndexWriter
+    private List<byte[]> indexKeys(RedisData data) {
+        List<byte[]> keys = new ArrayList<>();
+        for (IndexedData index : data.getIndexedData()) {
+            if (!(index instanceof SimpleIndexedPropertyValue simple)) {
+                throw new IllegalStateException("Unsupported index " + index.getIndexName() + " of " + data.getKeyspace());
+            }
+            if (simple.getValue() != null) {
+                keys.add(bytes(index.getKeyPrefix() + ":"
+                        + converter.getConversionService().convert(simple.getValue(), String.class)));
+            }
+        }
+        return keys;
+    }
+
+    private static byte[] indexHelperKey(String keyspace, String id) {
+        return bytes(keyspace + ":" + id + ":idx");
+    }
+
+    private static byte[] phantomKey(byte[] key) {
+        return ByteUtils.concat(key, PHANTOM_SUFFIX);
+    }
+
+    private List<Object> pipeline(Consumer<RedisConnection> commands) {
+        return redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            try {
+                commands.accept(connection);
+            } catch (RuntimeException e) {
+                //close the pipeline, or the connection stay in pipeline mode
+                connection.closePipeline();
+                throw e;
+            }
+            return connection.closePipeline();
+        });
+    }
+
+    private String keyspace() {
+        return converter.getMappingContext().getRequiredPersistentEntity(Product.class).getKeySpace();
+    }
+
+    private static Set<String> toSet(Iterable<String> ids) {
+        Set<String> set = new LinkedHashSet<>();
+        ids.forEach(set::add);
+        return set;
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,177 @@
+package pzn.redis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+//compact format for product, to replace jdk serialization that full of class metadata
+//every field is written with tag number, so field can be added later without breaking old data,
+//unknown tag will be skipped when reading
+//
+//binary (for cache) : MAGIC VERSION (key value)*  -> key = tag << 3 | wire type
+//hash (for repository) : _v=VERSION, 1=id, 2=name, 3=price, number written as decimal text,
+//so redis can store it as integer inside the hash, and lua script / HINCRBY still can use it
+public final class ProductCodec {
+
+    public static final byte MAGIC = (byte) 0xC7;
+    public static final byte VERSION = 1;
+
+    public static final int ID_TAG = 1;
+    public static final int NAME_TAG = 2;
+    public static final int PRICE_TAG = 3;
+    public static final int TTL_TAG = 4;
+
+    public static final String VERSION_FIELD = "_v";
+    public static final String ID_FIELD = String.valueOf(ID_TAG);
+    public static final String NAME_FIELD = String.valueOf(NAME_TAG);
+    public static final String PRICE_FIELD = String.valueOf(PRICE_TAG);
+
+    private static final int VARINT = 0;
+    private static final int LENGTH_DELIMITED = 2;
+
+    private ProductCodec() {
+    }
+
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    public static byte[] encode(Product product) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        out.write(MAGIC);
+        out.write(VERSION);
+        if (product.getId() != null) {
+            writeString(out, ID_TAG, product.getId());
+        }
+        if (product.getName() != null) {
+            writeString(out, NAME_TAG, product.getName());
+        }
+        if (product.getPrice() != null) {
+            writeLong(out, PRICE_TAG, product.getPrice());
+        }
+        writeLong(out, TTL_TAG, product.getTtl());
+        return out.toByteArray();
+    }
+
+    public static Product decode(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            throw new IllegalArgumentException("Not a compact product payload");
+        }
+        if (bytes[1] > VERSION) {
+            throw new IllegalArgumentException("Unsupported product codec version " + bytes[1]);
+        }
+
+        Product product = new Product();
+        int[] position = {2};
+        while (position[0] < bytes.length) {
+            int key = (int) readVarint(bytes, position);
+            int tag = key >>> 3;
+            int wireType = key & 0x7;
+            switch (tag) {
+                case ID_TAG -> product.setId(readString(bytes, position));
+                case NAME_TAG -> product.setName(readString(bytes, position));
+                case PRICE_TAG -> product.setPrice(zigZagDecode(readVarint(bytes, position)));
+                case TTL_TAG -> product.setTtl(zigZagDecode(readVarint(bytes, position)));
+                default -> skip(bytes, position, wireType);
+            }
+        }
+        return product;
+    }
+
+    public static Map<String, byte[]> toHash(Product product) {
+        Map<String, byte[]> hash = new HashMap<>(4);
+        hash.put(VERSION_FIELD, String.valueOf(VERSION).getBytes(StandardCharsets.UTF_8));
+        if (product.getId() != null) {
+            hash.put(ID_FIELD, product.getId().getBytes(StandardCharsets.UTF_8));
+        }
+        if (product.getName() != null) {
+            hash.put(NAME_FIELD, product.getName().getBytes(StandardCharsets.UTF_8));
+        }
+        if (product.getPrice() != null) {
+            hash.put(PRICE_FIELD, String.valueOf(product.getPrice()).getBytes(StandardCharsets.UTF_8));
+        }
+        return hash;
+    }
+
+    public static Product fromHash(Map<String, byte[]> hash) {
+        Product product = new Product();
+        if (!hash.containsKey(VERSION_FIELD)) {
+            //old data written by default spring data mapping (id, name, price, ttl)
+            product.setId(text(hash.get("id")));
+            product.setName(text(hash.get("name")));
+            product.setPrice(number(hash.get("price")));
+            Long ttl = number(hash.get("ttl"));
+            if (ttl != null) {
+                product.setTtl(ttl);
+            }
+            return product;
+        }
+
+        product.setId(text(hash.get(ID_FIELD)));
+        product.setName(text(hash.get(NAME_FIELD)));
+        product.setPrice(number(hash.get(PRICE_FIELD)));
+        return product;
+    }
+
+    private static String text(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static Long number(byte[] value) {
+        return value == null ? null : Long.valueOf(new String(value, StandardCharsets.UTF_8));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, int tag, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, (long) tag << 3 | LENGTH_DELIMITED);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, int tag, long value) {
+        writeVarint(out, (long) tag << 3 | VARINT);
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = bytes[position[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static String readString(byte[] bytes, int[] position) {
+        int length = (int) readVarint(bytes, position);
+        String value = new String(bytes, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return value;
+    }
+
+    private static void skip(byte[] bytes, int[] position, int wireType) {
+        if (wireType == VARINT) {
+            readVarint(bytes, position);
+        } else if (wireType == LENGTH_DELIMITED) {
+            position[0] += (int) readVarint(bytes, position);
+        } else {
+            throw new IllegalArgumentException("Unknown wire type " + wireType);
+        }
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
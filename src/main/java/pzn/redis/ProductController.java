@@ -0,0 +1,65 @@
+package pzn.redis;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//http access to ProductService, every client is limited by app.rate-limit.policies.products
+@RestController
+@RequestMapping("/products")
+@RateLimited("products")
+public class ProductController {
+
+    private final ProductService productService;
+
+    private final ProductLeaderboard productLeaderboard;
+
+    private final ProductVisitorAnalytics productVisitorAnalytics;
+
+    private final RateLimitProperties rateLimitProperties;
+
+    public ProductController(ProductService productService, ProductLeaderboard productLeaderboard,
+                             ProductVisitorAnalytics productVisitorAnalytics, RateLimitProperties rateLimitProperties) {
+        this.productService = productService;
+        this.productLeaderboard = productLeaderboard;
+        this.productVisitorAnalytics = productVisitorAnalytics;
+        this.rateLimitProperties = rateLimitProperties;
+    }
+
+    //every read is a visit of the client, counted once per day in ProductVisitorAnalytics
+    //the visitor is app.rate-limit.client-header, or the remote address when the header is missing
+    @GetMapping("/{id}")
+    public Product getProduct(@PathVariable String id, HttpServletRequest request) {
+        String visitor = request.getHeader(rateLimitProperties.getClientHeader());
+        productVisitorAnalytics.record(id, visitor == null || visitor.isBlank() ? request.getRemoteAddr() : visitor);
+        return productService.getProduct(id);
+    }
+
+    //GET /products/1/visitors?from=2026-01-01&to=2026-01-31
+    @GetMapping("/{id}/visitors")
+    public long visitors(@PathVariable String id,
+                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return productVisitorAnalytics.uniqueVisitors(id, from, to);
+    }
+
+    //GET /products/top?window=1h&limit=10, from the local snapshot of ProductLeaderboard
+    @GetMapping("/top")
+    public List<ProductLeaderboard.Entry> top(@RequestParam(defaultValue = "1h") String window,
+                                              @RequestParam(defaultValue = "10") int limit) {
+        return productLeaderboard.top(window, limit);
+    }
+
+    //GET /products?ids=1,2,3
+    @GetMapping
+    public List<Product> getProducts(@RequestParam List<String> ids) {
+        return productService.getProducts(ids);
+    }
+}
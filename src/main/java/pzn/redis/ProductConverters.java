@@ -0,0 +1,32 @@
+package pzn.redis;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.util.Map;
+
+//converter for repository, so product hash use ProductCodec layout instead of default mapping
+//registered on RedisCustomConversions in RepositoryConfiguration
+public final class ProductConverters {
+
+    private ProductConverters() {
+    }
+
+    @WritingConverter
+    public static class ProductToHash implements Converter<Product, Map<String, byte[]>> {
+        @Override
+        public Map<String, byte[]> convert(Product source) {
+            return ProductCodec.toHash(source);
+        }
+    }
+
+    //can read old hash written by default mapping too
+    @ReadingConverter
+    public static class HashToProduct implements Converter<Map<String, byte[]>, Product> {
+        @Override
+        public Product convert(Map<String, byte[]> source) {
+            return ProductCodec.fromHash(source);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pzn.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.stereotype.Component;
+
+//@EnableRedisRepositories turn on the keyspace events, it's an annotation so it can't read the properties,
+//in sweeper mode we turn it off here, before the adapter start its expiration listener (and CONFIG SET notify-keyspace-events)
+@Slf4j
+@Component
+public class ProductExpiryPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<ProductExpiryProperties> properties;
+
+    public ProductExpiryPostProcessor(ObjectProvider<ProductExpiryProperties> properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RedisKeyValueAdapter adapter && properties.getObject().isSweeper()) {
+            log.info("Products expiry use sweeper, keyspace events and phantom keys disabled");
+            adapter.setEnableKeyspaceEvents(RedisKeyValueAdapter.EnableKeyspaceEvents.OFF);
+            adapter.setShadowCopy(RedisKeyValueAdapter.ShadowCopy.OFF);
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,34 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//how products with @TimeToLive are removed from the products set and the indexes after the hash expire
+@Data
+@ConfigurationProperties(prefix = "app.products.expiry")
+public class ProductExpiryProperties {
+
+    private Mode mode = Mode.KEYSPACE_EVENTS;
+
+    //sweeper only: id is put in the bucket of its expire time, one set per bucket
+    private Duration bucketSize = Duration.ofMinutes(1);
+
+    //sweeper only: max id removed in one sweep, so a lot of product expired together doesn't make one big cleanup
+    private int batchSize = 500;
+
+    //sweeper only: delay between sweep
+    private Duration sweepInterval = Duration.ofSeconds(1);
+
+    public enum Mode {
+        //spring data default: phantom key for every product + keyspace notification when it expire
+        KEYSPACE_EVENTS,
+        //no phantom key and no notification, ProductExpirySweeper remove the expired ids from time bucket
+        SWEEPER
+    }
+
+    public boolean isSweeper() {
+        return mode == Mode.SWEEPER;
+    }
+}
@@ -0,0 +1,118 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+//sweeper mode of app.products.expiry: the hash still expire by itself (EXPIRE), but there's no phantom key
+//and no keyspace notification, so the products set, the @Indexed sets and products:price are cleaned here
+//every product with ttl is added to the set of its expire time bucket (products:expiry:<bucket size>:<bucket>),
+//when the bucket is in the past, its ids are popped a batch at a time and removed if the hash is gone
+//the cursor (first bucket not finished yet) is in redis, so every instance can sweep and nothing is missed after restart
+@Slf4j
+@Component
+public class ProductExpirySweeper {
+
+    private static final String PREFIX = "products:expiry:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    //expiry-sweep and expiry-cursor-advance in resources/scripts
+    private final RedisScripts scripts;
+
+    private final ProductExpiryProperties properties;
+
+    private final Counter swept;
+
+    //bucket that already past but not finished yet, grow when the sweeper can't keep up
+    private final AtomicLong backlog = new AtomicLong();
+
+    public ProductExpirySweeper(StringRedisTemplate redisTemplate, RedisScripts scripts,
+                                ProductExpiryProperties properties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.scripts = scripts;
+        this.properties = properties;
+        this.swept = Counter.builder("products.expiry.swept").register(meterRegistry);
+        Gauge.builder("products.expiry.backlog", backlog, AtomicLong::get).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isSweeper();
+    }
+
+    //queued in the caller MULTI (ProductBulkRepositoryImpl), bucket is the one after the expire time,
+    //so when it's swept the hash is already expired
+    void track(RedisConnection connection, String id, long timeToLiveSeconds) {
+        connection.setCommands().sAdd(bytes(bucketKeyFor(timeToLiveSeconds)), bytes(id));
+    }
+
+    //ReactiveProductService add the id itself
+    String bucketKeyFor(long timeToLiveSeconds) {
+        return bucketKey(bucketOf(System.currentTimeMillis() / 1000 + timeToLiveSeconds) + 1);
+    }
+
+    //bucket size is in the key, so changing it doesn't mix bucket number of different size
+    String bucketKey(long bucket) {
+        return bucketPrefix() + bucket;
+    }
+
+    String bucketPrefix() {
+        return PREFIX + bucketSeconds() + ":";
+    }
+
+    private String cursorKey() {
+        return bucketPrefix() + "cursor";
+    }
+
+    private long bucketSeconds() {
+        return Math.max(1, properties.getBucketSize().toSeconds());
+    }
+
+    private long bucketOf(long epochSeconds) {
+        return epochSeconds / bucketSeconds();
+    }
+
+    @Scheduled(fixedDelayString = "${app.products.expiry.sweep-interval:1s}")
+    public void sweep() {
+        if (!isEnabled()) {
+            return;
+        }
+        long current = bucketOf(System.currentTimeMillis() / 1000);
+        //first sweep ever, product is always tracked in a bucket after the current one, so nothing before it exist
+        String cursorKey = cursorKey();
+        redisTemplate.opsForValue().setIfAbsent(cursorKey, String.valueOf(current));
+        long bucket = Long.parseLong(redisTemplate.opsForValue().get(cursorKey));
+        int budget = properties.getBatchSize();
+        while (bucket <= current && budget > 0) {
+            List<Long> result = scripts.execute("expiry-sweep", ReturnType.MULTI,
+                    List.of(bucketKey(bucket), "products", ProductPriceIndex.KEY),
+                    List.of("products:", String.valueOf(budget)));
+            long popped = result.get(0);
+            swept.increment(result.get(1));
+            budget -= (int) popped;
+            if (budget > 0) {
+                //less than asked, the bucket is empty (and removed by redis)
+                bucket++;
+                scripts.execute("expiry-cursor-advance", ReturnType.INTEGER, List.of(cursorKey), List.of(String.valueOf(bucket)));
+            }
+        }
+        backlog.set(Math.max(0, current - bucket + 1));
+        if (budget <= 0) {
+            log.debug("Products expiry sweep stopped at bucket {}, {} bucket left", bucket, backlog.get());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,236 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//top products by order amount, fed by OrderListener (so an order is counted once, after dedup)
+//write: amounts are added up per minute and product in memory, every flush-interval they're sent as one pipeline
+//  of ZINCRBY to leaderboard:products:m:<minute>, so the write cost is one round trip per flush, not per order
+//rollup: a closed hour is ZUNIONSTORE-d once from its 60 minute buckets into leaderboard:products:h:<hour>
+//read: every refresh-interval each window is ZUNIONSTORE-d from the hour buckets of its full hours and the minute
+//  buckets of the rest, the top "size" are kept in a local snapshot and top() never go to redis
+//amounts not flushed yet are lost when the instance die, it's a ranking, not the order total
+@Slf4j
+@Component
+public class ProductLeaderboard {
+
+    private static final long MINUTE_MILLIS = Duration.ofMinutes(1).toMillis();
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final LeaderboardProperties properties;
+
+    private final Timer flushLatency;
+
+    //minute -> product -> amount not flushed yet
+    private final Map<Long, Map<String, AtomicLong>> pending = new ConcurrentHashMap<>();
+
+    private volatile Map<String, List<Entry>> snapshot = Map.of();
+
+    public ProductLeaderboard(StringRedisTemplate redisTemplate, LeaderboardProperties properties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.flushLatency = Timer.builder("leaderboard.flush").register(meterRegistry);
+    }
+
+    public void record(Order order) {
+        if (!properties.isEnabled() || order.getProductId() == null || order.getAmount() == null) {
+            return;
+        }
+        pending.computeIfAbsent(currentMinute(), minute -> new ConcurrentHashMap<>())
+                .computeIfAbsent(order.getProductId(), product -> new AtomicLong())
+                .addAndGet(order.getAmount());
+    }
+
+    //highest amount first, from the last refresh
+    public List<Entry> top(String window, int limit) {
+        List<Entry> entries = snapshot.getOrDefault(window, List.of());
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    @Scheduled(fixedDelayString = "${app.leaderboard.flush-interval:1s}")
+    public void flush() {
+        long current = currentMinute();
+        Map<Long, Map<String, Long>> increments = new HashMap<>();
+        for (Map.Entry<Long, Map<String, AtomicLong>> minute : pending.entrySet()) {
+            Map<String, Long> amounts = new HashMap<>();
+            minute.getValue().forEach((product, amount) -> {
+                long value = amount.getAndSet(0);
+                if (value != 0) {
+                    amounts.put(product, value);
+                }
+            });
+            if (!amounts.isEmpty()) {
+                increments.put(minute.getKey(), amounts);
+            }
+            //nobody write to a past minute anymore, except a record() that started just before the minute changed
+            if (minute.getKey() < current - 1) {
+                pending.remove(minute.getKey());
+            }
+        }
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        long timeToLive = properties.longestWindow().plusHours(1).toSeconds();
+        long start = System.nanoTime();
+        try {
+            redisTemplate.executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    increments.forEach((minute, amounts) -> {
+                        String key = minuteKey(minute);
+                        amounts.forEach((product, amount) -> operations.opsForZSet().incrementScore(key, product, amount));
+                        operations.expire(key, Duration.ofSeconds(timeToLive));
+                    });
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            //put back, the next flush try again
+            log.warn("Failed to flush leaderboard: {}", e.getMessage());
+            increments.forEach((minute, amounts) -> amounts.forEach((product, amount) ->
+                    pending.computeIfAbsent(minute, ignored -> new ConcurrentHashMap<>())
+                            .computeIfAbsent(product, ignored -> new AtomicLong())
+                            .addAndGet(amount)));
+        } finally {
+            flushLatency.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.leaderboard.refresh-interval:5s}")
+    public void refresh() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            long now = currentMinute();
+            rollup(now);
+            List<String> names = new ArrayList<>(properties.getWindows().keySet());
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (String name : names) {
+                        List<String> keys = bucketKeys(properties.getWindows().get(name), now);
+                        String window = properties.getKeyPrefix() + "w:" + name;
+                        operations.opsForZSet().unionAndStore(keys.get(0), keys.subList(1, keys.size()), window);
+                        operations.expire(window, properties.getRefreshInterval().multipliedBy(2));
+                        operations.opsForZSet().reverseRangeWithScores(window, 0, properties.getSize() - 1);
+                    }
+                    return null;
+                }
+            });
+
+            Map<String, List<Entry>> refreshed = new HashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                @SuppressWarnings("unchecked")
+                Set<ZSetOperations.TypedTuple<String>> top = (Set<ZSetOperations.TypedTuple<String>>) results.get(i * 3 + 2);
+                List<Entry> entries = new ArrayList<>(top.size());
+                top.forEach(tuple -> entries.add(new Entry(tuple.getValue(), tuple.getScore())));
+                refreshed.put(names.get(i), List.copyOf(entries));
+            }
+            snapshot = refreshed;
+        } catch (RuntimeException e) {
+            //the old snapshot is still served
+            log.warn("Failed to refresh leaderboard: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    //every closed hour of the longest window that has no hour bucket yet, usually only the last one,
+    //an hour is closed when the last flush of its last minute surely happened, any instance can do it (same result)
+    private void rollup(long now) {
+        long closedBefore = (now - graceMinutes()) / 60;
+        long firstHour = (now - properties.longestWindow().toMinutes() + 1 + 59) / 60;
+        List<Long> hours = new ArrayList<>();
+        for (long hour = firstHour; hour < closedBefore; hour++) {
+            hours.add(hour);
+        }
+        if (hours.isEmpty()) {
+            return;
+        }
+        List<Object> exists = redisTemplate.executePipelined(new SessionCallback<>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                hours.forEach(hour -> operations.hasKey(hourKey(hour)));
+                return null;
+            }
+        });
+        long timeToLive = properties.longestWindow().plusHours(1).toSeconds();
+        for (int i = 0; i < hours.size(); i++) {
+            if (Boolean.TRUE.equals(exists.get(i))) {
+                continue;
+            }
+            long hour = hours.get(i);
+            List<String> minutes = new ArrayList<>(60);
+            for (long minute = hour * 60; minute < hour * 60 + 60; minute++) {
+                minutes.add(minuteKey(minute));
+            }
+            //no order in that hour: nothing is stored and it's checked again next refresh, it's cheap
+            redisTemplate.opsForZSet().unionAndStore(minutes.get(0), minutes.subList(1, 60), hourKey(hour));
+            redisTemplate.expire(hourKey(hour), Duration.ofSeconds(timeToLive));
+        }
+    }
+
+    //the minutes of the window, a full closed hour is replaced by its hour bucket
+    List<String> bucketKeys(Duration window, long now) {
+        long closedBefore = (now - graceMinutes()) / 60;
+        List<String> keys = new ArrayList<>();
+        long minute = now - Math.max(1, window.toMinutes()) + 1;
+        while (minute <= now) {
+            if (minute % 60 == 0 && minute + 59 <= now && minute / 60 < closedBefore) {
+                keys.add(hourKey(minute / 60));
+                minute += 60;
+            } else {
+                keys.add(minuteKey(minute));
+                minute++;
+            }
+        }
+        return keys;
+    }
+
+    //minutes after the end of an hour before its hour bucket is trusted
+    private long graceMinutes() {
+        return Math.max(1, -Math.floorDiv(-properties.getFlushInterval().multipliedBy(2).toMillis(), MINUTE_MILLIS));
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / MINUTE_MILLIS;
+    }
+
+    private String minuteKey(long minute) {
+        return properties.getKeyPrefix() + "m:" + minute;
+    }
+
+    private String hourKey(long hour) {
+        return properties.getKeyPrefix() + "h:" + hour;
+    }
+
+    public record Entry(String productId, double amount) {
+    }
+}
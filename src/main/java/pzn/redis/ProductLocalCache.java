@@ -0,0 +1,130 @@
+package pzn.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+//local copy of products:<id> hashes for ProductRepository.findById, kept fresh by RedisTracking invalidation
+//(write from any instance, lua script, redis-cli, expire), when tracking is off an entry only live fallback-time-to-live
+//a read that started before an invalidation of the same id is not cached, so an old value can't stay after the change
+//the copy is cloned on every get, cause Product is mutable
+@Component
+public class ProductLocalCache {
+
+    static final String PREFIX = "products:";
+
+    private final ProductTrackingProperties properties;
+
+    private final RedisTracking tracking;
+
+    private final Cache<String, Product> local;
+
+    //id -> token of the read in progress, removed by invalidation
+    private final Map<String, Object> loading = new ConcurrentHashMap<>();
+
+    private final Counter hit;
+    private final Counter miss;
+
+    public ProductLocalCache(ProductTrackingProperties properties, RedisTracking tracking, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.tracking = tracking;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new TrackingExpiry())
+                .build();
+        this.hit = Counter.builder("products.local.requests").tag("result", "hit").register(meterRegistry);
+        this.miss = Counter.builder("products.local.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("products.local.hit.ratio", this, cache -> ratio(cache.hit.count(), cache.miss.count()))
+                .register(meterRegistry);
+        Gauge.builder("products.local.size", local, Cache::estimatedSize).register(meterRegistry);
+        tracking.addListener(PREFIX, this::onInvalidate);
+    }
+
+    public Product get(String id, Function<String, Product> loader) {
+        if (!properties.isEnabled()) {
+            return loader.apply(id);
+        }
+        Product cached = local.getIfPresent(id);
+        if (cached != null) {
+            hit.increment();
+            return copy(cached);
+        }
+        miss.increment();
+
+        Object token = new Object();
+        loading.put(id, token);
+        Product product;
+        try {
+            product = loader.apply(id);
+        } catch (RuntimeException e) {
+            loading.remove(id, token);
+            throw e;
+        }
+        //missing product is not cached, its creation may not be seen when tracking is off
+        if (loading.remove(id, token) && product != null) {
+            local.put(id, copy(product));
+        }
+        return product;
+    }
+
+    //called by the repository after its own write, so this instance see it even when tracking is off
+    public void evict(String id) {
+        loading.remove(id);
+        local.invalidate(id);
+    }
+
+    public void evictAll() {
+        loading.clear();
+        local.invalidateAll();
+    }
+
+    //products:<id>, other keys with the prefix (products:price, products:name:..) just don't match any id
+    private void onInvalidate(String key) {
+        if (key == null) {
+            evictAll();
+            return;
+        }
+        evict(key.substring(PREFIX.length()));
+    }
+
+    private static Product copy(Product product) {
+        return Product.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .price(product.getPrice())
+                .ttl(product.getTtl())
+                .build();
+    }
+
+    private static double ratio(double hits, double misses) {
+        double total = hits + misses;
+        return total == 0 ? 0 : hits / total;
+    }
+
+    //ttl is decided when the entry is written, so entries written while tracking was off stay short
+    private class TrackingExpiry implements Expiry<String, Product> {
+
+        @Override
+        public long expireAfterCreate(String key, Product value, long currentTime) {
+            return (tracking.isActive() ? properties.getTimeToLive() : properties.getFallbackTimeToLive()).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Product value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Product value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
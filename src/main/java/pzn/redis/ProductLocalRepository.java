@@ -0,0 +1,10 @@
+package pzn.redis;
+
+import java.util.Optional;
+
+//custom fragment for ProductRepository, findById read from ProductLocalCache first,
+//so a hot product doesn't need a round trip to redis until it's changed
+public interface ProductLocalRepository {
+
+    Optional<Product> findById(String id);
+}
@@ -0,0 +1,65 @@
+package pzn.redis;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.springframework.data.redis.RedisSystemException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//miss is read like findAllById (HGETALL + TTL), in default tracking mode it's read with the tracking connection,
+//cause redis only track the keys that connection read
+public class ProductLocalRepositoryImpl implements ProductLocalRepository {
+
+    private static final long COMMAND_TIMEOUT_SECONDS = 5L;
+
+    private final ProductLocalCache localCache;
+
+    private final RedisTracking tracking;
+
+    private final ProductTrackingProperties properties;
+
+    private final ProductBulkRepositoryImpl bulkRepository;
+
+    public ProductLocalRepositoryImpl(ProductLocalCache localCache, RedisTracking tracking,
+                                      ProductTrackingProperties properties, ProductBulkRepositoryImpl bulkRepository) {
+        this.localCache = localCache;
+        this.tracking = tracking;
+        this.properties = properties;
+        this.bulkRepository = bulkRepository;
+    }
+
+    @Override
+    public Optional<Product> findById(String id) {
+        return Optional.ofNullable(localCache.get(id, this::load));
+    }
+
+    private Product load(String id) {
+        StatefulRedisConnection<byte[], byte[]> connection = properties.isBcast() ? null : tracking.connection();
+        if (connection == null) {
+            List<Product> found = bulkRepository.findAllById(List.of(id));
+            return found.isEmpty() ? null : found.get(0);
+        }
+
+        byte[] key = bulkRepository.key(id).getBytes(StandardCharsets.UTF_8);
+        RedisAsyncCommands<byte[], byte[]> commands = connection.async();
+        //both sent before waiting, one round trip
+        RedisFuture<Map<byte[], byte[]>> hash = commands.hgetall(key);
+        RedisFuture<Long> ttl = commands.ttl(key);
+        try {
+            return bulkRepository.read(id, hash.get(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                    ttl.get(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("HGETALL interrupted", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new RedisSystemException("HGETALL failed", e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package pzn.redis;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//memory that one product take in redis, from MEMORY USAGE of a sample of products
+//per product key: hash, phantom key, index helper (:idx)
+//shared key (products set, products:price, @Indexed sets, expiry buckets) is divided by its member count
+//compare the two app.products.expiry.mode with GET /actuator/productmemory
+@Component
+@Endpoint(id = "productmemory")
+public class ProductMemoryReport {
+
+    private static final int DEFAULT_SAMPLES = 100;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final ProductExpiryProperties properties;
+
+    private final ProductExpirySweeper expirySweeper;
+
+    public ProductMemoryReport(StringRedisTemplate redisTemplate, ProductExpiryProperties properties,
+                               ProductExpirySweeper expirySweeper) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.expirySweeper = expirySweeper;
+    }
+
+    @ReadOperation
+    public Report report() {
+        return report(DEFAULT_SAMPLES);
+    }
+
+    public Report report(int samples) {
+        List<String> ids = redisTemplate.opsForSet().distinctRandomMembers("products", samples)
+                .stream().toList();
+        Long total = redisTemplate.opsForSet().size("products");
+        if (ids.isEmpty()) {
+            return new Report(properties.getMode(), total == null ? 0 : total, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        //every key of the sampled products in one pipeline
+        List<Object> perProduct = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String id : ids) {
+                memoryUsage(connection, "products:" + id);
+                memoryUsage(connection, "products:" + id + ":phantom");
+                memoryUsage(connection, "products:" + id + ":idx");
+            }
+            return null;
+        });
+        //a product is in one set per indexed property, its share of every one is summed
+        Map<String, Double> indexShares = new HashMap<>();
+        double index = 0;
+        for (String id : ids) {
+            Set<String> keys = redisTemplate.opsForSet().members("products:" + id + ":idx");
+            if (keys != null) {
+                for (String indexKey : keys) {
+                    index += indexShares.computeIfAbsent(indexKey,
+                            key -> shared(key, redisTemplate.opsForSet().size(key)));
+                }
+            }
+        }
+        index = index / ids.size();
+
+        double hash = average(perProduct, 0, ids.size());
+        double phantom = average(perProduct, 1, ids.size());
+        double indexHelper = average(perProduct, 2, ids.size());
+        double keyspace = shared("products", total);
+        double price = shared(ProductPriceIndex.KEY, redisTemplate.opsForZSet().zCard(ProductPriceIndex.KEY));
+        double expiry = expiryBuckets();
+
+        return new Report(properties.getMode(), total == null ? 0 : total, round(hash), round(phantom),
+                round(indexHelper), round(keyspace), round(price), round(index), round(expiry));
+    }
+
+    //bytes per member of all the expiry bucket sets, zero when the sweeper is not used
+    private double expiryBuckets() {
+        List<String> buckets = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions()
+                .match(expirySweeper.bucketPrefix() + "[0-9]*").count(1000).build())) {
+            cursor.forEachRemaining(buckets::add);
+        }
+        long bytes = 0;
+        long members = 0;
+        for (String bucket : buckets) {
+            Long usage = redisTemplate.execute((RedisCallback<Long>) connection -> memoryUsage(connection, bucket));
+            Long size = redisTemplate.opsForSet().size(bucket);
+            bytes += usage == null ? 0 : usage;
+            members += size == null ? 0 : size;
+        }
+        return members == 0 ? 0 : (double) bytes / members;
+    }
+
+    private double shared(String key, Long members) {
+        if (members == null || members == 0) {
+            return 0;
+        }
+        Long usage = redisTemplate.execute((RedisCallback<Long>) connection -> memoryUsage(connection, key));
+        return usage == null ? 0 : (double) usage / members;
+    }
+
+    private static Long memoryUsage(RedisConnection connection, String key) {
+        return (Long) connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8),
+                key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //missing key (no phantom in sweeper mode) count as 0
+    private static double average(List<Object> results, int offset, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            Object value = results.get(i * 3 + offset);
+            sum += value instanceof Long bytes ? bytes : 0;
+        }
+        return (double) sum / count;
+    }
+
+    private static long round(double value) {
+        return Math.round(value);
+    }
+
+    //all in bytes per product
+    public record Report(ProductExpiryProperties.Mode mode, long products, long hash, long phantom, long indexHelper,
+                         long keyspace, long priceIndex, long nameIndex, long expiryBucket) {
+
+        public long total() {
+            return hash + phantom + indexHelper + keyspace + priceIndex + nameIndex + expiryBucket;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package pzn.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisKeyExpiredEvent;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+//@Indexed only make exact match index (one set per value), so price range use its own sorted set:
+//products:price, score is the price and member is the product id
+//it's written in the same MULTI as the product hash by ProductBulkRepositoryImpl,
+//and removed when a product with ttl expire (RedisKeyValueAdapter only clean the @Indexed one)
+@Slf4j
+@Component
+public class ProductPriceIndex {
+
+    static final String KEY = "products:price";
+
+    private static final byte[] RAW_KEY = KEY.getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public ProductPriceIndex(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    //queue ZADD (or ZREM when no price) in the caller connection, so it's part of the caller transaction
+    void write(RedisConnection connection, String id, Long price) {
+        if (price == null) {
+            remove(connection, id);
+        } else {
+            connection.zSetCommands().zAdd(RAW_KEY, price, bytes(id));
+        }
+    }
+
+    void remove(RedisConnection connection, String id) {
+        connection.zSetCommands().zRem(RAW_KEY, bytes(id));
+    }
+
+    List<String> ids(long min, long max, long offset, int count) {
+        Set<String> ids = redisTemplate.opsForZSet().rangeByScore(KEY, min, max, offset, count);
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    long count(long min, long max) {
+        Long count = redisTemplate.opsForZSet().count(KEY, min, max);
+        return count == null ? 0L : count;
+    }
+
+    //read repair, id in the index that doesn't have hash anymore (expired while the expire event is missed)
+    void removeStale(Collection<String> ids) {
+        if (!ids.isEmpty()) {
+            log.debug("Remove {} stale ids from {}", ids.size(), KEY);
+            redisTemplate.opsForZSet().remove(KEY, ids.toArray());
+        }
+    }
+
+    //published by RedisKeyValueAdapter when products:<id> expire (need keyspace events enabled)
+    @EventListener
+    public void onExpired(RedisKeyExpiredEvent<?> event) {
+        if ("products".equals(event.getKeyspace())) {
+            redisTemplate.opsForZSet().remove(KEY, new String(event.getId(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
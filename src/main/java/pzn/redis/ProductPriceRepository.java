@@ -0,0 +1,11 @@
+package pzn.redis;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+//range query on price, redis repository can't derive "Between", so it's a custom fragment backed by ProductPriceIndex
+public interface ProductPriceRepository {
+
+    //min and max are inclusive, sorted by price
+    Page<Product> findByPriceBetween(long min, long max, Pageable pageable);
+}
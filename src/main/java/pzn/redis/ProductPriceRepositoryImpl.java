@@ -0,0 +1,52 @@
+package pzn.redis;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//ZRANGEBYSCORE with LIMIT for the page ids + ZCOUNT for the total, then every product is read with one pipeline
+//only the ids of one page are read, not the whole products set
+public class ProductPriceRepositoryImpl implements ProductPriceRepository {
+
+    private final ProductPriceIndex priceIndex;
+
+    private final ProductBulkRepositoryImpl bulkRepository;
+
+    public ProductPriceRepositoryImpl(ProductPriceIndex priceIndex, ProductBulkRepositoryImpl bulkRepository) {
+        this.priceIndex = priceIndex;
+        this.bulkRepository = bulkRepository;
+    }
+
+    @Override
+    public Page<Product> findByPriceBetween(long min, long max, Pageable pageable) {
+        long offset = pageable.isPaged() ? pageable.getOffset() : 0L;
+        int count = pageable.isPaged() ? pageable.getPageSize() : -1;
+        List<String> ids = priceIndex.ids(min, max, offset, count);
+        if (ids.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, priceIndex.count(min, max));
+        }
+
+        Map<String, Product> found = new LinkedHashMap<>();
+        bulkRepository.findAllById(ids).forEach(product -> found.put(product.getId(), product));
+
+        //id without hash is expired product that the expired event missed, remove it now,
+        //this page is a bit shorter, the next query is correct
+        List<String> stale = new ArrayList<>();
+        List<Product> products = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(product);
+            } else {
+                stale.add(id);
+            }
+        }
+        priceIndex.removeStale(stale);
+        return new PageImpl<>(products, pageable, priceIndex.count(min, max));
+    }
+}
@@ -3,9 +3,30 @@ package pzn.redis;
 import org.springframework.data.keyvalue.repository.KeyValueRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 //in redis, for the repository use extend KeyValueRepository as the inheritance
 //you don't need added annotation Repository cause KeyValueRepository inheritance from Repository class.
 //but I add it as marker
+//ProductBulkRepository replace findAllById, save and delete with the pipelined version
+//ProductPriceRepository add range query on price
+//ProductLocalRepository replace findById with the one that read ProductLocalCache first
 @Repository
-public interface ProductRepository extends KeyValueRepository<Product, String> {
+public interface ProductRepository extends KeyValueRepository<Product, String>, ProductBulkRepository,
+        ProductPriceRepository, ProductLocalRepository {
+
+    //declared again, or save and deleteById are ambiguous between CrudRepository and ProductBulkRepository
+    @Override
+    <S extends Product> S save(S product);
+
+    @Override
+    void deleteById(String id);
+
+    //same for findById and ProductLocalRepository
+    @Override
+    Optional<Product> findById(String id);
+
+    //derived query, SINTER on products:name:<name> (the set made by @Indexed), not a scan of all products
+    List<Product> findByName(String name);
 }
@@ -1,19 +1,81 @@
 package pzn.redis;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @Slf4j
 @Component
 public class ProductService {
 
+    private static final String CACHE = "products";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private RedisBulkCache redisBulkCache;
+
     //too store the data on cache, we can use this annotation:
-    @Cacheable(value = "products", key = "#id")
+    //sync = true make the cache call this method through Cache.get(key, loader), so NearCache can protect it
+    //from stampede (see app.cache.caches.products.loading.*)
+    @Cacheable(value = "products", key = "#id", sync = true)
     public Product getProduct(String id) {
         log.info("Get Product {}", id);
+        return productRepository.findById(id).orElseGet(() -> sample(id));
+    }
+
+    //bulk version of getProduct, the cache annotation only work for single key
+    //so the steps are done manually: near cache, then one MGET to redis cache, then one pipelined HGETALL
+    //to the repository for the misses, then the misses written back to the cache with one pipeline
+    //whatever the number of ids, it's about 3 round trip instead of N
+    public List<Product> getProducts(Collection<String> ids) {
+        Set<String> distinctIds = new LinkedHashSet<>(ids);
+        Map<String, Object> cached = redisBulkCache.getAll(CACHE, distinctIds);
+
+        List<String> misses = distinctIds.stream().filter(id -> !cached.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            log.info("Get Products {}", misses);
+            Map<String, Product> loaded = new LinkedHashMap<>();
+            productRepository.findAllById(misses).forEach(product -> loaded.put(product.getId(), product));
+            misses.forEach(id -> loaded.computeIfAbsent(id, this::sample));
+            redisBulkCache.putAll(CACHE, loaded, false);
+            cached.putAll(loaded);
+        }
+
+        //a product cached as null is skipped like ReactiveProductService.getProducts, so there's no null element
+        List<Product> products = new ArrayList<>(distinctIds.size());
+        distinctIds.forEach(id -> {
+            Product product = (Product) cached.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        });
+        return products;
+    }
+
+    //bulk version of save, products are saved to the repository and the cache, each with one pipeline
+    public List<Product> saveAll(Collection<Product> products) {
+        log.info("Save Products {}", products.size());
+        List<Product> saved = productRepository.saveAll(products);
+        Map<String, Product> entries = new LinkedHashMap<>();
+        saved.forEach(product -> entries.put(product.getId(), product));
+        redisBulkCache.putAll(CACHE, entries, true);
+        return saved;
+    }
+
+    private Product sample(String id) {
         return Product.builder().id(id).name("sample").build();
     }
 
@@ -0,0 +1,44 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//redis client side caching (CLIENT TRACKING, redis 6+ with RESP3) for ProductLocalCache and the near cache
+@Data
+@ConfigurationProperties(prefix = "app.products.tracking")
+public class ProductTrackingProperties {
+
+    private boolean enabled = true;
+
+    private Mode mode = Mode.BCAST;
+
+    //bcast only: redis send invalidation for every changed key with one of these prefix
+    private List<String> prefixes = new ArrayList<>(List.of("products:", "cache:products:"));
+
+    //local copy of products in ProductLocalCache
+    private long maximumSize = 10_000;
+
+    //tracking is on: invalidation keep the copy fresh, ttl only make unused entries go away
+    private Duration timeToLive = Duration.ofMinutes(10);
+
+    //tracking is off (redis too old, RESP2, connection lost): the copy can be this old, like the near cache
+    private Duration fallbackTimeToLive = Duration.ofSeconds(5);
+
+    //delay before connect and turn on tracking again after it failed or the connection lost
+    private Duration retryInterval = Duration.ofSeconds(30);
+
+    public enum Mode {
+        //every key with the prefixes, whoever read it, the near cache L1 is invalidated too
+        BCAST,
+        //only keys read by the tracking connection, so only ProductLocalCache (it read with that connection)
+        DEFAULT
+    }
+
+    public boolean isBcast() {
+        return mode == Mode.BCAST;
+    }
+}
@@ -0,0 +1,159 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//unique visitors per product per day, one hyperloglog per product and day: analytics:visitors:<product>:<yyyyMMdd>
+//(at most 12KB per key whatever the number of visitors, error around 0.81%)
+//write: visits are collected per key in memory (repeated visitor only once) and sent every flush-interval
+//  as one pipeline of PFADD, so the cost is one round trip per flush, not per visit
+//read: short range is one PFCOUNT of the day keys (redis merge them for every call),
+//  long range merge the past days once (hll-range-count) and reuse it for merge-time-to-live, only today is live
+//visits not flushed yet are lost when the instance die
+@Slf4j
+@Component
+public class ProductVisitorAnalytics {
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisScripts scripts;
+
+    private final VisitorAnalyticsProperties properties;
+
+    private final Timer flushLatency;
+
+    //day key -> visitors not flushed yet, the set is only touched inside compute, so nothing is added after it's taken
+    private final Map<String, Set<String>> pending = new ConcurrentHashMap<>();
+
+    public ProductVisitorAnalytics(StringRedisTemplate redisTemplate, RedisScripts scripts,
+                                   VisitorAnalyticsProperties properties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.scripts = scripts;
+        this.properties = properties;
+        this.flushLatency = Timer.builder("analytics.visitors.flush").register(meterRegistry);
+    }
+
+    public void record(String productId, String visitorId) {
+        if (!properties.isEnabled() || productId == null || visitorId == null) {
+            return;
+        }
+        pending.compute(dayKey(productId, today()), (key, visitors) -> {
+            Set<String> result = visitors == null ? new HashSet<>() : visitors;
+            result.add(visitorId);
+            return result;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.visitors.flush-interval:1s}")
+    public void flush() {
+        Map<String, Set<String>> visits = new HashMap<>();
+        for (String key : pending.keySet()) {
+            Set<String> visitors = pending.remove(key);
+            if (visitors != null) {
+                visits.put(key, visitors);
+            }
+        }
+        if (visits.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            redisTemplate.executePipelined(new SessionCallback<>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    visits.forEach((key, visitors) -> {
+                        operations.opsForHyperLogLog().add(key, visitors.toArray());
+                        operations.expire(key, properties.getRetention());
+                    });
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            //put back, the next flush try again
+            log.warn("Failed to flush {} visitor keys: {}", visits.size(), e.getMessage());
+            visits.forEach((key, visitors) -> pending.merge(key, visitors, (current, failed) -> {
+                current.addAll(failed);
+                return current;
+            }));
+        } finally {
+            flushLatency.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    //unique visitors of the product from "from" to "to" (both included), days after today are ignored,
+    //days before the retention are gone from redis, so they're ignored too (and a far "from" doesn't make a key per day)
+    public long uniqueVisitors(String productId, LocalDate from, LocalDate to) {
+        LocalDate today = today();
+        LocalDate oldest = today.minusDays(Math.max(1, properties.getRetention().toDays()) - 1);
+        if (from.isBefore(oldest)) {
+            from = oldest;
+        }
+        LocalDate last = to.isAfter(today) ? today : to;
+        if (last.isBefore(from)) {
+            return 0;
+        }
+        boolean includeToday = last.equals(today);
+        LocalDate lastPastDay = includeToday ? today.minusDays(1) : last;
+        List<String> pastDays = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(lastPastDay); day = day.plusDays(1)) {
+            pastDays.add(dayKey(productId, day));
+        }
+
+        if (pastDays.size() + (includeToday ? 1 : 0) <= properties.getMergeThreshold() || pastDays.isEmpty()) {
+            List<String> keys = new ArrayList<>(pastDays);
+            if (includeToday) {
+                keys.add(dayKey(productId, today));
+            }
+            Long count = redisTemplate.opsForHyperLogLog().size(keys.toArray(String[]::new));
+            return count == null ? 0 : count;
+        }
+
+        //the past days never change (except a late flush), so the merge of them is cached
+        List<String> keys = new ArrayList<>();
+        keys.add(properties.getKeyPrefix() + productId + ":" + DAY.format(from) + "-" + DAY.format(lastPastDay));
+        keys.addAll(pastDays);
+        if (includeToday) {
+            keys.add(dayKey(productId, today));
+        }
+        Long count = scripts.execute("hll-range-count", ReturnType.INTEGER, keys,
+                List.of(String.valueOf(properties.getMergeTimeToLive().toMillis()), String.valueOf(pastDays.size())));
+        return count == null ? 0 : count;
+    }
+
+    String dayKey(String productId, LocalDate day) {
+        return properties.getKeyPrefix() + productId + ":" + DAY.format(day);
+    }
+
+    private LocalDate today() {
+        return LocalDate.now(properties.getZone());
+    }
+}
@@ -0,0 +1,65 @@
+package pzn.redis;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.security.Principal;
+
+//check RateLimiter before every handler with @RateLimited (on the method, or on the controller class)
+//the client is the authenticated user, or the remote address, the client header is only used when
+//app.rate-limit.trust-client-header=true (set by a gateway in front of the app), anybody else can send a new value
+//for every request and get a new bucket every time
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiter rateLimiter;
+
+    private final RateLimitProperties properties;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod method)) {
+            return true;
+        }
+        RateLimited rateLimited = method.getMethodAnnotation(RateLimited.class);
+        if (rateLimited == null) {
+            rateLimited = method.getBeanType().getAnnotation(RateLimited.class);
+        }
+        if (rateLimited == null) {
+            return true;
+        }
+
+        RateLimiter.Decision decision = rateLimiter.tryAcquire(rateLimited.value(), client(request));
+        if (decision.allowed()) {
+            return true;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        //in seconds, rounded up so the client doesn't come back too early
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, (decision.retryAfterMillis() + 999) / 1000)));
+        return false;
+    }
+
+    private String client(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "user:" + principal.getName();
+        }
+        if (properties.isTrustClientHeader()) {
+            String client = request.getHeader(properties.getClientHeader());
+            if (client != null && !client.isBlank()) {
+                return "client:" + client;
+            }
+        }
+        //missing header share the bucket of its address, it's not a new one
+        return "address:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,65 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+//limit per policy and client, shared by every instance through redis (RateLimiter)
+//ex: app.rate-limit.policies.products.limit=100, the policy name is the one in @RateLimited
+@Data
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+    //false: every request is allowed, nothing is sent to redis
+    private boolean enabled = true;
+
+    private String keyPrefix = "rate:";
+
+    //header that identify the client (and the visitor of ProductVisitorAnalytics)
+    private String clientHeader = "X-Client-Id";
+
+    //the caller choose the header value, so it's only the rate limit key when a gateway in front of the app set it,
+    //otherwise the limit is per authenticated user or remote address
+    private boolean trustClientHeader = false;
+
+    //local leases kept per instance (one per policy and client)
+    private long leaseMaximumSize = 100_000;
+
+    private Map<String, Policy> policies = new HashMap<>();
+
+    public Policy policyFor(String name) {
+        return policies.getOrDefault(name, new Policy());
+    }
+
+    @Data
+    public static class Policy {
+
+        private Algorithm algorithm = Algorithm.TOKEN_BUCKET;
+
+        //request allowed per period, for token bucket it's also the burst
+        private long limit = 100;
+
+        private Duration period = Duration.ofSeconds(1);
+
+        //tokens taken from redis at once and used locally, 0 = every request go to redis
+        //every instance can hold this many tokens that nobody else can use, so keep it small compared to limit
+        private int lease = 0;
+
+        //leased tokens not used after this are dropped (they are already counted in redis),
+        //a rejection is also remembered locally until its retry-after, at most this long
+        private Duration leaseTimeToLive = Duration.ofMillis(100);
+
+        //redis down: true allow every request, false reject every request
+        private boolean failOpen = true;
+    }
+
+    public enum Algorithm {
+        //ZSET of request time, exact over any window of "period", one member per request (memory grow with limit)
+        SLIDING_WINDOW,
+        //hash of tokens and last refill, refilled limit/period continuously, fixed size per client
+        TOKEN_BUCKET
+    }
+}
@@ -0,0 +1,15 @@
+package pzn.redis;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//put on a controller class or method, every request is checked by RateLimitInterceptor with the policy
+//app.rate-limit.policies.<value>, a rejected request get 429 with Retry-After
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    String value() default "default";
+}
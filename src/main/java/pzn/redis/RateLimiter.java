@@ -0,0 +1,151 @@
+package pzn.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//rate limit shared by every instance, the count is in redis and changed by one script per call
+//(rate-limit-sliding-window or rate-limit-token-bucket), so two instances never both take the last token
+//with lease > 0 an instance take up to "lease" tokens in one call and use them locally, a rejection is also
+//remembered locally until its retry-after, so a busy client cost about one round trip per lease instead of per request
+//the price: leased tokens are counted in redis before they are used, so a client can be rejected on one instance
+//while another still hold its tokens, and unused ones are lost after lease-time-to-live
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private final RedisScripts scripts;
+
+    private final RateLimitProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String instanceId;
+
+    //registered once, not on every decision
+    private final Map<String, Decisions> decisions = new ConcurrentHashMap<>();
+
+    private final Map<RateLimitProperties.Algorithm, Counter> redisCalls = new EnumMap<>(RateLimitProperties.Algorithm.class);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    //policy + client -> tokens leased to this instance
+    private final Cache<String, Lease> leases;
+
+    public RateLimiter(RedisScripts scripts, RateLimitProperties properties, InstanceIdentity instanceIdentity,
+                       MeterRegistry meterRegistry) {
+        this.scripts = scripts;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.instanceId = instanceIdentity.getId();
+        this.leases = Caffeine.newBuilder()
+                .maximumSize(properties.getLeaseMaximumSize())
+                .expireAfterAccess(Duration.ofMinutes(1))
+                .build();
+        for (RateLimitProperties.Algorithm algorithm : RateLimitProperties.Algorithm.values()) {
+            redisCalls.put(algorithm, Counter.builder("rate.limit.redis.calls").tag("algorithm", algorithm.name())
+                    .register(meterRegistry));
+        }
+        properties.getPolicies().keySet().forEach(this::decisions);
+    }
+
+    public Decision tryAcquire(String policyName, String client) {
+        return tryAcquire(policyName, properties.policyFor(policyName), client);
+    }
+
+    public Decision tryAcquire(String policyName, RateLimitProperties.Policy policy, String client) {
+        if (!properties.isEnabled()) {
+            return Decision.ALLOWED;
+        }
+        String key = properties.getKeyPrefix() + policyName + ":" + client;
+        Decision decision = policy.getLease() > 0
+                ? fromLease(key, policy)
+                : fromRedis(key, policy, 1).decision();
+        count(policyName, decision);
+        return decision;
+    }
+
+    //only one thread per key go to redis, the others wait and then use what it leased
+    private Decision fromLease(String key, RateLimitProperties.Policy policy) {
+        Lease lease = leases.get(key, ignored -> new Lease());
+        synchronized (lease) {
+            long now = System.currentTimeMillis();
+            if (now < lease.expiresAt) {
+                if (lease.tokens > 0) {
+                    lease.tokens--;
+                    return Decision.ALLOWED;
+                }
+                if (lease.rejectedUntil > now) {
+                    return new Decision(false, lease.rejectedUntil - now);
+                }
+            }
+            Grant grant = fromRedis(key, policy, policy.getLease());
+            long timeToLive = policy.getLeaseTimeToLive().toMillis();
+            lease.expiresAt = now + timeToLive;
+            lease.tokens = Math.max(0, grant.granted() - 1);
+            lease.rejectedUntil = grant.granted() > 0 ? 0 : now + Math.min(grant.retryAfterMillis(), timeToLive);
+            return grant.decision();
+        }
+    }
+
+    private Grant fromRedis(String key, RateLimitProperties.Policy policy, int requested) {
+        redisCalls.get(policy.getAlgorithm()).increment();
+        try {
+            List<Long> result = policy.getAlgorithm() == RateLimitProperties.Algorithm.SLIDING_WINDOW
+                    ? scripts.execute("rate-limit-sliding-window", ReturnType.MULTI, List.of(key + ":log"),
+                            List.of(String.valueOf(policy.getLimit()), String.valueOf(policy.getPeriod().toMillis()),
+                                    String.valueOf(requested), instanceId + ":" + sequence.incrementAndGet()))
+                    : scripts.execute("rate-limit-token-bucket", ReturnType.MULTI, List.of(key + ":bucket"),
+                            List.of(String.valueOf(policy.getLimit()), String.valueOf(policy.getPeriod().toMillis()),
+                                    String.valueOf(requested)));
+            return new Grant(result.get(0).intValue(), result.get(1));
+        } catch (RuntimeException e) {
+            log.warn("Rate limit of {} not checked, {}: {}", key, policy.isFailOpen() ? "allowed" : "rejected", e.getMessage());
+            return policy.isFailOpen() ? new Grant(1, 0) : new Grant(0, policy.getPeriod().toMillis());
+        }
+    }
+
+    private void count(String policyName, Decision decision) {
+        Decisions counters = decisions(policyName);
+        (decision.allowed() ? counters.allowed() : counters.rejected()).increment();
+    }
+
+    //policy without setting (default policy) is registered the first time it's used
+    private Decisions decisions(String policyName) {
+        return decisions.computeIfAbsent(policyName, name -> new Decisions(
+                Counter.builder("rate.limit.decisions").tag("policy", name).tag("result", "allowed").register(meterRegistry),
+                Counter.builder("rate.limit.decisions").tag("policy", name).tag("result", "rejected").register(meterRegistry)));
+    }
+
+    public record Decision(boolean allowed, long retryAfterMillis) {
+
+        static final Decision ALLOWED = new Decision(true, 0);
+    }
+
+    private record Decisions(Counter allowed, Counter rejected) {
+    }
+
+    private record Grant(int granted, long retryAfterMillis) {
+
+        Decision decision() {
+            return granted > 0 ? Decision.ALLOWED : new Decision(false, retryAfterMillis);
+        }
+    }
+
+    private static class Lease {
+        private int tokens;
+        private long expiresAt;
+        private long rejectedUntil;
+    }
+}
@@ -0,0 +1,19 @@
+package pzn.redis;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+//reactive template use the same lettuce connection underneath, but doesn't block the caller thread
+//spring boot already make reactiveStringRedisTemplate, this one is for raw bytes,
+//so reactive code can write the same bytes as RedisCache and the repository (their serializer is used by hand)
+@Configuration
+public class ReactiveConfiguration {
+
+    @Bean
+    public ReactiveRedisTemplate<byte[], byte[]> reactiveBytesRedisTemplate(ReactiveRedisConnectionFactory connectionFactory) {
+        return new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.byteArray());
+    }
+}
@@ -0,0 +1,55 @@
+package pzn.redis;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+
+//reactive version of CustomerPublisher, used when app.reactive.enabled=true
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "true")
+public class ReactiveCustomerPublisher {
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final CustomerChannel customerChannel;
+
+    private Disposable schedule;
+
+    public ReactiveCustomerPublisher(ReactiveStringRedisTemplate redisTemplate, CustomerChannel customerChannel) {
+        this.redisTemplate = redisTemplate;
+        this.customerChannel = customerChannel;
+    }
+
+    //return the number of subscriber that receive it, same as PUBLISH, key choose the shard
+    public Mono<Long> publish(String key, String customer) {
+        return redisTemplate.convertAndSend(customerChannel.shardFor(key), customer);
+    }
+
+    @PostConstruct
+    public void start() {
+        schedule = Flux.interval(Duration.ofSeconds(10))
+                .onBackpressureDrop()
+                .map(tick -> UUID.randomUUID().toString())
+                .concatMap(customer -> publish(customer, "customer " + customer)
+                        .onErrorResume(e -> {
+                            log.warn("Failed to publish customer: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        schedule.dispose();
+    }
+}
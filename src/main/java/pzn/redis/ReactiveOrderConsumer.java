@@ -0,0 +1,176 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.stream.StreamReceiver;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//reactive version of orderContainer + OrderDispatcher, used when app.reactive.enabled=true
+//StreamReceiver only read (XREADGROUP) when there is demand, so slow processing slow down the reading (backpressure)
+//instead of filling a queue, at most "workers" orders are processed at the same time
+//same as the blocking one, order is acknowledged after OrderListener success, with one XACK per batch
+//and every batch read is claimed first (OrderDeduplicator), dedup use the blocking template so it run on boundedElastic
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "true")
+public class ReactiveOrderConsumer {
+
+    private final ReactiveRedisConnectionFactory connectionFactory;
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final OrderListener orderListener;
+
+    private final OrderConsumerProperties properties;
+
+    private final InstanceIdentity instanceIdentity;
+
+    private final StreamMonitor streamMonitor;
+
+    private final OrderDeduplicator orderDeduplicator;
+
+    private final Timer processLatency;
+
+    private Disposable subscription;
+
+    //StreamReceiver poll with XREADGROUP BLOCK, so it use the blocking lane (RedisLanesConfiguration)
+    public ReactiveOrderConsumer(@Qualifier("blockingRedisConnectionFactory") ReactiveRedisConnectionFactory connectionFactory,
+                                 ReactiveStringRedisTemplate redisTemplate, OrderListener orderListener, OrderConsumerProperties properties,
+                                 InstanceIdentity instanceIdentity, StreamMonitor streamMonitor,
+                                 OrderDeduplicator orderDeduplicator, MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = redisTemplate;
+        this.orderListener = orderListener;
+        this.properties = properties;
+        this.instanceIdentity = instanceIdentity;
+        this.streamMonitor = streamMonitor;
+        this.orderDeduplicator = orderDeduplicator;
+        this.processLatency = Timer.builder("orders.consumer.process")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        var options = StreamReceiver.StreamReceiverOptions.builder()
+                .pollTimeout(properties.getPollTimeout())
+                .batchSize(properties.getBatchSize())
+                .targetType(Order.class)
+                .build();
+        StreamReceiver<String, ObjectRecord<String, Order>> receiver = StreamReceiver.create(connectionFactory, options);
+
+        List<Flux<ObjectRecord<String, Order>>> consumers = new ArrayList<>();
+        for (int i = 1; i <= properties.getConsumers(); i++) {
+            var consumer = Consumer.from(properties.getGroup(), properties.consumerName(instanceIdentity, String.valueOf(i)));
+            var offset = StreamOffset.create(properties.getStream(), ReadOffset.lastConsumed());
+            consumers.add(receiver.receive(consumer, offset));
+        }
+
+        int workers = Math.max(1, properties.getWorkers());
+        Flux<Claimed> records = Flux.merge(consumers)
+                .bufferTimeout(properties.getBatchSize(), Duration.ofMillis(10))
+                .concatMap(this::claim);
+        //ordered by key: same order id always go to the same group, and a group process one by one
+        Flux<OrderDeduplicator.Completion> completions = properties.isOrderedByKey()
+                ? records.groupBy(claimed -> lane(claimed.record()), workers).flatMap(lane -> lane.concatMap(this::process), workers)
+                : records.flatMap(this::process, workers);
+
+        subscription = createGroup()
+                .thenMany(completions)
+                .bufferTimeout(properties.getBatchSize(), Duration.ofMillis(100))
+                .concatMap(this::complete)
+                //redis down or connection lost, start reading again after a while
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Order receiver failed, retrying: {}", signal.failure().getMessage())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscription.dispose();
+    }
+
+    private Mono<String> createGroup() {
+        return redisTemplate.opsForStream().createGroup(properties.getStream(), properties.getGroup())
+                //consumer group already exists, any other error go to the retry
+                .onErrorResume(StreamMonitor::isBusyGroup, e -> Mono.empty());
+    }
+
+    private int lane(ObjectRecord<String, Order> record) {
+        String key = record.getValue().getId();
+        return Math.floorMod(key == null ? 0 : key.hashCode(), Math.max(1, properties.getWorkers()));
+    }
+
+    private Flux<Claimed> claim(List<ObjectRecord<String, Order>> batch) {
+        return Mono.fromCallable(() -> orderDeduplicator.claim(batch.stream().map(record -> record.getValue().getId()).toList()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(claims -> {
+                    List<Claimed> claimed = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        claimed.add(new Claimed(batch.get(i), claims.get(i)));
+                    }
+                    return claimed;
+                });
+    }
+
+    //OrderListener is blocking code, so it's run on boundedElastic, not on the lettuce event loop
+    //in flight (claimed by another consumer) stay pending, it's acknowledged as duplicate when reclaimed
+    private Mono<OrderDeduplicator.Completion> process(Claimed claimed) {
+        ObjectRecord<String, Order> record = claimed.record();
+        if (claimed.claim() == OrderDeduplicator.Claim.DUPLICATE) {
+            return Mono.just(completion(record, OrderDeduplicator.Outcome.DUPLICATE));
+        }
+        if (claimed.claim() == OrderDeduplicator.Claim.IN_FLIGHT) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        orderListener.onMessage(record);
+                        return completion(record, OrderDeduplicator.Outcome.PROCESSED);
+                    } finally {
+                        processLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    //not acknowledged, it stay in pending list and will be reclaimed later
+                    log.warn("Failed to process order {}: {}", record.getId(), e.getMessage());
+                    streamMonitor.recordError(properties.getStream(), properties.getGroup());
+                    return Mono.just(completion(record, OrderDeduplicator.Outcome.FAILED));
+                });
+    }
+
+    //XACK and dedup mark in one pipeline, error is logged by OrderDeduplicator
+    private Mono<Void> complete(List<OrderDeduplicator.Completion> completions) {
+        return Mono.<Void>fromRunnable(() -> orderDeduplicator.complete(completions))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static OrderDeduplicator.Completion completion(ObjectRecord<String, Order> record, OrderDeduplicator.Outcome outcome) {
+        return new OrderDeduplicator.Completion(record.getId(), record.getValue().getId(), outcome);
+    }
+
+    private record Claimed(ObjectRecord<String, Order> record, OrderDeduplicator.Claim claim) {
+    }
+}
@@ -0,0 +1,67 @@
+package pzn.redis;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+
+//reactive version of OrderPublisher + OrderBatchPublisher, used when app.reactive.enabled=true
+//no buffer thread is needed here, XADD is sent without waiting the previous reply,
+//so many orders on the same connection already go together like a pipeline
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "true")
+public class ReactiveOrderPublisher {
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final OrderPublisherProperties properties;
+
+    private final OrderStreamRetention retention;
+
+    private Disposable schedule;
+
+    public ReactiveOrderPublisher(ReactiveStringRedisTemplate redisTemplate, OrderPublisherProperties properties,
+                                  OrderStreamRetention retention) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.retention = retention;
+    }
+
+    public Mono<RecordId> publish(Order order) {
+        return redisTemplate.opsForStream().add(ObjectRecord.create(properties.getStream(), order), retention.addOptions());
+    }
+
+    //at most batch-size XADD in flight, the next order is requested only when one of them done (backpressure)
+    public Flux<RecordId> publishAll(Flux<Order> orders) {
+        return orders.flatMapSequential(this::publish, properties.getBatchSize());
+    }
+
+    //same as OrderPublisher, one order every 10 seconds
+    @PostConstruct
+    public void start() {
+        schedule = Flux.interval(Duration.ofSeconds(10))
+                .onBackpressureDrop()
+                .concatMap(tick -> publish(new Order(UUID.randomUUID().toString(), 1000L, OrderPublisher.sampleProduct()))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to publish order: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        schedule.dispose();
+    }
+}
@@ -0,0 +1,182 @@
+package pzn.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisKeyValueTemplate;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+//non blocking version of ProductService, the caller thread is never blocked while waiting redis
+//it read and write the same keys and bytes as the blocking one:
+//near cache L1 -> "products" redis cache -> products:<id> hash -> sample product
+//so both can be used together, ex: blocking write and reactive read
+@Slf4j
+@Component
+public class ReactiveProductService {
+
+    private static final String CACHE = "products";
+
+    private final ReactiveRedisTemplate<byte[], byte[]> redisTemplate;
+
+    private final CacheManager cacheManager;
+
+    private final RedisConverter converter;
+
+    private final ProductRepository productRepository;
+
+    //same as NearCache coalescing, concurrent miss on the same id share one load
+    private final Map<String, Mono<Product>> loading = new ConcurrentHashMap<>();
+
+    public ReactiveProductService(ReactiveRedisTemplate<byte[], byte[]> reactiveBytesRedisTemplate,
+                                  CacheManager cacheManager, RedisKeyValueTemplate keyValueTemplate,
+                                  ProductRepository productRepository) {
+        this.redisTemplate = reactiveBytesRedisTemplate;
+        this.cacheManager = cacheManager;
+        this.converter = keyValueTemplate.getConverter();
+        this.productRepository = productRepository;
+    }
+
+    public Mono<Product> getProduct(String id) {
+        Cache cache = cacheManager.getCache(CACHE);
+        NearCache nearCache = cache instanceof NearCache near ? near : null;
+        if (nearCache != null) {
+            Cache.ValueWrapper local = nearCache.getLocal(id);
+            if (local != null) {
+                return Mono.justOrEmpty((Product) local.get());
+            }
+        }
+
+        RedisCacheConfiguration config = RedisBulkCache.redisCache(cache).getCacheConfiguration();
+        //a cached null (NullValue) is a hit with no product: Optional.empty, so it's not loaded again, only a missing key is
+        return redisTemplate.opsForValue().get(RedisBulkCache.cacheKey(CACHE, config, id))
+                .map(raw -> {
+                    Product product = (Product) RedisBulkCache.deserialize(config, raw);
+                    if (nearCache != null) {
+                        if (product != null) {
+                            nearCache.putLocal(id, product);
+                        }
+                        nearCache.recordRemote(1, 0);
+                    }
+                    return Optional.ofNullable(product);
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    if (nearCache != null) {
+                        nearCache.recordRemote(0, 1);
+                    }
+                    return loading.computeIfAbsent(id, key -> load(id, config, nearCache)
+                            .doFinally(signal -> loading.remove(id))
+                            .cache())
+                            .map(Optional::of);
+                }))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    //every getProduct is sent without waiting the previous one, lettuce put them on the same connection,
+    //so it's pipelined without any batching code
+    public Flux<Product> getProducts(Collection<String> ids) {
+        return Flux.fromIterable(new LinkedHashSet<>(ids))
+                .flatMapSequential(this::getProduct);
+    }
+
+    //same as ProductService.save (@CachePut): write the cache and tell other instances
+    public Mono<Product> save(Product product) {
+        Cache cache = cacheManager.getCache(CACHE);
+        return putCache(product.getId(), product, cache, true).thenReturn(product);
+    }
+
+    //same as ProductService.saveAll: write the repository hash and the cache
+    //the repository write go through RedisKeyValueAdapter, which is blocking, so it run on boundedElastic
+    public Flux<Product> saveAll(Collection<Product> products) {
+        Cache cache = cacheManager.getCache(CACHE);
+        return Mono.fromCallable(() -> productRepository.saveAll(products))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .flatMapSequential(product -> putCache(product.getId(), product, cache, true)
+                        .thenReturn(product));
+    }
+
+    public Mono<Void> remove(String id) {
+        Cache cache = cacheManager.getCache(CACHE);
+        RedisCacheConfiguration config = RedisBulkCache.redisCache(cache).getCacheConfiguration();
+        if (cache instanceof NearCache nearCache) {
+            nearCache.evictLocal(NearCache.localKey(id));
+        }
+        return redisTemplate.delete(RedisBulkCache.cacheKey(CACHE, config, id))
+                .then(publishInvalidation(id));
+    }
+
+    //HGETALL + TTL from the repository hash, like ProductBulkRepositoryImpl, sample when it doesn't exist
+    private Mono<Product> load(String id, RedisCacheConfiguration config, NearCache nearCache) {
+        String keyspace = keyspace();
+        byte[] key = bytes(keyspace + ":" + id);
+        Mono<Product> fromHash = redisTemplate.<byte[], byte[]>opsForHash().entries(key)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, HashMap::new)
+                .filter(hash -> !hash.isEmpty())
+                .zipWith(redisTemplate.createMono(connection -> connection.keyCommands().ttl(ByteBuffer.wrap(key))))
+                .map(tuple -> {
+                    RedisData data = new RedisData(tuple.getT1());
+                    data.setId(id);
+                    data.setKeyspace(keyspace);
+                    Product product = converter.read(Product.class, data);
+                    product.setTtl(tuple.getT2());
+                    return product;
+                });
+
+        return fromHash
+                .switchIfEmpty(Mono.fromSupplier(() -> Product.builder().id(id).name("sample").build()))
+                .doOnNext(product -> log.info("Get Product {}", id))
+                .flatMap(product -> putCache(id, product, nearCache != null ? nearCache : cacheManager.getCache(CACHE), false)
+                        .thenReturn(product));
+    }
+
+    private Mono<Void> putCache(String id, Product product, Cache cache, boolean publish) {
+        RedisCacheConfiguration config = RedisBulkCache.redisCache(cache).getCacheConfiguration();
+        byte[] raw = RedisBulkCache.serialize(config, product);
+        RedisCache redisCache = RedisBulkCache.redisCache(cache);
+        if (redisCache.getNativeCache() instanceof SizeLimitedRedisCacheWriter writer && !writer.allowed(CACHE, raw)) {
+            return Mono.empty();
+        }
+        if (cache instanceof NearCache nearCache) {
+            nearCache.putLocal(id, product);
+        }
+
+        Mono<Boolean> set = redisTemplate.createMono(connection -> connection.stringCommands().set(
+                ByteBuffer.wrap(RedisBulkCache.cacheKey(CACHE, config, id)), ByteBuffer.wrap(raw),
+                RedisBulkCache.expiration(config, id, product), RedisStringCommands.SetOption.upsert()));
+        return publish ? set.then(publishInvalidation(id)) : set.then();
+    }
+
+    private Mono<Void> publishInvalidation(String id) {
+        if (cacheManager instanceof NearCacheManager manager) {
+            return redisTemplate.convertAndSend(manager.getInvalidationChannel(),
+                    bytes(manager.invalidationMessage(CACHE, id))).then();
+        }
+        return Mono.empty();
+    }
+
+    private String keyspace() {
+        return converter.getMappingContext().getRequiredPersistentEntity(Product.class).getKeySpace();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
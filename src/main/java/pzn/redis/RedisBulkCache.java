@@ -0,0 +1,170 @@
+package pzn.redis;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Cache only have single key get and put, so reading 200 products is 200 GET
+//this one read L1 (near cache) first, then MGET the rest, and write back with one pipeline of SET
+//key and value is made with the same configuration as RedisCache, so both can read each other entries
+@Component
+public class RedisBulkCache {
+
+    //RedisCache always store null as jdk serialized NullValue, whatever the value serializer is
+    private static final byte[] BINARY_NULL_VALUE = RedisSerializer.java().serialize(NullValue.INSTANCE);
+
+    private final CacheManager cacheManager;
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisBulkCache(CacheManager cacheManager, StringRedisTemplate redisTemplate) {
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+    }
+
+    //return the cached value of every key that found, value can be null when null is cached
+    public Map<String, Object> getAll(String cacheName, Collection<String> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        Map<String, Object> found = new LinkedHashMap<>();
+        if (cache == null || keys.isEmpty()) {
+            return found;
+        }
+
+        NearCache nearCache = cache instanceof NearCache near ? near : null;
+        List<String> remaining = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Cache.ValueWrapper local = nearCache != null ? nearCache.getLocal(key) : null;
+            if (local != null) {
+                found.put(key, local.get());
+            } else {
+                remaining.add(key);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return found;
+        }
+
+        RedisCache redisCache = redisCache(cache);
+        if (redisCache == null) {
+            //not a redis cache, nothing to batch
+            remaining.forEach(key -> {
+                Cache.ValueWrapper value = cache.get(key);
+                if (value != null) {
+                    found.put(key, value.get());
+                }
+            });
+            return found;
+        }
+
+        RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+        byte[][] cacheKeys = remaining.stream().map(key -> cacheKey(cacheName, config, key)).toArray(byte[][]::new);
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(cacheKeys));
+
+        int hits = 0;
+        for (int i = 0; i < remaining.size(); i++) {
+            byte[] raw = values == null ? null : values.get(i);
+            if (raw == null) {
+                continue;
+            }
+            Object value = deserialize(config, raw);
+            found.put(remaining.get(i), value);
+            if (nearCache != null) {
+                nearCache.putLocal(remaining.get(i), value);
+            }
+            hits++;
+        }
+        if (nearCache != null) {
+            nearCache.recordRemote(hits, remaining.size() - hits);
+        }
+        return found;
+    }
+
+    //write every entry with one pipeline, ttl (with jitter) is taken from the cache configuration like RedisCache.put
+    //publishInvalidation is for write (like @CachePut), filling a cache miss doesn't need to tell other instance
+    public void putAll(String cacheName, Map<String, ?> entries, boolean publishInvalidation) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || entries.isEmpty()) {
+            return;
+        }
+
+        RedisCache redisCache = redisCache(cache);
+        if (redisCache == null) {
+            entries.forEach(cache::put);
+            return;
+        }
+
+        RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+        //same max entry size as RedisCache.put
+        SizeLimitedRedisCacheWriter sizeLimit = redisCache.getNativeCache() instanceof SizeLimitedRedisCacheWriter writer
+                ? writer : null;
+        NearCacheManager nearCacheManager = publishInvalidation && cacheManager instanceof NearCacheManager manager
+                ? manager : null;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            entries.forEach((key, value) -> {
+                if (value == null && !config.getAllowCacheNullValues()) {
+                    return;
+                }
+                byte[] raw = serialize(config, value);
+                if (sizeLimit != null && !sizeLimit.allowed(cacheName, raw)) {
+                    return;
+                }
+                connection.stringCommands().set(cacheKey(cacheName, config, key), raw, expiration(config, key, value),
+                        RedisStringCommands.SetOption.upsert());
+                if (nearCacheManager != null) {
+                    connection.publish(nearCacheManager.getInvalidationChannel().getBytes(StandardCharsets.UTF_8),
+                            nearCacheManager.invalidationMessage(cacheName, key).getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            return null;
+        });
+
+        if (cache instanceof NearCache nearCache) {
+            entries.forEach(nearCache::putLocal);
+        }
+    }
+
+    //the helpers below are also used by ReactiveProductService, so both write the same bytes as RedisCache
+    static RedisCache redisCache(Cache cache) {
+        Cache target = cache instanceof NearCache near ? near.getRedisCache() : cache;
+        return target instanceof RedisCache redisCache ? redisCache : null;
+    }
+
+    //same as RedisCache.createCacheKey for String key
+    static byte[] cacheKey(String cacheName, RedisCacheConfiguration config, String key) {
+        String cacheKey = config.usePrefix() ? config.getKeyPrefixFor(cacheName) + key : key;
+        return ByteUtils.getBytes(config.getKeySerializationPair().write(cacheKey));
+    }
+
+    static byte[] serialize(RedisCacheConfiguration config, Object value) {
+        return value == null ? BINARY_NULL_VALUE : ByteUtils.getBytes(config.getValueSerializationPair().write(value));
+    }
+
+    static Object deserialize(RedisCacheConfiguration config, byte[] raw) {
+        return Arrays.equals(BINARY_NULL_VALUE, raw) ? null : config.getValueSerializationPair().read(ByteBuffer.wrap(raw));
+    }
+
+    static Expiration expiration(RedisCacheConfiguration config, Object key, Object value) {
+        Duration ttl = config.getTtlFunction().getTimeToLive(key, value);
+        return ttl == null || ttl.isZero() || ttl.isNegative() ? Expiration.persistent() : Expiration.from(ttl);
+    }
+}
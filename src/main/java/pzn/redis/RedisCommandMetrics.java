@@ -0,0 +1,212 @@
+package pzn.redis;
+
+import io.lettuce.core.metrics.CommandLatencyRecorder;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.lettuce.core.protocol.RedisCommand;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//latency histogram for every redis command (redis.command) and count of error reply (redis.command.errors),
+//both tagged with command and the prefix of the first key. Lettuce call it when the reply is read, with the time from
+//write to the end of the reply, so template, repository, cache, stream poll and pubsub are all measured,
+//pipelined command included, and nothing is wrapped. It's set on the client resources of both lanes (RedisLanesConfiguration)
+//only reply is seen here, a command that never get one (timeout, connection closed) is not counted as error,
+//the caller get the exception
+//this is in the path of every command, so the meters are created once and looked up without making new object
+//meter registry is taken lazily, so the connection factory doesn't make it created too early
+@Component
+public class RedisCommandMetrics implements CommandLatencyRecorder {
+
+    private static final String OTHER = "other";
+    private static final String NONE = "none";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final boolean enabled;
+
+    private final byte[][] prefixes;
+
+    //index: 0..n-1 = prefix, n = other, n+1 = none
+    private final String[] prefixTags;
+
+    private final Map<ProtocolKeyword, CommandMeters> commands = new ConcurrentHashMap<>();
+
+    private final Timer[] messageTimers;
+
+    private final Counter[] messageErrors;
+
+    public RedisCommandMetrics(ObjectProvider<MeterRegistry> meterRegistry, RedisMetricsProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = properties.isEnabled();
+
+        List<String> keyPrefixes = properties.getKeyPrefixes();
+        this.prefixes = new byte[keyPrefixes.size()][];
+        this.prefixTags = new String[keyPrefixes.size() + 2];
+        for (int i = 0; i < keyPrefixes.size(); i++) {
+            prefixes[i] = keyPrefixes.get(i).getBytes(StandardCharsets.UTF_8);
+            prefixTags[i] = keyPrefixes.get(i);
+        }
+        prefixTags[keyPrefixes.size()] = OTHER;
+        prefixTags[keyPrefixes.size() + 1] = NONE;
+        this.messageTimers = new Timer[prefixTags.length];
+        this.messageErrors = new Counter[prefixTags.length];
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //both latency are in nanoseconds, the completion one is what the caller wait
+    //called after the reply is decoded and before the caller get it, so the error of the reply is already there
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, RedisCommand<?, ?, ?> command,
+                                     long firstResponseLatency, long completionLatency) {
+        CommandArgs<?, ?> args = command.getArgs();
+        int prefix = prefixIndex(args == null ? null : args.getFirstEncodedKey());
+        CommandMeters meters = meters(command.getType());
+        meters.timer(prefix).record(completionLatency, TimeUnit.NANOSECONDS);
+        CommandOutput<?, ?, ?> output = command.getOutput();
+        if (output != null && output.getError() != null) {
+            meters.error(prefix).increment();
+        }
+    }
+
+    //lettuce 6.4 call the one with the command, this one is only for the caller that doesn't have it
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+                                     long firstResponseLatency, long completionLatency) {
+        meters(commandType).timer(prefixTags.length - 1).record(completionLatency, TimeUnit.NANOSECONDS);
+    }
+
+    //pubsub delivery, measured on the listener side, tagged by channel
+    public MessageListener instrument(MessageListener listener) {
+        if (!enabled) {
+            return listener;
+        }
+        return (message, pattern) -> {
+            byte[] channel = message.getChannel();
+            int prefix = prefixIndex(channel == null ? null : ByteBuffer.wrap(channel));
+            long start = System.nanoTime();
+            try {
+                listener.onMessage(message, pattern);
+            } catch (RuntimeException e) {
+                messageError(prefix).increment();
+                throw e;
+            } finally {
+                messageTimer(prefix).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private CommandMeters meters(ProtocolKeyword type) {
+        CommandMeters meters = commands.get(type);
+        if (meters == null) {
+            meters = commands.computeIfAbsent(type, ignored -> new CommandMeters(type.name().toLowerCase(Locale.ROOT)));
+        }
+        return meters;
+    }
+
+    //racing threads may both build it, micrometer return the same meter to both
+    private Timer messageTimer(int prefix) {
+        Timer timer = messageTimers[prefix];
+        if (timer == null) {
+            timer = Timer.builder("redis.message")
+                    .tag("prefix", prefixTags[prefix])
+                    .publishPercentileHistogram()
+                    .register(meterRegistry.getObject());
+            messageTimers[prefix] = timer;
+        }
+        return timer;
+    }
+
+    private Counter messageError(int prefix) {
+        Counter counter = messageErrors[prefix];
+        if (counter == null) {
+            counter = Counter.builder("redis.message.errors")
+                    .tag("prefix", prefixTags[prefix])
+                    .register(meterRegistry.getObject());
+            messageErrors[prefix] = counter;
+        }
+        return counter;
+    }
+
+    //prefix must be followed by ':', '.' (customers.{0} shard channel) or end of key,
+    //so "orders" doesn't match "ordersArchive", the buffer is read in place
+    private int prefixIndex(ByteBuffer key) {
+        if (key == null) {
+            return prefixTags.length - 1;
+        }
+        int start = key.position();
+        int length = key.remaining();
+        for (int i = 0; i < prefixes.length; i++) {
+            byte[] prefix = prefixes[i];
+            if (length < prefix.length) {
+                continue;
+            }
+            boolean match = length == prefix.length
+                    || key.get(start + prefix.length) == ':' || key.get(start + prefix.length) == '.';
+            for (int j = 0; match && j < prefix.length; j++) {
+                match = key.get(start + j) == prefix[j];
+            }
+            if (match) {
+                return i;
+            }
+        }
+        return prefixTags.length - 2;
+    }
+
+    //timer and error counter of one command, per prefix, made the first time they're used
+    private class CommandMeters {
+
+        private final String command;
+
+        private final Timer[] timers = new Timer[prefixTags.length];
+
+        private final Counter[] errors = new Counter[prefixTags.length];
+
+        CommandMeters(String command) {
+            this.command = command;
+        }
+
+        Timer timer(int prefix) {
+            Timer timer = timers[prefix];
+            if (timer == null) {
+                timer = Timer.builder("redis.command")
+                        .tag("command", command)
+                        .tag("prefix", prefixTags[prefix])
+                        .publishPercentileHistogram()
+                        .register(meterRegistry.getObject());
+                timers[prefix] = timer;
+            }
+            return timer;
+        }
+
+        Counter error(int prefix) {
+            Counter counter = errors[prefix];
+            if (counter == null) {
+                counter = Counter.builder("redis.command.errors")
+                        .tag("command", command)
+                        .tag("prefix", prefixTags[prefix])
+                        .register(meterRegistry.getObject());
+                errors[prefix] = counter;
+            }
+            return counter;
+        }
+    }
+}
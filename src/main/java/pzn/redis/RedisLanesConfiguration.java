@@ -0,0 +1,121 @@
+package pzn.redis;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.data.redis.ClientResourcesBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+
+//spring boot make one connection factory, so a XREADGROUP that block 5 seconds, the pubsub subscription
+//and a cache read all use the same lettuce threads, here they are split in two lanes:
+//shared (primary): cache, repository, every template. Normal command go to one multiplexed connection,
+//  MULTI/EXEC and blocking command get a dedicated one from the pool
+//blocking: only the stream container and the pubsub containers, every poll loop and subscription has its own
+//  pooled connection and its own io threads, so a slow XREADGROUP reply never wait behind (or delay) a cache read
+//only standalone redis (spring.data.redis.host/port), same as this app use
+//pool statistics are in redis.pool.* (RedisPoolMetrics)
+@Configuration
+public class RedisLanesConfiguration {
+
+    public static final String SHARED = "shared";
+    public static final String BLOCKING = "blocking";
+
+    //spring boot customizers only applied to the shared lane, same as before
+    //the command latency recorder is set after them, so redis.command replace spring boot lettuce.command.* meters
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public ClientResources sharedClientResources(RedisLanesProperties properties,
+                                                 ObjectProvider<ClientResourcesBuilderCustomizer> customizers,
+                                                 RedisCommandMetrics redisCommandMetrics) {
+        ClientResources.Builder builder = clientResources(properties.getShared());
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+        return builder.commandLatencyRecorder(redisCommandMetrics).build();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ClientResources blockingClientResources(RedisLanesProperties properties, RedisCommandMetrics redisCommandMetrics) {
+        return clientResources(properties.getBlocking()).commandLatencyRecorder(redisCommandMetrics).build();
+    }
+
+    @Bean
+    @Primary
+    public LettuceConnectionFactory redisConnectionFactory(RedisProperties redisProperties, RedisLanesProperties properties,
+                                                           ClientResources sharedClientResources) {
+        LettuceConnectionFactory factory = connectionFactory(redisProperties, properties.getShared(), SHARED,
+                sharedClientResources);
+        factory.setShareNativeConnection(true);
+        return factory;
+    }
+
+    @Bean
+    public LettuceConnectionFactory blockingRedisConnectionFactory(RedisProperties redisProperties,
+                                                                   RedisLanesProperties properties,
+                                                                   @Qualifier("blockingClientResources") ClientResources blockingClientResources) {
+        LettuceConnectionFactory factory = connectionFactory(redisProperties, properties.getBlocking(), BLOCKING,
+                blockingClientResources);
+        //every connection taken from the factory is a pooled dedicated one
+        factory.setShareNativeConnection(false);
+        return factory;
+    }
+
+    @Bean
+    public RedisPoolMetrics redisPoolMetrics() {
+        return new RedisPoolMetrics(SHARED, BLOCKING);
+    }
+
+    private static ClientResources.Builder clientResources(RedisLanesProperties.Lane lane) {
+        return DefaultClientResources.builder()
+                .ioThreadPoolSize(lane.getIoThreads())
+                .computationThreadPoolSize(lane.getComputationThreads());
+    }
+
+    private static LettuceConnectionFactory connectionFactory(RedisProperties redisProperties, RedisLanesProperties.Lane lane,
+                                                              String name, ClientResources clientResources) {
+        RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration(redisProperties.getHost(),
+                redisProperties.getPort());
+        standalone.setDatabase(redisProperties.getDatabase());
+        standalone.setUsername(redisProperties.getUsername());
+        standalone.setPassword(RedisPassword.of(redisProperties.getPassword()));
+
+        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder builder = LettucePoolingClientConfiguration.builder()
+                .poolConfig(poolConfig(lane.getPool(), name));
+        builder.clientResources(clientResources);
+        if (redisProperties.getTimeout() != null) {
+            builder.commandTimeout(redisProperties.getTimeout());
+        }
+        if (redisProperties.getConnectTimeout() != null) {
+            builder.clientOptions(ClientOptions.builder()
+                    .socketOptions(SocketOptions.builder().connectTimeout(redisProperties.getConnectTimeout()).build())
+                    .build());
+        }
+        return new LettuceConnectionFactory(standalone, builder.build());
+    }
+
+    private static GenericObjectPoolConfig<?> poolConfig(RedisProperties.Pool pool, String name) {
+        GenericObjectPoolConfig<?> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(pool.getMaxActive());
+        config.setMaxIdle(pool.getMaxIdle());
+        config.setMinIdle(pool.getMinIdle());
+        if (pool.getMaxWait() != null) {
+            config.setMaxWait(pool.getMaxWait());
+        }
+        if (pool.getTimeBetweenEvictionRuns() != null) {
+            config.setTimeBetweenEvictionRuns(pool.getTimeBetweenEvictionRuns());
+        }
+        //commons-pool register every pool as JMX bean, the name is how RedisPoolMetrics find the pools of a lane
+        config.setJmxEnabled(true);
+        config.setJmxNamePrefix(RedisPoolMetrics.JMX_PREFIX + name);
+        return config;
+    }
+}
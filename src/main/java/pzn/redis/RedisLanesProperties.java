@@ -0,0 +1,45 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//two connection factory (RedisLanesConfiguration), each one with its own lettuce threads and connection pool
+//host, port, password, timeout are still from spring.data.redis
+@Data
+@ConfigurationProperties(prefix = "app.redis.lanes")
+public class RedisLanesProperties {
+
+    //cache, repository, template: one multiplexed connection, the pool is only for MULTI and blocking command
+    private Lane shared = new Lane(Runtime.getRuntime().availableProcessors(), 8);
+
+    //stream container (XREADGROUP with block), pubsub container: every one get its own connection from the pool
+    private Lane blocking = new Lane(2, 16);
+
+    @Data
+    public static class Lane {
+
+        //lettuce event loop threads (netty), default in lettuce is number of cores
+        private int ioThreads;
+
+        //threads for timeout, reconnect and reactive signals
+        private int computationThreads;
+
+        //same setting as spring.data.redis.lettuce.pool
+        private RedisProperties.Pool pool = new RedisProperties.Pool();
+
+        public Lane() {
+            this(Runtime.getRuntime().availableProcessors(), 8);
+        }
+
+        Lane(int threads, int maxActive) {
+            this.ioThreads = threads;
+            this.computationThreads = threads;
+            this.pool.setMaxActive(maxActive);
+            this.pool.setMaxIdle(maxActive);
+            this.pool.setMaxWait(Duration.ofSeconds(2));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//setting for redis command metrics
+@Data
+@ConfigurationProperties(prefix = "app.metrics.redis")
+public class RedisMetricsProperties {
+
+    private boolean enabled = true;
+
+    //command (by its first key) and pubsub channel are tagged with the first prefix that match, so put the longer one first
+    //key that doesn't match any prefix is tagged "other", command without key "none"
+    private List<String> keyPrefixes = new ArrayList<>(List.of("cache:products", "products", "orders", "customers"));
+}
@@ -0,0 +1,79 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+//connection pool of every lane (RedisLanesConfiguration), spring data redis doesn't give access to the pool,
+//but commons-pool register it as JMX bean, so the numbers are read from there
+//lettuce make one pool per connection type (normal, pubsub), they are added together per lane
+//waiters > 0 or borrow wait going up mean the pool is too small (app.redis.lanes.<lane>.pool.max-active)
+@Slf4j
+public class RedisPoolMetrics implements MeterBinder {
+
+    static final String JMX_PREFIX = "redis-";
+
+    private static final String JMX_BASE = "org.apache.commons.pool2:type=GenericObjectPool,name=";
+
+    private final List<String> lanes;
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    public RedisPoolMetrics(String... lanes) {
+        this.lanes = List.of(lanes);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String lane : lanes) {
+            ObjectName pattern = pattern(lane);
+            Gauge.builder("redis.pool.active", () -> read(pattern, "NumActive", Long::sum)).tag("lane", lane)
+                    .description("connections borrowed from the pool").register(registry);
+            Gauge.builder("redis.pool.idle", () -> read(pattern, "NumIdle", Long::sum)).tag("lane", lane)
+                    .register(registry);
+            Gauge.builder("redis.pool.waiters", () -> read(pattern, "NumWaiters", Long::sum)).tag("lane", lane)
+                    .description("threads waiting for a connection").register(registry);
+            Gauge.builder("redis.pool.borrow.wait.max", () -> read(pattern, "MaxBorrowWaitTimeMillis", Math::max))
+                    .tag("lane", lane).baseUnit("milliseconds").register(registry);
+            Gauge.builder("redis.pool.borrow.wait.mean", () -> read(pattern, "MeanBorrowWaitTimeMillis", Math::max))
+                    .tag("lane", lane).baseUnit("milliseconds").register(registry);
+            FunctionCounter.builder("redis.pool.borrowed", pattern, name -> read(name, "BorrowedCount", Long::sum))
+                    .tag("lane", lane).register(registry);
+            FunctionCounter.builder("redis.pool.created", pattern, name -> read(name, "CreatedCount", Long::sum))
+                    .tag("lane", lane).register(registry);
+        }
+    }
+
+    private static ObjectName pattern(String lane) {
+        try {
+            return new ObjectName(JMX_BASE + JMX_PREFIX + lane + "*");
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid pool name " + lane, e);
+        }
+    }
+
+    //pool is created on the first connection, before that every number is 0
+    private long read(ObjectName pattern, String attribute, BinaryOperator<Long> combine) {
+        Set<ObjectName> pools = server.queryNames(pattern, null);
+        long result = 0;
+        for (ObjectName pool : pools) {
+            try {
+                result = combine.apply(result, ((Number) server.getAttribute(pool, attribute)).longValue());
+            } catch (Exception e) {
+                //pool closed between query and read
+                log.debug("Failed to read {} of {}: {}", attribute, pool, e.getMessage());
+            }
+        }
+        return result;
+    }
+}
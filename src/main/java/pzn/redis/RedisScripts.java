@@ -0,0 +1,104 @@
+package pzn.redis;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DigestUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileCopyUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//every lua script in resources/scripts, the name is the file name without .lua
+//scripts are loaded (SCRIPT LOAD) once at startup, after that only the sha is sent (EVALSHA),
+//when redis doesn't know the sha anymore (restart, failover, SCRIPT FLUSH) it's loaded again and retried once
+//so one atomic operation with condition is one round trip, MULTI/EXEC need WATCH + read + MULTI + EXEC
+@Slf4j
+@Component
+public class RedisScripts {
+
+    private static final String LOCATION = "classpath:scripts/*.lua";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+
+    public RedisScripts(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+                String name = resource.getFilename().replace(".lua", "");
+                String body = FileCopyUtils.copyToString(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8));
+                scripts.put(name, new Script(name, body.getBytes(StandardCharsets.UTF_8), DigestUtils.sha1DigestAsHex(body)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + LOCATION, e);
+        }
+
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                scripts.values().forEach(script -> connection.scriptingCommands().scriptLoad(script.body()));
+                return null;
+            });
+            log.info("Loaded {} redis scripts {}", scripts.size(), scripts.keySet());
+        } catch (RuntimeException e) {
+            //redis is down at startup, every script will be loaded on its first NOSCRIPT
+            log.warn("Failed to load redis scripts: {}", e.getMessage());
+        }
+    }
+
+    public <T> T execute(String name, ReturnType returnType, List<String> keys, List<String> args) {
+        Script script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("Unknown redis script " + name);
+        }
+        byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.size(); i++) {
+            keysAndArgs[keys.size() + i] = args.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return redisTemplate.execute((RedisCallback<T>) connection -> evalSha(connection, script, returnType, keys.size(), keysAndArgs));
+    }
+
+    private <T> T evalSha(RedisConnection connection, Script script, ReturnType returnType, int numKeys, byte[][] keysAndArgs) {
+        try {
+            return connection.scriptingCommands().evalSha(script.sha(), returnType, numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            log.info("Script {} is not in redis, load it again", script.name());
+            connection.scriptingCommands().scriptLoad(script.body());
+            return connection.scriptingCommands().evalSha(script.sha(), returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Script(String name, byte[] body, String sha) {
+    }
+}
@@ -0,0 +1,45 @@
+package pzn.redis;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//shown as redisStreams next to the redis health (connection), from the last StreamMonitor poll
+//DEGRADED when a group lag is above app.streams.monitor.lag-threshold, redis still work but orders are late
+//DEGRADED is ordered between OUT_OF_SERVICE and UP and still answer 200, see management.endpoint.health.status.order
+@Component
+public class RedisStreamsHealthIndicator implements HealthIndicator {
+
+    public static final Status DEGRADED = new Status("DEGRADED", "Consumer group is behind the stream");
+
+    private final StreamMonitor streamMonitor;
+
+    private final StreamMonitorProperties properties;
+
+    public RedisStreamsHealthIndicator(StreamMonitor streamMonitor, StreamMonitorProperties properties) {
+        this.streamMonitor = streamMonitor;
+        this.properties = properties;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> lags = new LinkedHashMap<>();
+        boolean degraded = false;
+        for (StreamMonitor.StreamReport stream : streamMonitor.report()) {
+            for (StreamMonitor.GroupReport group : stream.groups()) {
+                lags.put(stream.stream() + "/" + group.group(), group.lag() == null ? "unknown" : group.lag());
+                if (group.lag() != null && group.lag() > properties.getLagThreshold()) {
+                    degraded = true;
+                }
+            }
+        }
+        return Health.status(degraded ? DEGRADED : Status.UP)
+                .withDetail("lagThreshold", properties.getLagThreshold())
+                .withDetail("lag", lags)
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+package pzn.redis;
+
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+//one dedicated RESP3 connection with CLIENT TRACKING on, redis push "invalidate" on it when a tracked key change,
+//expire or evicted, the key is given to every listener with a matching prefix (null key = flush, clear everything)
+//bcast: every key with app.products.tracking.prefixes is tracked, whoever read it
+//default: only keys read with connection() are tracked
+//when tracking can't be turned on (redis < 6, RESP2) or the connection is lost, invalidation can be missed,
+//so every listener get a flush and isActive() is false until the retry turn it on again,
+//the local caches then only trust their (short) fallback ttl
+@Slf4j
+@Component
+public class RedisTracking implements DisposableBean {
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    private final ProductTrackingProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile StatefulRedisConnection<byte[], byte[]> connection;
+
+    private volatile boolean active;
+
+    public RedisTracking(LettuceConnectionFactory connectionFactory, ProductTrackingProperties properties,
+                         MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("redis.tracking.active", this, tracking -> tracking.active ? 1 : 0).register(meterRegistry);
+    }
+
+    public void addListener(String prefix, Consumer<String> onInvalidate) {
+        Counter invalidations = Counter.builder("redis.tracking.invalidations").tag("prefix", prefix)
+                .register(meterRegistry);
+        listeners.add(new Listener(prefix, onInvalidate, invalidations));
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    //null when tracking is not active, in default mode a read must use this so redis track the key
+    public StatefulRedisConnection<byte[], byte[]> connection() {
+        return active ? connection : null;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.isEnabled()) {
+            connect();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.products.tracking.retry-interval:30s}")
+    public void retry() {
+        if (properties.isEnabled() && !active) {
+            connect();
+        }
+    }
+
+    private synchronized void connect() {
+        close();
+        StatefulRedisConnection<byte[], byte[]> candidate = null;
+        try {
+            RedisClient client = (RedisClient) connectionFactory.getRequiredNativeClient();
+            candidate = client.connect(ByteArrayCodec.INSTANCE);
+            //RESP2 connection doesn't get the push message, that need REDIRECT to a pubsub connection
+            if (!candidate.sync().clientInfo().contains("resp=3")) {
+                throw new IllegalStateException("connection is not RESP3");
+            }
+            candidate.addListener(this::onPush);
+            candidate.addListener(new Disconnect(candidate));
+
+            TrackingArgs args = TrackingArgs.Builder.enabled();
+            if (properties.isBcast()) {
+                args.bcast().prefixes(StandardCharsets.UTF_8, properties.getPrefixes().toArray(String[]::new));
+            }
+            candidate.sync().clientTracking(args);
+
+            connection = candidate;
+            //anything cached before this point is not tracked
+            flush();
+            active = true;
+            log.info("Client tracking on ({}, prefixes {})", properties.getMode(), properties.getPrefixes());
+        } catch (RuntimeException e) {
+            log.warn("Client tracking not available, local caches use ttl only: {}", e.getMessage());
+            if (candidate != null) {
+                candidate.closeAsync();
+            }
+        }
+    }
+
+    private void onPush(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(ByteBuffer::duplicate);
+        if (content.size() < 2 || !(content.get(1) instanceof List<?> keys)) {
+            //null instead of keys: FLUSHALL / FLUSHDB
+            flush();
+            return;
+        }
+        for (Object key : keys) {
+            invalidate(StandardCharsets.UTF_8.decode((ByteBuffer) key).toString());
+        }
+    }
+
+    private void invalidate(String key) {
+        for (Listener listener : listeners) {
+            if (key.startsWith(listener.prefix())) {
+                listener.invalidations().increment();
+                listener.onInvalidate().accept(key);
+            }
+        }
+    }
+
+    private void flush() {
+        listeners.forEach(listener -> listener.onInvalidate().accept(null));
+    }
+
+    private void close() {
+        active = false;
+        if (connection != null) {
+            connection.closeAsync();
+            connection = null;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        close();
+    }
+
+    private record Listener(String prefix, Consumer<String> onInvalidate, Counter invalidations) {
+    }
+
+    //lettuce reconnect by itself but redis forget the tracking of the old connection,
+    //so the connection is dropped here and a new one is made by the next retry
+    private class Disconnect implements RedisConnectionStateListener {
+
+        private final StatefulRedisConnection<byte[], byte[]> owner;
+
+        Disconnect(StatefulRedisConnection<byte[], byte[]> owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+            if (owner != connection || !active) {
+                return;
+            }
+            log.warn("Client tracking connection lost, local caches use ttl only until it's back");
+            active = false;
+            flush();
+            owner.closeAsync();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package pzn.redis;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+
+import java.util.List;
+
+@Configuration
+public class RepositoryConfiguration {
+
+    //@EnableRedisRepositories will look for bean with this name, and use it in the mapping converter
+    @Bean
+    public RedisCustomConversions redisCustomConversions() {
+        return new RedisCustomConversions(List.of(
+                new ProductConverters.ProductToHash(),
+                new ProductConverters.HashToProduct()
+        ));
+    }
+}
@@ -0,0 +1,36 @@
+package pzn.redis;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+//sellers near a point, ex: GET /sellers/radius?longitude=106.82&latitude=-6.17&meters=5000&page=0&size=20
+@RestController
+@RequestMapping("/sellers")
+public class SellerController {
+
+    private final SellerLocationService sellerLocationService;
+
+    public SellerController(SellerLocationService sellerLocationService) {
+        this.sellerLocationService = sellerLocationService;
+    }
+
+    @GetMapping("/radius")
+    public Slice<SellerLocationService.SellerDistance> radius(@RequestParam double longitude, @RequestParam double latitude,
+                                                              @RequestParam double meters,
+                                                              @RequestParam(defaultValue = "0") int page,
+                                                              @RequestParam(defaultValue = "20") int size) {
+        return sellerLocationService.searchRadius(longitude, latitude, meters, PageRequest.of(page, size));
+    }
+
+    @GetMapping("/box")
+    public Slice<SellerLocationService.SellerDistance> box(@RequestParam double longitude, @RequestParam double latitude,
+                                                           @RequestParam double width, @RequestParam double height,
+                                                           @RequestParam(defaultValue = "0") int page,
+                                                           @RequestParam(defaultValue = "20") int size) {
+        return sellerLocationService.searchBox(longitude, latitude, width, height, PageRequest.of(page, size));
+    }
+}
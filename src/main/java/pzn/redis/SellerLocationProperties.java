@@ -0,0 +1,40 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//seller points in one geo set (SellerLocationService)
+@Data
+@ConfigurationProperties(prefix = "app.sellers.locations")
+public class SellerLocationProperties {
+
+    private String key = "sellers:locations";
+
+    //members in one GEOADD
+    private int batchSize = 1_000;
+
+    //GEOADD sent in one pipeline, so one round trip load batch-size * pipeline-depth sellers
+    private int pipelineDepth = 10;
+
+    //GEOSEARCH can't skip, page n need (n + 1) * size results, so the deepest page is limited
+    private int maxResults = 1_000;
+
+    private Cache cache = new Cache();
+
+    @Data
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        //geohash length of the cell a query center is snapped to, 6 is about 1.2km x 0.6km
+        private int cellPrecision = 6;
+
+        //a seller that moved or was added is seen by a cached query after this
+        private Duration timeToLive = Duration.ofSeconds(30);
+
+        //cached cells, each one hold up to 2 * max-results sellers
+        private long maximumSize = 1_000;
+    }
+}
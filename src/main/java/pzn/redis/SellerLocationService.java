@@ -0,0 +1,265 @@
+package pzn.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.domain.geo.GeoShape;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+//seller points in one geo set (sorted set with geohash score), RedisTest.geo() but for millions of sellers
+//load: GEOADD with batch-size members, pipeline-depth of them per round trip
+//search: GEOSEARCH by radius or box, sorted by distance, page n read (n + 1) * size + 1 and skip the first ones
+//cache: the center is snapped to the center of its geohash cell, redis is searched once from there with the shape
+//  made bigger by the cell size, so it contains the result of any center in the cell, every query in that cell then
+//  filter and sort these candidates locally by its own center. When the candidates were cut by max-results,
+//  only the results closer than (last candidate - half cell diagonal) are sure, a page after that go to redis
+@Component
+public class SellerLocationService {
+
+    //same earth radius as redis geo commands
+    private static final double EARTH_RADIUS_METERS = 6372797.560856;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final SellerLocationProperties properties;
+
+    private final Cache<String, Candidates> cache;
+
+    private final Counter hit;
+    private final Counter miss;
+    private final Counter bypass;
+
+    public SellerLocationService(StringRedisTemplate redisTemplate, SellerLocationProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCache().getMaximumSize())
+                .expireAfterWrite(properties.getCache().getTimeToLive())
+                .build();
+        this.hit = Counter.builder("sellers.search").tag("result", "hit").register(meterRegistry);
+        this.miss = Counter.builder("sellers.search").tag("result", "miss").register(meterRegistry);
+        this.bypass = Counter.builder("sellers.search").tag("result", "bypass").register(meterRegistry);
+    }
+
+    //sellers are read from the iterator while loading, so a big load doesn't need to be in memory, return the number loaded
+    public long load(Iterable<SellerLocation> sellers) {
+        byte[] key = bytes(properties.getKey());
+        Iterator<SellerLocation> iterator = sellers.iterator();
+        long loaded = 0;
+        while (iterator.hasNext()) {
+            List<Map<byte[], Point>> batches = new ArrayList<>(properties.getPipelineDepth());
+            for (int i = 0; i < properties.getPipelineDepth() && iterator.hasNext(); i++) {
+                Map<byte[], Point> batch = new HashMap<>();
+                while (batch.size() < properties.getBatchSize() && iterator.hasNext()) {
+                    SellerLocation seller = iterator.next();
+                    batch.put(bytes(seller.id()), new Point(seller.longitude(), seller.latitude()));
+                }
+                batches.add(batch);
+                loaded += batch.size();
+            }
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                batches.forEach(batch -> connection.geoCommands().geoAdd(key, batch));
+                return null;
+            });
+        }
+        //only this instance, the others see the change after time-to-live
+        cache.invalidateAll();
+        return loaded;
+    }
+
+    public Slice<SellerDistance> searchRadius(double longitude, double latitude, double radiusMeters, Pageable pageable) {
+        return search(new Point(longitude, latitude), new Area(radiusMeters, 0, 0), pageable);
+    }
+
+    public Slice<SellerDistance> searchBox(double longitude, double latitude, double widthMeters, double heightMeters,
+                                           Pageable pageable) {
+        return search(new Point(longitude, latitude), new Area(0, widthMeters, heightMeters), pageable);
+    }
+
+    private Slice<SellerDistance> search(Point center, Area area, Pageable pageable) {
+        //one more than the page, to know if there's a next page
+        int needed = (int) pageable.getOffset() + pageable.getPageSize() + 1;
+        if (needed - 1 > properties.getMaxResults()) {
+            throw new IllegalArgumentException("Page is deeper than " + properties.getMaxResults() + " results");
+        }
+        if (properties.getCache().isEnabled()) {
+            Cell cell = Cell.of(center, properties.getCache().getCellPrecision());
+            String cacheKey = area + ":" + cell.hash();
+            //concurrent miss on the same cell wait for one GEOSEARCH, the ones that waited count as hit
+            Candidates[] loaded = new Candidates[1];
+            Candidates candidates = cache.get(cacheKey, key -> loaded[0] = candidates(cell, area));
+            (loaded[0] == null ? hit : miss).increment();
+            List<SellerDistance> matches = candidates.matches(center, area);
+            if (matches.size() >= needed ? matches.get(needed - 1).distanceMeters() <= candidates.sureWithin()
+                    : !candidates.truncated()) {
+                return slice(matches, pageable);
+            }
+            bypass.increment();
+        }
+        return slice(query(center, area, needed, 0, 0), pageable);
+    }
+
+    private Candidates candidates(Cell cell, Area area) {
+        int limit = properties.getMaxResults() * 2;
+        List<SellerDistance> found = query(cell.center(), area, limit, cell.widthMeters(), cell.heightMeters());
+        boolean truncated = found.size() >= limit;
+        double last = found.isEmpty() ? 0 : found.get(found.size() - 1).distanceMeters();
+        return new Candidates(found, truncated, truncated ? last - cell.halfDiagonalMeters() : Double.MAX_VALUE);
+    }
+
+    //GEOSEARCH ... ASC COUNT limit WITHCOORD WITHDIST, the shape made bigger by the given margin
+    private List<SellerDistance> query(Point center, Area area, int limit, double marginWidth, double marginHeight) {
+        RedisGeoCommands.DistanceUnit meters = RedisGeoCommands.DistanceUnit.METERS;
+        GeoShape shape = area.isBox()
+                ? GeoShape.byBox(area.width() + marginWidth, area.height() + marginHeight, meters)
+                : GeoShape.byRadius(new Distance(area.radius() + Math.hypot(marginWidth, marginHeight) / 2, meters));
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = redisTemplate.opsForGeo().search(properties.getKey(),
+                GeoReference.fromCoordinate(center), shape,
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs()
+                        .includeCoordinates().includeDistance().sortAscending().limit(limit));
+        List<SellerDistance> found = new ArrayList<>();
+        if (results != null) {
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+                Point point = result.getContent().getPoint();
+                found.add(new SellerDistance(result.getContent().getName(), point.getX(), point.getY(),
+                        result.getDistance().in(RedisGeoCommands.DistanceUnit.METERS).getValue()));
+            }
+        }
+        return found;
+    }
+
+    private static Slice<SellerDistance> slice(List<SellerDistance> sorted, Pageable pageable) {
+        int from = (int) Math.min(pageable.getOffset(), sorted.size());
+        int to = Math.min(from + pageable.getPageSize(), sorted.size());
+        return new SliceImpl<>(List.copyOf(sorted.subList(from, to)), pageable, sorted.size() > to);
+    }
+
+    static double distance(Point a, Point b) {
+        double lat1 = Math.toRadians(a.getY());
+        double lat2 = Math.toRadians(b.getY());
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(b.getX() - a.getX());
+        double h = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(h));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public record SellerLocation(String id, double longitude, double latitude) {
+    }
+
+    public record SellerDistance(String id, double longitude, double latitude, double distanceMeters) {
+    }
+
+    //radius > 0: circle, otherwise box of width x height, centered
+    private record Area(double radius, double width, double height) {
+
+        boolean isBox() {
+            return radius <= 0;
+        }
+
+        //same check as redis, box side distance is measured along the latitude and along the longitude of the point
+        boolean contains(Point center, Point point, double distance) {
+            if (!isBox()) {
+                return distance <= radius;
+            }
+            double latDistance = EARTH_RADIUS_METERS * Math.abs(Math.toRadians(point.getY() - center.getY()));
+            double lonDistance = distance(new Point(center.getX(), point.getY()), point);
+            return latDistance <= height / 2 && lonDistance <= width / 2;
+        }
+
+        @Override
+        public String toString() {
+            return isBox() ? "box:" + width + "x" + height : "radius:" + radius;
+        }
+    }
+
+    //sellers around a cell center, sorted by distance from it, when truncated the ones further than
+    //sureWithin from a center in the cell may be missing
+    private record Candidates(List<SellerDistance> sellers, boolean truncated, double sureWithin) {
+
+        List<SellerDistance> matches(Point center, Area area) {
+            List<SellerDistance> matches = new ArrayList<>();
+            for (SellerDistance seller : sellers) {
+                Point point = new Point(seller.longitude(), seller.latitude());
+                double distance = distance(center, point);
+                if (area.contains(center, point, distance)) {
+                    matches.add(new SellerDistance(seller.id(), seller.longitude(), seller.latitude(), distance));
+                }
+            }
+            matches.sort(Comparator.comparingDouble(SellerDistance::distanceMeters));
+            return matches;
+        }
+    }
+
+    //geohash cell of a point, the width is measured at the equator so it's never smaller than the real one
+    private record Cell(String hash, Point center, double widthMeters, double heightMeters, double halfDiagonalMeters) {
+
+        static Cell of(Point point, int precision) {
+            double minLon = -180, maxLon = 180, minLat = -90, maxLat = 90;
+            StringBuilder hash = new StringBuilder(precision);
+            boolean lon = true;
+            int bits = 0;
+            int value = 0;
+            while (hash.length() < precision) {
+                //even bits split the longitude, odd bits the latitude
+                if (lon) {
+                    double middle = (minLon + maxLon) / 2;
+                    boolean upper = point.getX() >= middle;
+                    value = value << 1 | (upper ? 1 : 0);
+                    if (upper) {
+                        minLon = middle;
+                    } else {
+                        maxLon = middle;
+                    }
+                } else {
+                    double middle = (minLat + maxLat) / 2;
+                    boolean upper = point.getY() >= middle;
+                    value = value << 1 | (upper ? 1 : 0);
+                    if (upper) {
+                        minLat = middle;
+                    } else {
+                        maxLat = middle;
+                    }
+                }
+                lon = !lon;
+                if (++bits == 5) {
+                    hash.append(BASE32.charAt(value));
+                    bits = 0;
+                    value = 0;
+                }
+            }
+            Point center = new Point((minLon + maxLon) / 2, (minLat + maxLat) / 2);
+            double width = EARTH_RADIUS_METERS * Math.toRadians(maxLon - minLon);
+            double height = EARTH_RADIUS_METERS * Math.toRadians(maxLat - minLat);
+            //the corner nearer the equator is the furthest one
+            double halfDiagonal = Math.max(distance(center, new Point(minLon, minLat)), distance(center, new Point(minLon, maxLat)));
+            return new Cell(hash.toString(), center, width, height, halfDiagonal);
+        }
+    }
+}
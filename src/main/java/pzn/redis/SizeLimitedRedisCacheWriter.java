@@ -0,0 +1,143 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+//cache writer that doesn't write value bigger than the max entry size of the cache
+//one big value in redis make every read of it slow and block redis while it's sent, so it's better loaded every time
+//the writer is shared by every cache in the cache manager, so the limit is per cache name
+@Slf4j
+public class SizeLimitedRedisCacheWriter implements RedisCacheWriter {
+
+    private final RedisCacheWriter delegate;
+
+    private final Map<String, Long> maxEntrySizes;
+
+    private final MeterRegistry meterRegistry;
+
+    //only a cache with max entry size can reject, so the counter is registered once for each of them
+    private final Map<String, Counter> rejected = new HashMap<>();
+
+    public SizeLimitedRedisCacheWriter(RedisCacheWriter delegate, Map<String, Long> maxEntrySizes,
+                                       MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxEntrySizes = maxEntrySizes;
+        this.meterRegistry = meterRegistry;
+        maxEntrySizes.keySet().forEach(name -> rejected.put(name, Counter.builder("cache.entries.rejected")
+                .tag("cache", name)
+                .tag("reason", "size")
+                .register(meterRegistry)));
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key, Duration ttl) {
+        return delegate.get(name, key, ttl);
+    }
+
+    //@Cacheable(sync = true), the delegate write the loaded value itself, not through put, so for a cache with
+    //max entry size it's done here: read (GETEX when time to idle), load on miss, write only when it's not too big
+    //the delegate is the non locking writer, so there's no cache lock skipped
+    @Override
+    public byte[] get(String name, byte[] key, Supplier<byte[]> valueLoader, Duration ttl, boolean timeToIdleEnabled) {
+        if (!maxEntrySizes.containsKey(name)) {
+            return delegate.get(name, key, valueLoader, ttl, timeToIdleEnabled);
+        }
+        byte[] cached = timeToIdleEnabled ? delegate.get(name, key, ttl) : delegate.get(name, key);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] value = valueLoader.get();
+        put(name, key, value, ttl);
+        return value;
+    }
+
+    @Override
+    public boolean supportsAsyncRetrieve() {
+        return delegate.supportsAsyncRetrieve();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> retrieve(String name, byte[] key) {
+        return delegate.retrieve(name, key);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+        return delegate.retrieve(name, key, ttl);
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        if (allowed(name, value)) {
+            delegate.put(name, key, value, ttl);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+        if (allowed(name, value)) {
+            return delegate.store(name, key, value, ttl);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    //too big value is not written, null mean there's no value before, so the caller use its own value
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        if (allowed(name, value)) {
+            return delegate.putIfAbsent(name, key, value, ttl);
+        }
+        return null;
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new SizeLimitedRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector),
+                maxEntrySizes, meterRegistry);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    public boolean allowed(String name, byte[] value) {
+        Long max = maxEntrySizes.get(name);
+        if (max == null || value.length <= max) {
+            return true;
+        }
+        log.debug("Skip cache {} entry of {} bytes, max is {}", name, value.length, max);
+        rejected.get(name).increment();
+        return false;
+    }
+}
@@ -0,0 +1,219 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+
+//how far every consumer group of the registered streams is behind, from XINFO STREAM/GROUPS/CONSUMERS
+//lag is entries added to the stream but not read by the group yet (redis 7 compute it from entries-read),
+//pending is read but not acknowledged, idle is the time since the consumer last read
+//processed rate only known for consumer of this instance (recordProcessed), other instance show null
+//metrics redis.stream.*, GET /actuator/streams for the last result, RedisStreamsHealthIndicator use it too
+@Slf4j
+@Component
+@Endpoint(id = "streams")
+public class StreamMonitor {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final StreamMonitorProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> streams = new CopyOnWriteArraySet<>();
+
+    //key is stream/group
+    private final Map<String, GroupMetrics> groups = new ConcurrentHashMap<>();
+
+    //key is stream/group/consumer, reset every poll
+    private final Map<String, LongAdder> processed = new ConcurrentHashMap<>();
+
+    private final MultiGauge consumerIdle;
+    private final MultiGauge consumerPending;
+    private final MultiGauge consumerRate;
+
+    private volatile List<StreamReport> reports = List.of();
+
+    private long lastPollNanos = System.nanoTime();
+
+    public StreamMonitor(StringRedisTemplate redisTemplate, StreamMonitorProperties properties,
+                         OrderConsumerProperties orderProperties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        streams.add(orderProperties.getStream());
+        streams.addAll(properties.getStreams());
+
+        //consumer come and go (name is from instance id), so the rows are replaced every poll
+        this.consumerIdle = MultiGauge.builder("redis.stream.consumer.idle").baseUnit("milliseconds").register(meterRegistry);
+        this.consumerPending = MultiGauge.builder("redis.stream.consumer.pending").register(meterRegistry);
+        this.consumerRate = MultiGauge.builder("redis.stream.consumer.processed.rate").baseUnit("per.second").register(meterRegistry);
+    }
+
+    public void register(String stream) {
+        streams.add(stream);
+    }
+
+    //called by OrderDispatcher after the listener success, before the XACK
+    public void recordProcessed(String stream, String group, String consumer) {
+        processed.computeIfAbsent(stream + "/" + group + "/" + consumer, key -> new LongAdder()).increment();
+    }
+
+    //read or process failure, the caller log it
+    public void recordError(String stream, String group) {
+        meterRegistry.counter("redis.stream.errors", "stream", stream, "group", group).increment();
+    }
+
+    //XGROUP CREATE of a group that already exist fail with BUSYGROUP, that's the only error that can be ignored
+    static boolean isBusyGroup(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("BUSYGROUP")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @ReadOperation
+    public List<StreamReport> report() {
+        return reports;
+    }
+
+    @Scheduled(fixedDelayString = "${app.streams.monitor.interval:10s}")
+    public synchronized void poll() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        double seconds = Math.max(0.001, (now - lastPollNanos) / 1_000_000_000.0);
+        lastPollNanos = now;
+
+        Map<String, Long> processedNow = new HashMap<>();
+        processed.forEach((key, count) -> processedNow.put(key, count.sumThenReset()));
+
+        List<StreamReport> result = new ArrayList<>();
+        List<MultiGauge.Row<?>> idleRows = new ArrayList<>();
+        List<MultiGauge.Row<?>> pendingRows = new ArrayList<>();
+        List<MultiGauge.Row<?>> rateRows = new ArrayList<>();
+        for (String stream : streams) {
+            try {
+                if (!redisTemplate.hasKey(stream)) {
+                    continue;
+                }
+                result.add(poll(stream, seconds, processedNow, idleRows, pendingRows, rateRows));
+            } catch (RuntimeException e) {
+                log.warn("Failed to read stream info of {}: {}", stream, e.getMessage());
+            }
+        }
+        consumerIdle.register(idleRows, true);
+        consumerPending.register(pendingRows, true);
+        consumerRate.register(rateRows, true);
+        reports = List.copyOf(result);
+    }
+
+    private StreamReport poll(String stream, double seconds, Map<String, Long> processedNow,
+                              List<MultiGauge.Row<?>> idleRows, List<MultiGauge.Row<?>> pendingRows,
+                              List<MultiGauge.Row<?>> rateRows) {
+        StreamOperations<String, Object, Object> ops = redisTemplate.opsForStream();
+        StreamInfo.XInfoStream info = ops.info(stream);
+        Long entriesAdded = longValue(info.getRaw().get("entries-added"));
+
+        List<GroupReport> groupReports = new ArrayList<>();
+        for (StreamInfo.XInfoGroup group : ops.groups(stream)) {
+            String name = group.groupName();
+            Long entriesRead = longValue(group.getRaw().get("entries-read"));
+            //redis give null lag when it can't be computed (entry deleted in the middle), then use the counters
+            Long lag = longValue(group.getRaw().get("lag"));
+            if (lag == null && entriesAdded != null && entriesRead != null) {
+                lag = entriesAdded - entriesRead;
+            }
+            long pending = group.pendingCount() == null ? 0 : group.pendingCount();
+
+            GroupMetrics metrics = groups.computeIfAbsent(stream + "/" + name, key -> new GroupMetrics(stream, name));
+            Double readRate = null;
+            if (entriesRead != null) {
+                if (metrics.entriesRead >= 0) {
+                    readRate = Math.max(0, entriesRead - metrics.entriesRead) / seconds;
+                }
+                metrics.entriesRead = entriesRead;
+            }
+            metrics.lag = lag == null ? Double.NaN : lag;
+            metrics.pending = pending;
+            metrics.readRate = readRate == null ? Double.NaN : readRate;
+
+            List<ConsumerReport> consumerReports = new ArrayList<>();
+            for (StreamInfo.XInfoConsumer consumer : ops.consumers(stream, name)) {
+                String consumerName = consumer.consumerName();
+                Tags tags = Tags.of("stream", stream, "group", name, "consumer", consumerName);
+                Long count = processedNow.get(stream + "/" + name + "/" + consumerName);
+                Double rate = count == null ? null : count / seconds;
+                idleRows.add(MultiGauge.Row.of(tags, consumer.idleTimeMs()));
+                pendingRows.add(MultiGauge.Row.of(tags, consumer.pendingCount()));
+                if (rate != null) {
+                    rateRows.add(MultiGauge.Row.of(tags, rate));
+                }
+                consumerReports.add(new ConsumerReport(consumerName, consumer.pendingCount(), consumer.idleTimeMs(), rate));
+            }
+            groupReports.add(new GroupReport(name, lag, entriesRead, group.lastDeliveredId(), pending, readRate,
+                    consumerReports));
+        }
+        return new StreamReport(stream, info.streamLength(), info.lastGeneratedId(), entriesAdded, groupReports);
+    }
+
+    private static Long longValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number number ? number.longValue() : Long.parseLong(String.valueOf(value));
+    }
+
+    private class GroupMetrics {
+
+        private volatile double lag = Double.NaN;
+
+        private volatile double pending;
+
+        private volatile double readRate = Double.NaN;
+
+        //-1 until the first poll
+        private long entriesRead = -1;
+
+        GroupMetrics(String stream, String group) {
+            Tags tags = Tags.of("stream", stream, "group", group);
+            Gauge.builder("redis.stream.lag", this, metrics -> metrics.lag).tags(tags).register(meterRegistry);
+            Gauge.builder("redis.stream.pending", this, metrics -> metrics.pending).tags(tags).register(meterRegistry);
+            Gauge.builder("redis.stream.read.rate", this, metrics -> metrics.readRate).tags(tags)
+                    .baseUnit("per.second").register(meterRegistry);
+        }
+    }
+
+    //null lag, entries read or rate mean redis (older than 7) or this instance doesn't know it
+    public record StreamReport(String stream, long length, String lastGeneratedId, Long entriesAdded,
+                               List<GroupReport> groups) {
+    }
+
+    public record GroupReport(String group, Long lag, Long entriesRead, String lastDeliveredId, long pending,
+                              Double readRate, List<ConsumerReport> consumers) {
+    }
+
+    public record ConsumerReport(String consumer, long pending, long idleMillis, Double processedRate) {
+    }
+}
@@ -0,0 +1,25 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//setting for StreamMonitor, the orders stream (app.orders.consumer.stream) is always monitored
+@Data
+@ConfigurationProperties(prefix = "app.streams.monitor")
+public class StreamMonitorProperties {
+
+    private boolean enabled = true;
+
+    //other streams with consumer group to monitor
+    private List<String> streams = new ArrayList<>();
+
+    //delay between XINFO reads, rates are per second over this interval
+    private Duration interval = Duration.ofSeconds(10);
+
+    //group with more entries than this not read yet make the redisStreams health DEGRADED
+    private long lagThreshold = 10_000;
+}
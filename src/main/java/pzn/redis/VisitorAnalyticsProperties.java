@@ -0,0 +1,32 @@
+package pzn.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.time.ZoneId;
+
+//unique visitors per product per day (ProductVisitorAnalytics)
+@Data
+@ConfigurationProperties(prefix = "app.analytics.visitors")
+public class VisitorAnalyticsProperties {
+
+    private boolean enabled = true;
+
+    private String keyPrefix = "analytics:visitors:";
+
+    //visits are collected locally (same visitor only once) and sent as one pipeline of PFADD this often
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    //how long a day key is kept, the longest range that can be counted
+    private Duration retention = Duration.ofDays(400);
+
+    //day boundary
+    private ZoneId zone = ZoneId.of("UTC");
+
+    //range up to this many days: PFCOUNT of the day keys, longer range: PFMERGE of the past days is cached
+    private int mergeThreshold = 7;
+
+    //how long a merged range is reused, a visit flushed late to a past day is only seen after this
+    private Duration mergeTimeToLive = Duration.ofHours(1);
+}
@@ -0,0 +1,8 @@
+-- move the sweeper cursor forward only, two instances can finish the same bucket at the same time
+-- KEYS[1] cursor, ARGV[1] next bucket
+-- return 1 when moved
+if (tonumber(redis.call('get', KEYS[1])) or 0) < tonumber(ARGV[1]) then
+    redis.call('set', KEYS[1], ARGV[1])
+    return 1
+end
+return 0
@@ -0,0 +1,22 @@
+-- pop a batch of ids from an expiry bucket and clean the ones that already expired, used by ProductExpirySweeper
+-- id that still exist (saved again with new ttl or without ttl) is just dropped from this bucket
+-- pop and cleanup is one script, so an id is never popped and then lost when the instance die
+-- KEYS[1] bucket, KEYS[2] keyspace set (products), KEYS[3] price index (products:price)
+-- ARGV[1] key prefix (products:), ARGV[2] count
+-- return {popped, removed}
+local ids = redis.call('spop', KEYS[1], ARGV[2])
+local removed = 0
+for _, id in ipairs(ids) do
+    local key = ARGV[1] .. id
+    if redis.call('exists', key) == 0 then
+        redis.call('srem', KEYS[2], id)
+        local helper = key .. ':idx'
+        for _, index in ipairs(redis.call('smembers', helper)) do
+            redis.call('srem', index, id)
+        end
+        redis.call('del', helper)
+        redis.call('zrem', KEYS[3], id)
+        removed = removed + 1
+    end
+end
+return {#ids, removed}
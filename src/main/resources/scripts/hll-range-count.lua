@@ -0,0 +1,18 @@
+-- unique count of a long day range, used by ProductVisitorAnalytics
+-- the past days are merged (PFMERGE) once into a cache key, after that only the merged key and today are counted
+-- KEYS[1] merged key, KEYS[2..ARGV[2] + 1] past day keys, KEYS[ARGV[2] + 2] today key when the range include today
+-- ARGV[1] merged key ttl in millis, ARGV[2] number of past day keys
+-- return the unique count
+local days = tonumber(ARGV[2])
+if redis.call('exists', KEYS[1]) == 0 then
+    -- unpack can't take thousands of values, so the days are merged 1000 at a time
+    -- (pfmerge also read the destination, so every chunk is added to the previous ones)
+    for first = 2, days + 1, 1000 do
+        redis.call('pfmerge', KEYS[1], unpack(KEYS, first, math.min(first + 999, days + 1)))
+    end
+    redis.call('pexpire', KEYS[1], ARGV[1])
+end
+if #KEYS > days + 1 then
+    return redis.call('pfcount', KEYS[1], KEYS[#KEYS])
+end
+return redis.call('pfcount', KEYS[1])
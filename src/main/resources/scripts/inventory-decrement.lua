@@ -0,0 +1,10 @@
+-- take quantity from the stock, but never below the floor
+-- KEYS[1] inventory (inventory:<product id>), missing mean 0
+-- ARGV[1] quantity, ARGV[2] floor
+-- return the stock left, or nil when there's not enough
+local current = tonumber(redis.call('get', KEYS[1]) or '0')
+local quantity = tonumber(ARGV[1])
+if current - quantity < tonumber(ARGV[2]) then
+    return false
+end
+return redis.call('decrby', KEYS[1], quantity)
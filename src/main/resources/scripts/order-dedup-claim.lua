@@ -0,0 +1,56 @@
+-- claim a batch of order ids before they are processed, used by OrderDeduplicator
+-- an id is a duplicate when it's in one of the window buckets (processed), or in flight when another consumer
+-- claimed it less than lease ago, otherwise it's claimed (in-flight hash) and the caller process it
+-- KEYS[1] in-flight hash (order id -> claim time in millis), KEYS[2..] window buckets, current first
+-- ARGV[1] mode (sets or bloom), ARGV[2] lease in millis, ARGV[3] in-flight hash ttl in millis,
+-- ARGV[4] bloom hash count, ARGV[5..] order ids, in bloom mode every id is followed by its bit positions
+-- return one number per id: 0 claimed, 1 duplicate, 2 in flight
+local bloom = ARGV[1] == 'bloom'
+local lease = tonumber(ARGV[2])
+local hashes = tonumber(ARGV[4])
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local function processed(index)
+    for b = 2, #KEYS do
+        local found = true
+        if bloom then
+            for h = 1, hashes do
+                if redis.call('getbit', KEYS[b], ARGV[index + h]) == 0 then
+                    found = false
+                    break
+                end
+            end
+        else
+            found = redis.call('sismember', KEYS[b], ARGV[index]) == 1
+        end
+        if found then
+            return true
+        end
+    end
+    return false
+end
+
+local result = {}
+local index = 5
+while index <= #ARGV do
+    local id = ARGV[index]
+    if processed(index) then
+        result[#result + 1] = 1
+    else
+        local claimed = redis.call('hget', KEYS[1], id)
+        if claimed and now - tonumber(claimed) < lease then
+            result[#result + 1] = 2
+        else
+            redis.call('hset', KEYS[1], id, now)
+            result[#result + 1] = 0
+        end
+    end
+    index = index + 1
+    if bloom then
+        index = index + hashes
+    end
+end
+-- claim of an instance that died is never removed, the whole hash go away when there's no claim for a while
+redis.call('pexpire', KEYS[1], ARGV[3])
+return result
@@ -0,0 +1,17 @@
+-- add the order to the stream only once per order id
+-- KEYS[1] idempotency key (orders:idempotency:<order id>), KEYS[2] stream
+-- ARGV[1] idempotency ttl in seconds, ARGV[2] trim strategy (MAXLEN, MINID or empty for no trim),
+-- ARGV[3] trim threshold, ARGV[4..] field and value of the record
+-- return {1, record id} when added, {0, record id of the first insert} when it's a duplicate
+local existing = redis.call('get', KEYS[1])
+if existing then
+    return {0, existing}
+end
+local id
+if ARGV[2] ~= '' then
+    id = redis.call('xadd', KEYS[2], ARGV[2], '~', ARGV[3], '*', unpack(ARGV, 4))
+else
+    id = redis.call('xadd', KEYS[2], '*', unpack(ARGV, 4))
+end
+redis.call('set', KEYS[1], id, 'EX', ARGV[1])
+return {1, id}
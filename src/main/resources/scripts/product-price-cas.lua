@@ -0,0 +1,11 @@
+-- compare and set the price of a product, the price index is changed in the same script
+-- KEYS[1] product hash (products:<id>), KEYS[2] price index (products:price)
+-- ARGV[1] price field, ARGV[2] expected price, ARGV[3] new price, ARGV[4] product id
+-- return 1 when changed, 0 when the product doesn't exist or the price is not the expected one
+local current = redis.call('hget', KEYS[1], ARGV[1])
+if current ~= ARGV[2] then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[1], ARGV[3])
+redis.call('zadd', KEYS[2], ARGV[3], ARGV[4])
+return 1
@@ -0,0 +1,23 @@
+-- sliding window log, used by RateLimiter, every allowed request is a member of the zset with its time as score
+-- KEYS[1] log (zset), ARGV[1] limit, ARGV[2] window in millis, ARGV[3] requested, ARGV[4] unique member prefix
+-- return {granted (0..requested), retry after in millis when nothing is granted}
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+redis.call('zremrangebyscore', KEYS[1], '-inf', now - window)
+local used = redis.call('zcard', KEYS[1])
+local granted = math.min(tonumber(ARGV[3]), limit - used)
+if granted <= 0 then
+    local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES')
+    if oldest[2] == nil then
+        return {0, window}
+    end
+    return {0, tonumber(oldest[2]) + window - now}
+end
+for i = 1, granted do
+    redis.call('zadd', KEYS[1], now, ARGV[4] .. ':' .. i)
+end
+redis.call('pexpire', KEYS[1], window)
+return {granted, 0}
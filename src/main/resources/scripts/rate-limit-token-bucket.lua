@@ -0,0 +1,23 @@
+-- token bucket, used by RateLimiter, the bucket is refilled by the time passed since the last call
+-- KEYS[1] bucket (hash: tokens, updated), ARGV[1] capacity, ARGV[2] period in millis (capacity tokens per period),
+-- ARGV[3] requested
+-- return {granted (0..requested), retry after in millis when nothing is granted}
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local state = redis.call('hmget', KEYS[1], 'tokens', 'updated')
+local tokens = tonumber(state[1]) or capacity
+local updated = tonumber(state[2]) or now
+tokens = math.min(capacity, tokens + math.max(0, now - updated) * capacity / period)
+
+local granted = math.min(tonumber(ARGV[3]), math.floor(tokens))
+tokens = tokens - granted
+redis.call('hset', KEYS[1], 'tokens', tostring(tokens), 'updated', now)
+-- a bucket untouched for one period is full again, same as a missing one
+redis.call('pexpire', KEYS[1], period)
+if granted > 0 then
+    return {granted, 0}
+end
+return {0, math.ceil((1 - tokens) * period / capacity)}
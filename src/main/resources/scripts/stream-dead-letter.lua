@@ -0,0 +1,29 @@
+-- move pending entries that were delivered too many times to the dead letter stream, used by OrderReclaimer
+-- the pending list is checked again here, so when two instances reclaim at the same time only one of them
+-- move the entry (the other see it's not pending anymore), and the XADD and XACK can't be half done
+-- KEYS[1] stream, KEYS[2] dead letter stream
+-- ARGV[1] group, ARGV[2] max deliveries, ARGV[3] min idle in millis, ARGV[4..] entry ids
+-- return the moved ids, each followed by its delivery count
+local maxDeliveries = tonumber(ARGV[2])
+local moved = {}
+for i = 4, #ARGV do
+    local id = ARGV[i]
+    local pending = redis.call('xpending', KEYS[1], ARGV[1], 'IDLE', ARGV[3], id, id, 1)
+    if #pending > 0 and pending[1][4] >= maxDeliveries then
+        local deliveries = pending[1][4]
+        -- the entry may be trimmed already, then it's only acknowledged
+        local entries = redis.call('xrange', KEYS[1], id, id)
+        if #entries > 0 then
+            local fields = entries[1][2]
+            fields[#fields + 1] = 'source-id'
+            fields[#fields + 1] = id
+            fields[#fields + 1] = 'deliveries'
+            fields[#fields + 1] = tostring(deliveries)
+            redis.call('xadd', KEYS[2], '*', unpack(fields))
+        end
+        redis.call('xack', KEYS[1], ARGV[1], id)
+        moved[#moved + 1] = id
+        moved[#moved + 1] = deliveries
+    end
+end
+return moved
@@ -0,0 +1,19 @@
+-- remove the consumers of a group that have nothing pending and were idle at least max idle, used by OrderReclaimer
+-- a consumer with pending entries is never removed, XGROUP DELCONSUMER would drop them from the pending list,
+-- it's done in one script, so a consumer can't read a new entry between the check and the delete
+-- a live consumer that was only quiet is created again by its next XREADGROUP
+-- KEYS[1] stream, ARGV[1] group, ARGV[2] max idle in millis
+-- return the number of removed consumers
+local maxIdle = tonumber(ARGV[2])
+local removed = 0
+for _, consumer in ipairs(redis.call('xinfo', 'consumers', KEYS[1], ARGV[1])) do
+    local info = {}
+    for i = 1, #consumer, 2 do
+        info[consumer[i]] = consumer[i + 1]
+    end
+    if info['pending'] == 0 and info['idle'] >= maxIdle then
+        redis.call('xgroup', 'delconsumer', KEYS[1], ARGV[1], info['name'])
+        removed = removed + 1
+    end
+end
+return removed
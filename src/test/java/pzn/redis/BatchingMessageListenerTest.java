@@ -0,0 +1,103 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//this test doesn't need redis, onMessage is called like the container dispatch thread would
+public class BatchingMessageListenerTest {
+
+    private static final String CHANNEL = "customers.{0}";
+
+    private final CustomerChannelProperties properties = new CustomerChannelProperties();
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+    //the first delivery wait for this, so the queue fill up
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private BatchingMessageListener listener;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        if (listener != null) {
+            listener.destroy();
+        }
+    }
+
+    //full queue with BLOCK doesn't make the container thread wait, the messages still come in the order they were sent
+    @Test
+    void blockDoesNotWaitOnTheContainerThread() throws InterruptedException {
+        properties.setQueueCapacity(3);
+        properties.setOfferTimeout(Duration.ofSeconds(5));
+        listener = start();
+
+        List<String> sent = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            sent.add("customer-" + i);
+            listener.onMessage(message("customer-" + i), null);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        release.countDown();
+        awaitHandled(5);
+        assertEquals(sent, delivered);
+        assertEquals(0, listener.getDropped());
+    }
+
+    //a message that can't get in the queue within offer-timeout is dropped, and counted
+    @Test
+    void blockDropAfterOfferTimeout() throws InterruptedException {
+        properties.setQueueCapacity(2);
+        properties.setOfferTimeout(Duration.ofMillis(100));
+        listener = start();
+
+        for (int i = 0; i < 4; i++) {
+            listener.onMessage(message("customer-" + i), null);
+        }
+        Thread.sleep(Duration.ofMillis(300).toMillis());
+
+        release.countDown();
+        awaitHandled(4);
+        assertTrue(listener.getDropped() > 0);
+    }
+
+    private BatchingMessageListener start() {
+        properties.setOverflow(CustomerChannelProperties.Overflow.BLOCK);
+        properties.setMaxBatchSize(1);
+        properties.setMaxBatchDelay(Duration.ofMillis(1));
+        return new BatchingMessageListener("test", messages -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.forEach(message -> delivered.add(new String(message.getBody(), StandardCharsets.UTF_8)));
+        }, properties, null, new SimpleMeterRegistry());
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void awaitHandled(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (listener.getDelivered() + listener.getDropped() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, listener.getDelivered() + listener.getDropped());
+    }
+}
@@ -0,0 +1,132 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//this test doesn't need redis, dedup is off and the completions (what would be XACK-ed) are only collected
+public class OrderDispatcherTest {
+
+    private static final String STREAM = "orders-dispatch-test";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final OrderConsumerProperties properties = new OrderConsumerProperties();
+
+    private final List<OrderDeduplicator.Completion> completions = new CopyOnWriteArrayList<>();
+
+    //order id -> record ids in the order the listener got them, and the threads that ran them
+    private final Map<String, List<RecordId>> received = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+
+    //negative amount fail in the listener
+    private final OrderListener listener = new OrderListener() {
+        @Override
+        public void onMessage(ObjectRecord<String, Order> message) {
+            String key = message.getValue().getId();
+            received.computeIfAbsent(key, ignored -> new CopyOnWriteArrayList<>()).add(message.getId());
+            threads.computeIfAbsent(key, ignored -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+            if (message.getValue().getAmount() < 0) {
+                throw new IllegalStateException("Invalid amount");
+            }
+        }
+    };
+
+    //same order id always go to the same lane, so one worker run them, in the order they were read
+    @Test
+    void orderedByKey() throws InterruptedException {
+        properties.setOrderedByKey(true);
+        properties.setWorkers(4);
+        OrderDispatcher dispatcher = start();
+
+        List<String> keys = List.of("order-a", "order-b", "order-c", "order-d", "order-e");
+        long sequence = 0;
+        Map<String, List<RecordId>> sent = new ConcurrentHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            for (String key : keys) {
+                ObjectRecord<String, Order> record = record(++sequence, key, 1000L);
+                sent.computeIfAbsent(key, ignored -> new ArrayList<>()).add(record.getId());
+                dispatcher.dispatch("consumer-1", record);
+            }
+        }
+        awaitCompletions(100);
+        dispatcher.stop();
+
+        for (String key : keys) {
+            assertEquals(sent.get(key), received.get(key));
+            assertEquals(1, threads.get(key).size());
+        }
+    }
+
+    //acknowledged (processed) only after the listener success, a failed one is left pending (not acknowledged)
+    @Test
+    void acknowledgeOnlyAfterSuccess() throws InterruptedException {
+        properties.setWorkers(2);
+        OrderDispatcher dispatcher = start();
+
+        ObjectRecord<String, Order> ok = record(1, "order-ok", 1000L);
+        ObjectRecord<String, Order> failed = record(2, "order-failed", -1L);
+        dispatcher.dispatch("consumer-1", ok);
+        dispatcher.dispatch("consumer-1", failed);
+        awaitCompletions(2);
+        dispatcher.stop();
+
+        assertEquals(List.of(ok.getId()), received.get("order-ok"));
+        assertEquals(List.of(failed.getId()), received.get("order-failed"));
+        assertEquals(OrderDeduplicator.Outcome.PROCESSED, outcome(ok.getId()));
+        assertEquals(OrderDeduplicator.Outcome.FAILED, outcome(failed.getId()));
+    }
+
+    private OrderDispatcher start() {
+        properties.setStream(STREAM);
+        properties.setBatchSize(10);
+        properties.setPollTimeout(Duration.ofSeconds(1));
+        OrderDedupProperties dedupProperties = new OrderDedupProperties();
+        dedupProperties.setEnabled(false);
+        OrderDeduplicator deduplicator = new OrderDeduplicator(null, null, dedupProperties, properties, meterRegistry) {
+            @Override
+            public void complete(List<Completion> batch) {
+                completions.addAll(batch);
+            }
+        };
+        StreamMonitor streamMonitor = new StreamMonitor(null, new StreamMonitorProperties(), properties, meterRegistry);
+        OrderDispatcher dispatcher = new OrderDispatcher(listener, properties, new ListenerExecution(false, 1),
+                streamMonitor, deduplicator, meterRegistry);
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private static ObjectRecord<String, Order> record(long sequence, String orderId, long amount) {
+        return StreamRecords.newRecord()
+                .in(STREAM)
+                .withId(RecordId.of(sequence, 0))
+                .ofObject(new Order(orderId, amount));
+    }
+
+    private void awaitCompletions(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (completions.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, completions.size());
+    }
+
+    private OrderDeduplicator.Outcome outcome(RecordId recordId) {
+        return completions.stream()
+                .filter(completion -> completion.recordId().equals(recordId))
+                .findFirst().orElseThrow()
+                .outcome();
+    }
+}
@@ -0,0 +1,141 @@
+package pzn.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//own stream without consumer, so only the records read here are pending,
+//batch-size 2 so the pending list and XAUTOCLAIM are read in several pages
+@SpringBootTest(properties = {
+        "app.orders.consumer.stream=orders-reclaim-test",
+        "app.orders.consumer.group=reclaim-group",
+        "app.orders.consumer.consumers=0",
+        "app.orders.consumer.reclaim.interval=1h",
+        "app.orders.consumer.reclaim.min-idle=0s",
+        "app.orders.consumer.reclaim.batch-size=2",
+        "app.orders.consumer.reclaim.max-deliveries=2",
+        "app.orders.consumer.reclaim.dead-letter-stream=orders-reclaim-test:dlq",
+        "app.orders.consumer.reclaim.consumer-max-idle=500ms"
+})
+public class OrderReclaimerTest {
+
+    private static final String STREAM = "orders-reclaim-test";
+    private static final String GROUP = "reclaim-group";
+    private static final String DLQ = "orders-reclaim-test:dlq";
+
+    @Autowired
+    private OrderReclaimer orderReclaimer;
+
+    @Autowired
+    private StringRedisTemplate template;
+
+    //read once by a consumer that die: claimed by the reclaimer, processed and acknowledged
+    @Test
+    void reclaimAbandoned() throws InterruptedException {
+        addAndRead(3);
+
+        orderReclaimer.reclaim();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, pending());
+        assertEquals(0, template.opsForStream().size(DLQ));
+
+        template.delete(List.of(STREAM, DLQ));
+    }
+
+    //delivered max-deliveries times: every one of them go to the dead letter stream, not only the first page
+    @Test
+    void deadLetterEveryPage() {
+        List<RecordId> ids = addAndRead(5);
+        //second delivery
+        template.opsForStream().claim(STREAM, GROUP, "crashed", Duration.ZERO, ids.toArray(RecordId[]::new));
+
+        orderReclaimer.reclaim();
+
+        assertEquals(0, pending());
+        List<MapRecord<String, Object, Object>> deadLetters = template.opsForStream().range(DLQ, Range.unbounded());
+        assertEquals(5, deadLetters.size());
+        Set<Object> sources = deadLetters.stream().map(record -> record.getValue().get("source-id")).collect(Collectors.toSet());
+        assertEquals(ids.stream().map(RecordId::getValue).collect(Collectors.toSet()), sources);
+        deadLetters.forEach(record -> assertEquals("2", record.getValue().get("deliveries")));
+
+        template.delete(List.of(STREAM, DLQ));
+    }
+
+    //two instances reclaiming at the same time: every entry is in the dead letter stream once
+    @Test
+    void deadLetterOnce() {
+        List<RecordId> ids = addAndRead(6);
+        template.opsForStream().claim(STREAM, GROUP, "crashed", Duration.ZERO, ids.toArray(RecordId[]::new));
+
+        CompletableFuture<Void> other = CompletableFuture.runAsync(orderReclaimer::reclaim);
+        orderReclaimer.reclaim();
+        other.join();
+
+        assertEquals(0, pending());
+        assertEquals(6, template.opsForStream().size(DLQ));
+
+        template.delete(List.of(STREAM, DLQ));
+    }
+
+    //consumer of a dead instance is removed once idle with nothing pending, the one with pending entries is kept
+    @Test
+    void removeIdleConsumers() throws InterruptedException {
+        List<RecordId> ids = addAndRead(2);
+        //"gone" take one and acknowledge it, "crashed" still has the other
+        template.opsForStream().claim(STREAM, GROUP, "gone", Duration.ZERO, ids.get(0));
+        template.opsForStream().acknowledge(STREAM, GROUP, ids.get(0));
+        Thread.sleep(1_000);
+
+        orderReclaimer.removeIdleConsumers();
+
+        assertEquals(List.of("crashed"), template.opsForStream().consumers(STREAM, GROUP).stream()
+                .map(StreamInfo.XInfoConsumer::consumerName).toList());
+        assertEquals(1, pending());
+
+        template.delete(List.of(STREAM, DLQ));
+    }
+
+    //records read once by consumer "crashed" and never acknowledged
+    private List<RecordId> addAndRead(int count) {
+        template.delete(List.of(STREAM, DLQ));
+        List<RecordId> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(template.opsForStream().add(STREAM, Map.of("id", UUID.randomUUID().toString(), "amount", "1000")));
+        }
+        template.opsForStream().createGroup(STREAM, ReadOffset.from("0-0"), GROUP);
+        List<MapRecord<String, Object, Object>> records = template.opsForStream().read(
+                Consumer.from(GROUP, "crashed"),
+                StreamReadOptions.empty().count(count),
+                StreamOffset.create(STREAM, ReadOffset.lastConsumed()));
+        assertEquals(count, records.size());
+        return ids;
+    }
+
+    private long pending() {
+        return template.opsForStream().pending(STREAM, GROUP).getTotalPendingMessages();
+    }
+}
@@ -0,0 +1,64 @@
+package pzn.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//own stream, so the orders read by the app consumer doesn't change the result
+@SpringBootTest(properties = {
+        "app.orders.publisher.stream=orders-retention-test",
+        "app.orders.retention.mode=acked",
+        "app.orders.retention.trim-interval=1h"
+})
+public class OrderStreamRetentionTest {
+
+    private static final String STREAM = "orders-retention-test";
+
+    @Autowired
+    private OrderStreamRetention retention;
+
+    @Autowired
+    private StringRedisTemplate template;
+
+    @Test
+    void trimAcknowledgedOnly() {
+        template.delete(STREAM);
+        List<RecordId> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ids.add(template.opsForStream().add(STREAM, Map.of("id", String.valueOf(i))));
+        }
+        //no group yet, nothing is trimmed
+        assertNull(retention.minIdAcked());
+
+        template.opsForStream().createGroup(STREAM, ReadOffset.from("0-0"), "retention-group");
+        List<MapRecord<String, Object, Object>> records = template.opsForStream().read(
+                Consumer.from("retention-group", "consumer-1"),
+                StreamReadOptions.empty().count(300),
+                StreamOffset.create(STREAM, ReadOffset.lastConsumed()));
+        assertEquals(300, records.size());
+        template.opsForStream().acknowledge(STREAM, "retention-group", ids.subList(0, 250).toArray(RecordId[]::new));
+
+        //oldest pending entry
+        assertEquals(ids.get(250), retention.minIdAcked());
+        assertTrue(retention.trimInBackground() > 0);
+        //pending entries are never trimmed
+        assertEquals(1, template.opsForStream().range(STREAM, Range.closed(ids.get(250).getValue(), ids.get(250).getValue())).size());
+        assertTrue(template.opsForStream().size(STREAM) >= 50);
+
+        template.delete(STREAM);
+    }
+}
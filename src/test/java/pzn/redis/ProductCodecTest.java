@@ -0,0 +1,88 @@
+package pzn.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//this test doesn't need redis, only check the codec
+public class ProductCodecTest {
+
+    private final Product product = Product.builder()
+            .id("P-001")
+            .name("mie goreng")
+            .price(20_000L)
+            .ttl(-1L)
+            .build();
+
+    @Test
+    void binaryRoundTrip() {
+        byte[] bytes = ProductCodec.encode(product);
+        assertTrue(ProductCodec.isEncoded(bytes));
+        assertEquals(product, ProductCodec.decode(bytes));
+    }
+
+    @Test
+    void hashRoundTrip() {
+        Map<String, byte[]> hash = ProductCodec.toHash(product);
+        assertEquals("20000", new String(hash.get(ProductCodec.PRICE_FIELD), StandardCharsets.UTF_8));
+
+        Product decoded = ProductCodec.fromHash(hash);
+        assertEquals(product.getId(), decoded.getId());
+        assertEquals(product.getName(), decoded.getName());
+        assertEquals(product.getPrice(), decoded.getPrice());
+    }
+
+    //hash written by default spring data mapping before the codec
+    @Test
+    void readLegacyHash() {
+        Map<String, byte[]> hash = new HashMap<>();
+        hash.put("_class", "pzn.redis.Product".getBytes(StandardCharsets.UTF_8));
+        hash.put("id", "1".getBytes(StandardCharsets.UTF_8));
+        hash.put("name", "mie".getBytes(StandardCharsets.UTF_8));
+        hash.put("price", "20000".getBytes(StandardCharsets.UTF_8));
+        hash.put("ttl", "-1".getBytes(StandardCharsets.UTF_8));
+
+        Product decoded = ProductCodec.fromHash(hash);
+        assertEquals("1", decoded.getId());
+        assertEquals("mie", decoded.getName());
+        assertEquals(20_000L, decoded.getPrice());
+        assertEquals(-1L, decoded.getTtl());
+    }
+
+    //cache entry that still written with jdk serialization must still be readable
+    @Test
+    void readLegacyCacheEntry() {
+        byte[] jdk = new JdkSerializationRedisSerializer().serialize(product);
+        RedisSerializer<Object> serializer = new CompactProductRedisSerializer(getClass().getClassLoader());
+        assertEquals(product, serializer.deserialize(jdk));
+    }
+
+    @Test
+    void skipUnknownTag() {
+        byte[] bytes = ProductCodec.encode(product);
+        //append tag 15 with varint value 1, written by newer version
+        byte[] newer = new byte[bytes.length + 2];
+        System.arraycopy(bytes, 0, newer, 0, bytes.length);
+        newer[bytes.length] = (byte) (15 << 3);
+        newer[bytes.length + 1] = 1;
+        assertEquals(product, ProductCodec.decode(newer));
+    }
+
+    //compact value must be smaller than jdk serialization, the speed is in ProductCodecBenchmark
+    @Test
+    void compareWithJdkSerialization() {
+        RedisSerializer<Object> jdk = new JdkSerializationRedisSerializer();
+        RedisSerializer<Object> compact = new CompactProductRedisSerializer(getClass().getClassLoader());
+
+        byte[] jdkBytes = jdk.serialize(product);
+        byte[] compactBytes = compact.serialize(product);
+        assertTrue(compactBytes.length < jdkBytes.length);
+        assertEquals(product, compact.deserialize(compactBytes));
+    }
+}
@@ -0,0 +1,57 @@
+package pzn.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//sweeper mode has its own context, cause keyspace events is turned off when the repository adapter is created
+@SpringBootTest(properties = {
+        "app.products.expiry.mode=sweeper",
+        "app.products.expiry.bucket-size=1s",
+        "app.products.expiry.sweep-interval=500ms"
+})
+public class ProductExpirySweeperTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StringRedisTemplate template;
+
+    @Autowired
+    private ProductMemoryReport productMemoryReport;
+
+    @Test
+    void sweepExpiredProducts() throws InterruptedException {
+        productRepository.saveAll(List.of(
+                Product.builder().id("E-001").name("sweep-mie").price(20_000L).ttl(1L).build(),
+                Product.builder().id("E-002").name("sweep-mie").price(25_000L).build()));
+
+        //no phantom key in this mode
+        assertFalse(template.hasKey("products:E-001:phantom"));
+        ProductMemoryReport.Report report = productMemoryReport.report(100);
+        assertEquals(ProductExpiryProperties.Mode.SWEEPER, report.mode());
+        assertTrue(report.products() >= 2);
+        assertTrue(report.hash() > 0);
+        assertEquals(0, report.phantom());
+        //E-001 is in an expiry bucket instead
+        assertTrue(report.expiryBucket() > 0);
+        assertTrue(report.priceIndex() > 0);
+
+        Thread.sleep(Duration.ofSeconds(4).toMillis());
+        assertFalse(template.hasKey("products:E-001"));
+        assertFalse(template.opsForSet().isMember("products", "E-001"));
+        assertFalse(template.opsForSet().isMember("products:name:sweep-mie", "E-001"));
+        assertNull(template.opsForZSet().score("products:price", "E-001"));
+        //product without ttl is not touched
+        assertEquals(1, productRepository.findByName("sweep-mie").size());
+
+        productRepository.deleteById("E-002");
+    }
+}
@@ -1,29 +1,60 @@
 package pzn.redis;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.geo.*;
 import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.stream.Consumer;
 import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
 import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
 import org.springframework.data.redis.core.*;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.support.collections.DefaultRedisMap;
 import org.springframework.data.redis.support.collections.RedisList;
 import org.springframework.data.redis.support.collections.RedisSet;
 import org.springframework.data.redis.support.collections.RedisZSet;
 
 import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.hamcrest.MatcherAssert.*;
@@ -45,6 +76,64 @@ public class RedisTest {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private OrderBatchPublisher orderBatchPublisher;
+
+    @Autowired
+    private OrderPublisherProperties orderPublisherProperties;
+
+    @Autowired
+    private OrderStreamRetention orderStreamRetention;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ReactiveProductService reactiveProductService;
+
+    @Autowired
+    private AtomicOperations atomicOperations;
+
+    @Autowired
+    private BatchingMessageListener customerBatchListener;
+
+    @Autowired
+    private CustomerChannel customerChannel;
+
+    @Autowired
+    private RedisMessageListenerContainer messageListenerContainer;
+
+    @Autowired
+    private StreamMonitor streamMonitor;
+
+    @Autowired
+    private RedisStreamsHealthIndicator redisStreamsHealthIndicator;
+
+    @Autowired
+    private RedisTracking redisTracking;
+
+    @Autowired
+    @Qualifier("blockingRedisConnectionFactory")
+    private RedisConnectionFactory blockingConnectionFactory;
+
+    @Autowired
+    private OrderDeduplicator orderDeduplicator;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ProductLeaderboard productLeaderboard;
+
+    @Autowired
+    private ProductVisitorAnalytics productVisitorAnalytics;
+
+    @Autowired
+    private SellerLocationService sellerLocationService;
+
+    @Autowired
+    private SellerLocationProperties sellerLocationProperties;
+
     @Test
     void redisTemplate() {
         assertNotNull(template);
@@ -358,11 +447,12 @@ public class RedisTest {
                 .build();
         productRepository.save(product);
 
+        //product hash use ProductCodec layout, field name is the tag number
         Map<Object, Object> map = template.opsForHash().entries("products:1");
         System.out.println(map);
-        assertEquals(product.getId(), map.get("id"));
-        assertEquals(product.getName(), map.get("name"));
-        assertEquals(product.getPrice(), map.get("price"));
+        assertEquals(product.getId(), map.get(ProductCodec.ID_FIELD));
+        assertEquals(product.getName(), map.get(ProductCodec.NAME_FIELD));
+        assertEquals(product.getPrice().toString(), map.get(ProductCodec.PRICE_FIELD));
 
         Product product2 = productRepository.findById("1").get();
         assertEquals(product, product2);
@@ -449,4 +539,552 @@ public class RedisTest {
         //no need run the method first.
         assertEquals(product, product2);
     }
+
+    //test near cache, the data still can be read from L1 until other instance tell us to remove it
+    @Test
+    void nearCache() {
+        Cache products = cacheManager.getCache("products");
+        assertInstanceOf(NearCache.class, products);
+
+        productService.save(Product.builder().id("P004").name("near").build());
+        //remove it from redis directly, L1 still have it
+        template.delete("cache:products::P004");
+        assertNotNull(products.get("P004"));
+
+        //simulate invalidation message from other instance
+        ((NearCacheManager) cacheManager).onMessage(new DefaultMessage("cache-invalidations".getBytes(),
+                "other-instance|products|P004".getBytes()), null);
+        assertNull(products.get("P004"));
+    }
+
+    //test batch publisher, every order get its own record id even if sent together
+    @Test
+    void batchPublish() {
+        List<CompletableFuture<RecordId>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(orderBatchPublisher.publish(new Order(UUID.randomUUID().toString(), 1000L)));
+        }
+
+        Set<RecordId> ids = new HashSet<>();
+        futures.forEach(future -> ids.add(future.join()));
+        assertEquals(50, ids.size());
+    }
+
+    //after stop nothing is buffered anymore, the future fail right away instead of waiting forever
+    @Test
+    void batchPublishAfterStop() throws Exception {
+        OrderBatchPublisher publisher = new OrderBatchPublisher(template, orderPublisherProperties, orderStreamRetention,
+                new SimpleMeterRegistry());
+        publisher.start();
+        assertNotNull(publisher.publish(new Order(UUID.randomUUID().toString(), 1000L)).get(5, TimeUnit.SECONDS));
+        publisher.stop();
+
+        CompletableFuture<RecordId> future = publisher.publish(new Order(UUID.randomUUID().toString(), 1000L));
+        assertTrue(future.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+
+    //every command through the template is timed by lettuce and tagged with the command and key prefix,
+    //an error reply is counted for the same tags
+    @Test
+    void commandMetrics() {
+        template.opsForValue().set("products:metrics-test", "x");
+        template.opsForValue().get("products:metrics-test");
+        template.opsForValue().get("cache:products::metrics-test");
+
+        Timer timer = meterRegistry.find("redis.command").tag("command", "get").tag("prefix", "products").timer();
+        assertNotNull(timer);
+        assertTrue(timer.count() > 0);
+        assertNotNull(meterRegistry.find("redis.command").tag("command", "get").tag("prefix", "cache:products").timer());
+
+        //HGET on a string: WRONGTYPE
+        double errors = meterRegistry.counter("redis.command.errors", "command", "hget", "prefix", "products").count();
+        assertThrows(RuntimeException.class, () -> template.opsForHash().get("products:metrics-test", "field"));
+        assertEquals(errors + 1, meterRegistry.counter("redis.command.errors", "command", "hget", "prefix", "products").count());
+
+        template.delete("products:metrics-test");
+        assertNotNull(meterRegistry.find("redis.command").tag("command", "del").tag("prefix", "products").timer());
+    }
+
+    //bulk save and get, the misses are read from the repository and written back to the cache
+    @Test
+    void bulkProducts() {
+        List<Product> products = List.of(
+                Product.builder().id("B-001").name("mie").price(20_000L).build(),
+                Product.builder().id("B-002").name("bakso").price(15_000L).build(),
+                Product.builder().id("B-003").name("soto").price(18_000L).build());
+        productService.saveAll(products);
+
+        List<Product> saved = productRepository.findAllById(List.of("B-001", "B-002", "B-003", "B-404"));
+        assertEquals(3, saved.size());
+        assertEquals("bakso", saved.get(1).getName());
+
+        //remove from cache, the data must come from the repository
+        Cache cache = cacheManager.getCache("products");
+        cache.evict("B-002");
+        cache.evict("B-003");
+
+        List<Product> loaded = productService.getProducts(List.of("B-001", "B-002", "B-003", "B-404"));
+        assertEquals(4, loaded.size());
+        assertEquals("mie", loaded.get(0).getName());
+        assertEquals("soto", loaded.get(2).getName());
+        assertEquals(18_000L, loaded.get(2).getPrice());
+        //doesn't exist in repository, same as getProduct
+        assertEquals("sample", loaded.get(3).getName());
+        assertNotNull(template.opsForValue().get("cache:products::B-003"));
+
+        //cached as null: skipped, not a null element
+        cache.put("B-NULL", null);
+        assertEquals(List.of("mie", "bakso"), productService.getProducts(List.of("B-001", "B-NULL", "B-002")).stream()
+                .map(Product::getName).toList());
+
+        productRepository.deleteAllById(List.of("B-001", "B-002", "B-003"));
+        assertTrue(productRepository.findAllById(List.of("B-001", "B-002", "B-003")).isEmpty());
+        assertNull(template.opsForZSet().score("products:price", "B-001"));
+        List.of("B-001", "B-002", "B-003", "B-404", "B-NULL").forEach(cache::evict);
+    }
+
+    //many concurrent miss on the same key only run the loader once
+    @Test
+    void stampede() throws Exception {
+        Cache products = cacheManager.getCache("products");
+        String key = "S-" + UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+
+        List<CompletableFuture<Product>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> products.get(key, () -> {
+                loads.incrementAndGet();
+                Thread.sleep(200);
+                return Product.builder().id(key).name("loaded").build();
+            })));
+        }
+        futures.forEach(future -> assertEquals("loaded", future.join().getName()));
+        assertEquals(1, loads.get());
+
+        products.evict(key);
+    }
+
+    //threads that miss while the first load is ending must not start a second one,
+    //the loader is fast and every round start all the threads at once, so some of them come right after it ends
+    @Test
+    void stampedeLateMiss() throws Exception {
+        Cache products = cacheManager.getCache("products");
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int round = 0; round < 50; round++) {
+                String key = "S-" + UUID.randomUUID();
+                AtomicInteger loads = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Product>> futures = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return products.get(key, () -> {
+                            loads.incrementAndGet();
+                            return Product.builder().id(key).name("loaded").build();
+                        });
+                    }));
+                }
+                start.countDown();
+                for (Future<Product> future : futures) {
+                    assertEquals("loaded", future.get().getName());
+                }
+                assertEquals(1, loads.get(), "round " + round);
+                products.evict(key);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //products cache has its own ttl with jitter, and shorter ttl for null
+    @Test
+    void cacheTtlPolicy() {
+        Cache products = cacheManager.getCache("products");
+        products.put("T-001", Product.builder().id("T-001").name("mie").build());
+        products.put("T-404", null);
+
+        Long ttl = template.getExpire("cache:products::T-001");
+        assertTrue(ttl >= 59 && ttl <= 75, "ttl " + ttl);
+        Long nullTtl = template.getExpire("cache:products::T-404");
+        assertTrue(nullTtl > 0 && nullTtl <= 10, "null ttl " + nullTtl);
+
+        products.evict("T-001");
+        products.evict("T-404");
+    }
+
+    //reactive service read and write the same data as the blocking one
+    @Test
+    void reactiveProducts() {
+        productService.saveAll(List.of(Product.builder().id("R-001").name("mie").price(20_000L).build()));
+        cacheManager.getCache("products").evict("R-001");
+
+        //cache miss, loaded from the repository hash
+        Product product = reactiveProductService.getProduct("R-001").block();
+        assertNotNull(product);
+        assertEquals("mie", product.getName());
+
+        reactiveProductService.save(Product.builder().id("R-002").name("bakso").build()).block();
+        assertEquals("bakso", productService.getProduct("R-002").getName());
+
+        List<Product> products = reactiveProductService.getProducts(List.of("R-001", "R-002", "R-404")).collectList().block();
+        assertEquals(List.of("mie", "bakso", "sample"), products.stream().map(Product::getName).toList());
+
+        productRepository.deleteById("R-001");
+        List.of("R-001", "R-002", "R-404").forEach(id -> reactiveProductService.remove(id).block());
+    }
+
+    //product cached as null (NullValue) is empty, not an error and not loaded again
+    @Test
+    void reactiveCachedNull() {
+        NearCache products = (NearCache) cacheManager.getCache("products");
+        products.put("R-NULL", null);
+        //only in redis, so the reactive service read the NullValue bytes
+        products.evictLocal(NearCache.localKey("R-NULL"));
+
+        assertNull(reactiveProductService.getProduct("R-NULL").block());
+        assertNull(products.getLocal("R-NULL"));
+        assertEquals(List.of(), reactiveProductService.getProducts(List.of("R-NULL")).collectList().block());
+
+        reactiveProductService.remove("R-NULL").block();
+    }
+
+    //findByName use the @Indexed set, findByPriceBetween use products:price, both updated with save, delete and expire
+    @Test
+    void productIndexes() throws InterruptedException {
+        productRepository.saveAll(List.of(
+                Product.builder().id("I-001").name("index-mie").price(20_000L).build(),
+                Product.builder().id("I-002").name("index-mie").price(25_000L).build(),
+                Product.builder().id("I-003").name("index-bakso").price(15_000L).build(),
+                Product.builder().id("I-004").name("index-soto").price(30_000L).ttl(2L).build()));
+
+        assertEquals(2, productRepository.findByName("index-mie").size());
+        assertEquals(20_000.0, template.opsForZSet().score("products:price", "I-001"));
+
+        Page<Product> page = productRepository.findByPriceBetween(14_000L, 16_000L, PageRequest.of(0, 2));
+        assertEquals(1, page.getTotalElements());
+        assertEquals("I-003", page.getContent().get(0).getId());
+        assertEquals(2, productRepository.findByPriceBetween(21_000L, 30_000L, PageRequest.of(0, 2)).getContent().size());
+
+        //name changed, the old index doesn't have it anymore
+        productRepository.save(Product.builder().id("I-002").name("index-bakso").price(12_000L).build());
+        assertEquals(1, productRepository.findByName("index-mie").size());
+        assertEquals(2, productRepository.findByName("index-bakso").size());
+        assertEquals(12_000.0, template.opsForZSet().score("products:price", "I-002"));
+
+        //product with ttl is removed from both indexes when it expire
+        Thread.sleep(Duration.ofSeconds(4).toMillis());
+        assertTrue(productRepository.findByName("index-soto").isEmpty());
+        assertNull(template.opsForZSet().score("products:price", "I-004"));
+
+        productRepository.deleteAllById(List.of("I-001", "I-002", "I-003"));
+        assertTrue(productRepository.findByName("index-bakso").isEmpty());
+        assertNull(template.opsForZSet().score("products:price", "I-001"));
+    }
+
+    //atomic operation with lua script, the script is loaded again when redis doesn't have it
+    @Test
+    void luaScripts() {
+        productRepository.save(Product.builder().id("L-001").name("mie").price(20_000L).build());
+        assertFalse(atomicOperations.compareAndSetPrice("L-001", 10_000L, 30_000L));
+        assertTrue(atomicOperations.compareAndSetPrice("L-001", 20_000L, 30_000L));
+        assertEquals(30_000L, productRepository.findById("L-001").get().getPrice());
+        assertEquals(30_000.0, template.opsForZSet().score("products:price", "L-001"));
+
+        atomicOperations.setInventory("L-001", 5);
+        assertEquals(2L, atomicOperations.decrementInventory("L-001", 3, 0).getAsLong());
+        //only 2 left, floor 0
+        assertTrue(atomicOperations.decrementInventory("L-001", 3, 0).isEmpty());
+
+        //scripts removed from redis, NOSCRIPT -> load again
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+        String orderId = UUID.randomUUID().toString();
+        AtomicOperations.OrderInsert first = atomicOperations.insertOrder(new Order(orderId, 1000L, "L-001"));
+        AtomicOperations.OrderInsert retry = atomicOperations.insertOrder(new Order(orderId, 1000L, "L-001"));
+        assertTrue(first.inserted());
+        assertFalse(retry.inserted());
+        assertEquals(first.id(), retry.id());
+
+        //the record written by the script is the same as opsForStream().add(ObjectRecord)
+        Range<String> inserted = Range.closed(first.id().getValue(), first.id().getValue());
+        List<MapRecord<String, Object, Object>> raw = template.opsForStream().range("orders", inserted);
+        assertEquals(1, raw.size());
+        assertEquals(orderId, raw.get(0).getValue().get("id"));
+        assertEquals("1000", raw.get(0).getValue().get("amount"));
+        assertEquals("L-001", raw.get(0).getValue().get("productId"));
+        List<ObjectRecord<String, Order>> records = template.opsForStream().range(Order.class, "orders", inserted);
+        assertEquals(1, records.size());
+        assertEquals(new Order(orderId, 1000L, "L-001"), records.get(0).getValue());
+
+        productRepository.deleteById("L-001");
+        template.delete(List.of("inventory:L-001", "orders:idempotency:" + orderId));
+    }
+
+    //customers published to the shards are delivered in batch, delivered + dropped count every message
+    @Test
+    void customerChannelBatching() throws InterruptedException {
+        Set<String> shards = new HashSet<>();
+        double before = customerBatchListener.getDelivered() + customerBatchListener.getDropped();
+        for (int i = 0; i < 50; i++) {
+            String customer = "customer-" + i;
+            shards.add(customerChannel.shardFor(customer));
+            template.convertAndSend(customerChannel.shardFor(customer), customer);
+        }
+        assertTrue(shards.size() > 1);
+
+        Thread.sleep(Duration.ofSeconds(1).toMillis());
+        assertEquals(before + 50, customerBatchListener.getDelivered() + customerBatchListener.getDropped());
+    }
+
+    //messages published faster than max-batch-delay are delivered max-batch-size at a time, in the order they were published
+    @Test
+    void customerChannelBatchSize() throws InterruptedException {
+        CustomerChannelProperties properties = new CustomerChannelProperties();
+        properties.setMaxBatchSize(10);
+        properties.setMaxBatchDelay(Duration.ofMillis(500));
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        BatchingMessageListener listener = new BatchingMessageListener("test", messages -> batches.add(
+                messages.stream().map(message -> new String(message.getBody())).toList()),
+                properties, null, new SimpleMeterRegistry());
+        ChannelTopic topic = new ChannelTopic("customers-batch-test");
+        messageListenerContainer.addMessageListener(listener, topic);
+        try {
+            //the subscription is made in the background, wait until redis has it and the "ready" batch is delivered
+            while (template.convertAndSend(topic.getTopic(), "ready") == 0) {
+                Thread.sleep(50);
+            }
+            while (batches.isEmpty()) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(Duration.ofSeconds(1).toMillis());
+            batches.clear();
+
+            List<String> published = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                published.add("customer-" + i);
+                template.convertAndSend(topic.getTopic(), "customer-" + i);
+            }
+            Thread.sleep(Duration.ofSeconds(1).toMillis());
+
+            assertEquals(3, batches.size());
+            batches.forEach(batch -> assertEquals(10, batch.size()));
+            assertEquals(published, batches.stream().flatMap(List::stream).toList());
+        } finally {
+            messageListenerContainer.removeMessageListener(listener, topic);
+            listener.destroy();
+        }
+    }
+
+    //orders stream and my-group exist once the app started (orderSubscriptions)
+    @Test
+    void streamMonitor() {
+        //own group, so its pending and lag are known: one delivered and not acknowledged, nothing left to read
+        template.opsForStream().createGroup("orders", ReadOffset.latest(), "monitor-group");
+        template.opsForStream().add("orders", Map.of("id", "monitor", "amount", "1000"));
+        template.opsForStream().read(Consumer.from("monitor-group", "monitor-1"), StreamReadOptions.empty().count(1),
+                StreamOffset.create("orders", ReadOffset.lastConsumed()));
+        streamMonitor.poll();
+
+        StreamMonitor.StreamReport orders = streamMonitor.report().stream()
+                .filter(report -> report.stream().equals("orders"))
+                .findFirst().orElseThrow();
+        assertTrue(orders.length() > 0);
+        StreamMonitor.GroupReport group = orders.groups().stream()
+                .filter(report -> report.group().equals("monitor-group"))
+                .findFirst().orElseThrow();
+        assertEquals(1, group.pending());
+        //lag is null before redis 7
+        assertTrue(group.lag() == null || group.lag() == 0);
+        assertEquals(1, group.consumers().size());
+        assertEquals("monitor-1", group.consumers().get(0).consumer());
+        assertEquals(1, group.consumers().get(0).pending());
+        template.opsForStream().destroyGroup("orders", "monitor-group");
+
+        assertTrue(redisStreamsHealthIndicator.health().getDetails().containsKey("lag"));
+    }
+
+    //template use the shared lane, the stream and pubsub container the blocking one
+    @Test
+    void connectionLanes() {
+        assertNotSame(template.getConnectionFactory(), blockingConnectionFactory);
+        StringRedisTemplate blocking = new StringRedisTemplate(blockingConnectionFactory);
+        blocking.opsForValue().set("lane", "blocking");
+        assertEquals("blocking", template.opsForValue().get("lane"));
+
+        //pubsub container and stream consumers already borrowed from the blocking pool
+        assertTrue(meterRegistry.get("redis.pool.borrowed").tag("lane", "blocking").functionCounter().count() > 0);
+        assertNotNull(meterRegistry.get("redis.pool.active").tag("lane", "shared").gauge());
+        template.delete("lane");
+    }
+
+    //findById is served from the local copy, a change that doesn't go through the repository still reach it
+    //cause redis push the invalidation (only when tracking is on, redis 6+)
+    @Test
+    void clientTracking() throws InterruptedException {
+        productRepository.save(Product.builder().id("T-001").name("mie").price(20_000L).build());
+        double hits = meterRegistry.get("products.local.requests").tag("result", "hit").counter().count();
+        assertEquals(20_000L, productRepository.findById("T-001").orElseThrow().getPrice());
+        assertEquals(20_000L, productRepository.findById("T-001").orElseThrow().getPrice());
+        assertEquals(hits + 1, meterRegistry.get("products.local.requests").tag("result", "hit").counter().count());
+
+        if (redisTracking.isActive()) {
+            template.opsForHash().put("products:T-001", ProductCodec.PRICE_FIELD, "30000");
+            Thread.sleep(Duration.ofMillis(200).toMillis());
+            assertEquals(30_000L, productRepository.findById("T-001").orElseThrow().getPrice());
+        }
+        productRepository.deleteById("T-001");
+        assertTrue(productRepository.findById("T-001").isEmpty());
+    }
+
+    //claimed before OrderListener, marked only after success, a failed one is unclaimed so the redelivery run again
+    @Test
+    void orderDedup() {
+        String id = "dedup-" + UUID.randomUUID();
+        RecordId recordId = RecordId.of(1, 1);
+        assertEquals(List.of(OrderDeduplicator.Claim.CLAIMED, OrderDeduplicator.Claim.IN_FLIGHT),
+                orderDeduplicator.claim(List.of(id, id)));
+
+        orderDeduplicator.complete(List.of(new OrderDeduplicator.Completion(recordId, id, OrderDeduplicator.Outcome.FAILED)));
+        assertEquals(List.of(OrderDeduplicator.Claim.CLAIMED), orderDeduplicator.claim(List.of(id)));
+
+        orderDeduplicator.complete(List.of(new OrderDeduplicator.Completion(recordId, id, OrderDeduplicator.Outcome.PROCESSED)));
+        assertEquals(List.of(OrderDeduplicator.Claim.DUPLICATE), orderDeduplicator.claim(List.of(id)));
+        assertTrue(meterRegistry.get("orders.dedup.claims").tag("result", "duplicate").counter().count() > 0);
+    }
+
+    //limit 3 per minute, the 4th call is rejected by both algorithm, with lease the 3 tokens come in one call
+    @Test
+    void rateLimiter() {
+        for (RateLimitProperties.Algorithm algorithm : RateLimitProperties.Algorithm.values()) {
+            for (int lease : new int[]{0, 5}) {
+                RateLimitProperties.Policy policy = new RateLimitProperties.Policy();
+                policy.setAlgorithm(algorithm);
+                policy.setLimit(3);
+                policy.setPeriod(Duration.ofMinutes(1));
+                policy.setLease(lease);
+                policy.setLeaseTimeToLive(Duration.ofSeconds(10));
+                String client = "client-" + UUID.randomUUID();
+
+                for (int i = 0; i < 3; i++) {
+                    assertTrue(rateLimiter.tryAcquire("test", policy, client).allowed());
+                }
+                RateLimiter.Decision rejected = rateLimiter.tryAcquire("test", policy, client);
+                assertFalse(rejected.allowed());
+                assertTrue(rejected.retryAfterMillis() > 0);
+                assertTrue(rateLimiter.tryAcquire("test", policy, "other-" + client).allowed());
+            }
+        }
+    }
+
+    //amounts are buffered until flush, and top() only see them after refresh
+    @Test
+    void leaderboard() {
+        template.delete(template.keys("leaderboard:products:*"));
+        String first = "L-" + UUID.randomUUID();
+        String second = "L-" + UUID.randomUUID();
+        productLeaderboard.record(new Order("1", 1_000_000_000L, second));
+        productLeaderboard.record(new Order("2", 1_000_000_000L, first));
+        productLeaderboard.record(new Order("3", 1_000_000_000L, first));
+        productLeaderboard.flush();
+        productLeaderboard.refresh();
+
+        List<ProductLeaderboard.Entry> top = productLeaderboard.top("5m", 2);
+        assertEquals(List.of(first, second), top.stream().map(ProductLeaderboard.Entry::productId).toList());
+        assertEquals(2_000_000_000D, top.get(0).amount());
+        assertEquals(top, productLeaderboard.top("1h", 2));
+    }
+
+    //same visitor is counted once per day, a range longer than merge-threshold go through the cached PFMERGE
+    @Test
+    void visitorAnalytics() {
+        String product = "V-" + UUID.randomUUID();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (int day = 1; day <= 10; day++) {
+            template.opsForHyperLogLog().add(productVisitorAnalytics.dayKey(product, today.minusDays(day)), "a", "b", "visitor-" + day);
+        }
+        productVisitorAnalytics.record(product, "a");
+        productVisitorAnalytics.record(product, "a");
+        productVisitorAnalytics.record(product, "today");
+        productVisitorAnalytics.flush();
+
+        assertEquals(2, productVisitorAnalytics.uniqueVisitors(product, today, today));
+        assertEquals(5, productVisitorAnalytics.uniqueVisitors(product, today.minusDays(2), today));
+        assertEquals(13, productVisitorAnalytics.uniqueVisitors(product, today.minusDays(10), today.plusDays(5)));
+        assertEquals(12, productVisitorAnalytics.uniqueVisitors(product, today.minusDays(10), today.minusDays(1)));
+        //days before the retention are ignored, not one key per day since year 1
+        assertEquals(13, productVisitorAnalytics.uniqueVisitors(product, LocalDate.of(1, 1, 1), today));
+        template.delete(template.keys("analytics:visitors:" + product + ":*"));
+    }
+
+    //second query in the same geohash cell is served from the cached candidates, and give the same result as redis
+    @Test
+    void sellerLocations() {
+        List<SellerLocationService.SellerLocation> sellers = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            sellers.add(new SellerLocationService.SellerLocation("seller-" + i,
+                    106.80 + (i % 50) * 0.001, -6.20 + (i / 50) * 0.001));
+        }
+        assertEquals(2_500, sellerLocationService.load(sellers));
+
+        double hits = meterRegistry.get("sellers.search").tag("result", "hit").counter().count();
+        Slice<SellerLocationService.SellerDistance> first = sellerLocationService.searchRadius(106.8150, -6.1780, 500, PageRequest.of(0, 10));
+        Slice<SellerLocationService.SellerDistance> nearby = sellerLocationService.searchRadius(106.8151, -6.1781, 500, PageRequest.of(0, 100));
+        assertEquals(hits + 1, meterRegistry.get("sellers.search").tag("result", "hit").counter().count());
+        assertEquals(10, first.getNumberOfElements());
+        assertTrue(first.hasNext());
+        assertTrue(first.getContent().get(0).distanceMeters() <= first.getContent().get(9).distanceMeters());
+
+        sellerLocationProperties.getCache().setEnabled(false);
+        try {
+            Slice<SellerLocationService.SellerDistance> direct = sellerLocationService.searchRadius(106.8151, -6.1781, 500, PageRequest.of(0, 100));
+            assertEquals(direct.getContent().stream().map(SellerLocationService.SellerDistance::id).collect(Collectors.toSet()),
+                    nearby.getContent().stream().map(SellerLocationService.SellerDistance::id).collect(Collectors.toSet()));
+            assertFalse(sellerLocationService.searchBox(106.8150, -6.1780, 1000, 1000, PageRequest.of(0, 10)).isEmpty());
+        } finally {
+            sellerLocationProperties.getCache().setEnabled(true);
+        }
+        template.delete(sellerLocationProperties.getKey());
+    }
+
+    //more sellers than max-results: the cached candidates are cut, so a page further than where they're sure go to redis
+    @Test
+    void sellerLocationsTruncated() {
+        int maxResults = sellerLocationProperties.getMaxResults();
+        int cellPrecision = sellerLocationProperties.getCache().getCellPrecision();
+        //40 candidates about 11m apart, the last is about 40m from the cell center, the cell half diagonal is about 21m
+        sellerLocationProperties.setMaxResults(20);
+        sellerLocationProperties.getCache().setCellPrecision(8);
+        try {
+            List<SellerLocationService.SellerLocation> sellers = new ArrayList<>();
+            for (int i = 0; i < 2_500; i++) {
+                sellers.add(new SellerLocationService.SellerLocation("seller-" + i,
+                        106.80 + (i % 50) * 0.0001, -6.20 + (i / 50) * 0.0001));
+            }
+            sellerLocationService.load(sellers);
+
+            double bypass = meterRegistry.get("sellers.search").tag("result", "bypass").counter().count();
+            //result 11 to 21 is about 29m away, further than the sure distance of the candidates
+            Slice<SellerLocationService.SellerDistance> deep = sellerLocationService.searchRadius(106.8025, -6.1975, 200,
+                    PageRequest.of(1, 10));
+            assertEquals(bypass + 1, meterRegistry.get("sellers.search").tag("result", "bypass").counter().count());
+            assertEquals(10, deep.getNumberOfElements());
+            assertTrue(deep.hasNext());
+
+            sellerLocationProperties.getCache().setEnabled(false);
+            Slice<SellerLocationService.SellerDistance> direct = sellerLocationService.searchRadius(106.8025, -6.1975, 200,
+                    PageRequest.of(1, 10));
+            assertEquals(direct.getContent().stream().map(SellerLocationService.SellerDistance::id).toList(),
+                    deep.getContent().stream().map(SellerLocationService.SellerDistance::id).toList());
+        } finally {
+            sellerLocationProperties.setMaxResults(maxResults);
+            sellerLocationProperties.getCache().setCellPrecision(cellPrecision);
+            sellerLocationProperties.getCache().setEnabled(true);
+            template.delete(sellerLocationProperties.getKey());
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package pzn.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//this test doesn't need redis, the delegate writer is a map
+public class SizeLimitedRedisCacheWriterTest {
+
+    private static final byte[] KEY = "products::1".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, byte[]> stored = new HashMap<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SizeLimitedRedisCacheWriter writer = new SizeLimitedRedisCacheWriter(new MapCacheWriter(),
+            Map.of("products", 16L), meterRegistry);
+
+    //@Cacheable(sync = true) load through get with a loader, too big value is returned but not written
+    @Test
+    void loaderTooBig() {
+        byte[] value = writer.get("products", KEY, () -> new byte[17], Duration.ZERO, false);
+
+        assertEquals(17, value.length);
+        assertTrue(stored.isEmpty());
+        assertEquals(1.0, meterRegistry.get("cache.entries.rejected").tag("cache", "products").counter().count());
+    }
+
+    @Test
+    void loaderSmall() {
+        byte[] value = writer.get("products", KEY, () -> new byte[16], Duration.ZERO, false);
+
+        assertSame(value, stored.get("products"));
+        assertSame(value, writer.get("products", KEY, () -> {
+            throw new IllegalStateException("cached value must not be loaded");
+        }, Duration.ZERO, false));
+    }
+
+    //the counter is there before the first rejection, and every rejection count on the same one
+    @Test
+    void rejectedCounterRegisteredOnce() {
+        assertEquals(0.0, meterRegistry.get("cache.entries.rejected").tag("cache", "products").counter().count());
+
+        writer.put("products", KEY, new byte[17], Duration.ZERO);
+        writer.withStatisticsCollector(CacheStatisticsCollector.none()).put("products", KEY, new byte[17], Duration.ZERO);
+
+        assertEquals(1, meterRegistry.get("cache.entries.rejected").counters().size());
+        assertEquals(2.0, meterRegistry.get("cache.entries.rejected").tag("cache", "products").counter().count());
+        assertTrue(stored.isEmpty());
+    }
+
+    //one entry per cache name is enough here
+    private class MapCacheWriter implements RedisCacheWriter {
+
+        @Override
+        public byte[] get(String name, byte[] key) {
+            return stored.get(name);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+            return CompletableFuture.completedFuture(stored.get(name));
+        }
+
+        @Override
+        public void put(String name, byte[] key, byte[] value, Duration ttl) {
+            stored.put(name, value);
+        }
+
+        @Override
+        public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+            stored.put(name, value);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+            return stored.putIfAbsent(name, value);
+        }
+
+        @Override
+        public void remove(String name, byte[] key) {
+            stored.remove(name);
+        }
+
+        @Override
+        public void clean(String name, byte[] pattern) {
+            stored.remove(name);
+        }
+
+        @Override
+        public void clearStatistics(String name) {
+        }
+
+        @Override
+        public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+            return this;
+        }
+
+        @Override
+        public CacheStatistics getCacheStatistics(String cacheName) {
+            return CacheStatisticsCollector.none().getCacheStatistics(cacheName);
+        }
+    }
+}